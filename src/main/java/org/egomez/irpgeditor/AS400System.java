@@ -43,6 +43,9 @@ import org.slf4j.LoggerFactory;
  * @author Derek Van Kooten.
  */
 public class AS400System extends NodeAbstract {
+
+    // the number of lines handed to a source loader at a time.
+    static final int LOAD_BLOCK = 1000;
     
     AS400JDBCDriver driver = new AS400JDBCDriver();
     ArrayList<ListenerAS400System> listListeners = new ArrayList<>();
@@ -1102,7 +1105,7 @@ public class AS400System extends NodeAbstract {
 
     /**
      * Gets the source code for the library, file, member specified. Calls back
-     * to the source loader object for each line loaded. The copy id returned is
+     * to the source loader object for each block of lines loaded. The copy id returned is
      * used when the source is saved after changes are made. The changes are
      * updated to the copy, the deleted lines are removed, and the new lines are
      * appended. The copy file is then inserted into the original with the lines
@@ -1112,8 +1115,8 @@ public class AS400System extends NodeAbstract {
      * @param library String The library name of the source member.
      * @param file String The file name of the source member.
      * @param member String The name of the source member.
-     * @param sourceLoader SourceLoader Receives an event for each line that is
-     * loaded from the line.
+     * @param sourceLoader SourceLoader Receives the lines that are loaded, a
+     * block of lines at a time.
      * @throws SQLException
      * @return int the id of the file in qtemp that is a copy of the source that
      * is loaded.
@@ -1122,8 +1125,11 @@ public class AS400System extends NodeAbstract {
         // Connection connection;
         Statement stmt;
         ResultSet rs;
-        int a;
+        int a, count;
         String text;
+        float[] numbers;
+        int[] dates;
+        StringBuilder lines;
 
         // connection = getConnection();
         synchronized (this) {
@@ -1142,9 +1148,31 @@ public class AS400System extends NodeAbstract {
             stmt.execute("create alias qtemp/" + member + " for " + library + "/" + file + "(" + member + ")");
             // rs = stmt.executeQuery("select * from qtemp/a" + a);
             rs = stmt.executeQuery("select * from qtemp/" + member);
+            // the lines are handed to the source loader in blocks, so the
+            // editor is not updated for every single line.
+            numbers = new float[LOAD_BLOCK];
+            dates = new int[LOAD_BLOCK];
+            lines = new StringBuilder(LOAD_BLOCK * 81);
+            count = 0;
             while (rs.next()) {
                 text = rs.getString(3);
-                sourceLoader.lineLoaded(rs.getFloat(1), rs.getInt(2), text);
+                numbers[count] = rs.getFloat(1);
+                dates[count] = rs.getInt(2);
+                if (text != null) {
+                    lines.append(text);
+                }
+                lines.append('\n');
+                count++;
+                if (count == LOAD_BLOCK) {
+                    sourceLoader.linesLoaded(numbers, dates, lines);
+                    numbers = new float[LOAD_BLOCK];
+                    dates = new int[LOAD_BLOCK];
+                    lines.setLength(0);
+                    count = 0;
+                }
+            }
+            if (count > 0) {
+                sourceLoader.linesLoaded(Arrays.copyOf(numbers, count), Arrays.copyOf(dates, count), lines);
             }
             rs.close();
             // stmt.execute("drop alias qtemp/a" + a);
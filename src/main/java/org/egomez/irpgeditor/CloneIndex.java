@@ -0,0 +1,554 @@
+package org.egomez.irpgeditor;
+
+/*
+ * Copyright:    Copyright (c) 2004
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2, or (at your option)
+ * any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this software; see the file COPYING.  If not, write to
+ * the Free Software Foundation, Inc., 59 Temple Place, Suite 330,
+ * Boston, MA 02111-1307 USA
+ */
+import java.io.*;
+import java.util.*;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * finds code that is repeated between the members of a project. every run of
+ * MIN_LINES lines of every member gets a hash, the same way the duplicate
+ * code of one member is found, and the runs of all the members are kept
+ * sorted by their hash so the members a run is repeated in can be looked up.
+ *
+ * the runs are worked out from the copy of each member that is kept in the
+ * project directory when the member is opened, so no member is downloaded for
+ * this. the index is saved in the project directory, when it is loaded again
+ * only the members whose copy changed since are hashed again.
+ *
+ * @author Derek Van Kooten.
+ */
+public class CloneIndex {
+
+    // the least number of lines that is reported as repeated.
+    public static final int MIN_LINES = 5;
+    // the multiplier for rolling the hashes of the lines.
+    static final long PRIME = 1000003;
+    // runs that are in more places than this are left out, they are blank
+    // lines, comment boxes and such.
+    static final int MAX_PLACES = 32;
+    static final int VERSION = 1;
+    static final String FILE_NAME = "clones.idx";
+
+    File directory;
+    // the members in the index, by the name of their copy.
+    @SuppressWarnings("rawtypes")
+    HashMap mapEntries = new HashMap();
+    // the members in the order their runs are numbered.
+    Entry[] entries = new Entry[0];
+    // the hash of a run in the high 32 bits, the number of the run in the low
+    // 32 bits, sorted.
+    long[] places = new long[0];
+    boolean loaded = false;
+    Logger logger = LoggerFactory.getLogger(CloneIndex.class);
+
+    /**
+     * @param directory File the directory the copies of the members are in.
+     */
+    public CloneIndex(File directory) {
+        this.directory = directory;
+    }
+
+    /**
+     * returns the name of the copy of the member in the project directory.
+     *
+     * @param member Member
+     * @return String
+     */
+    public static String getFileName(Member member) {
+        return member.getName() + "." + member.getSourceType();
+    }
+
+    /**
+     * brings the index up to date with the copies of the members of the
+     * project. only the members whose copy changed are hashed again.
+     *
+     * @param listMembers ArrayList contains ProjectMember objects.
+     */
+    @SuppressWarnings({"rawtypes", "unchecked"})
+    public synchronized void refresh(ArrayList listMembers) {
+        HashSet setNames;
+        Iterator iterator;
+        Entry entry;
+        File file;
+        String name;
+        boolean changed;
+
+        if (loaded == false) {
+            load();
+            loaded = true;
+        }
+        changed = false;
+        setNames = new HashSet();
+        for (int x = 0; x < listMembers.size(); x++) {
+            name = getFileName(((ProjectMember) listMembers.get(x)).getMember());
+            file = new File(directory, name);
+            if (file.exists() == false) {
+                continue;
+            }
+            setNames.add(name);
+            entry = (Entry) mapEntries.get(name);
+            if (entry != null && entry.modified == file.lastModified() && entry.length == file.length()) {
+                continue;
+            }
+            try {
+                mapEntries.put(name, read(name, file));
+                changed = true;
+            } catch (IOException e) {
+                logger.error(e.getMessage());
+            }
+        }
+        // members that are not in the project anymore.
+        iterator = mapEntries.keySet().iterator();
+        while (iterator.hasNext()) {
+            if (setNames.contains(iterator.next()) == false) {
+                iterator.remove();
+                changed = true;
+            }
+        }
+        if (changed || entries.length != mapEntries.size()) {
+            build();
+            save();
+        }
+    }
+
+    /**
+     * returns the places in other members that the runs of lines are repeated
+     * in. the runs next to each other that are repeated next to each other in
+     * the same member are put together, so each clone is as long as it can be.
+     * the hashes of different lines can be the same, so the lines are compared
+     * with the copy of the other member before they are returned.
+     *
+     * @param name String the name of the copy of the member the runs are from,
+     * it is left out.
+     * @param windows int[] the hashes of the runs of MIN_LINES lines, see
+     * windows().
+     * @param snapshot SourceSnapshot the lines the runs are from.
+     * @return ArrayList contains Clone objects.
+     */
+    @SuppressWarnings({"rawtypes", "unchecked"})
+    public synchronized ArrayList find(String name, int[] windows, SourceSnapshot snapshot) {
+        ArrayList listMatches, list;
+        Entry entry;
+        Clone match, clone;
+        int first, last, place;
+
+        // a clone for every run that is repeated.
+        listMatches = new ArrayList();
+        for (int row = 0; row < windows.length; row++) {
+            first = search(windows[row]);
+            if (first == -1) {
+                continue;
+            }
+            last = first;
+            while (last < places.length && (int) (places[last] >> 32) == windows[row]) {
+                last++;
+            }
+            if (last - first > MAX_PLACES) {
+                continue;
+            }
+            for (int x = first; x < last; x++) {
+                place = (int) places[x];
+                entry = entries[findEntry(place)];
+                if (entry.name.equals(name) == false) {
+                    listMatches.add(new Clone(entry.name, row, place - entry.start, MIN_LINES));
+                }
+            }
+        }
+        // order by member, then by how far apart the rows are, then by row,
+        // so the runs of one clone are next to each other.
+        Collections.sort(listMatches, new Comparator() {
+            @Override
+            public int compare(Object objectA, Object objectB) {
+                Clone a, b;
+                int result;
+
+                a = (Clone) objectA;
+                b = (Clone) objectB;
+                result = a.name.compareTo(b.name);
+                if (result == 0) {
+                    result = Integer.compare(a.rowOther - a.row, b.rowOther - b.row);
+                }
+                if (result == 0) {
+                    result = Integer.compare(a.row, b.row);
+                }
+                return result;
+            }
+        });
+        list = new ArrayList();
+        clone = null;
+        for (int x = 0; x < listMatches.size(); x++) {
+            match = (Clone) listMatches.get(x);
+            if (clone != null && clone.name.equals(match.name) && clone.rowOther - clone.row == match.rowOther - match.row
+                    && clone.row + clone.count - MIN_LINES + 1 == match.row) {
+                clone.count++;
+                continue;
+            }
+            clone = match;
+            list.add(clone);
+        }
+        return check(list, snapshot);
+    }
+
+    /**
+     * returns the parts of the clones whose lines are the same as the lines of
+     * the copy of the other member, the parts shorter than MIN_LINES are left
+     * out.
+     */
+    @SuppressWarnings({"rawtypes", "unchecked"})
+    protected ArrayList check(ArrayList listClones, SourceSnapshot snapshot) {
+        ArrayList list;
+        HashMap mapCopies;
+        Copy copy;
+        Clone clone;
+        int run;
+
+        list = new ArrayList();
+        mapCopies = new HashMap();
+        for (int x = 0; x < listClones.size(); x++) {
+            clone = (Clone) listClones.get(x);
+            copy = (Copy) mapCopies.get(clone.name);
+            if (copy == null) {
+                try {
+                    copy = new Copy(readText(new File(directory, clone.name)));
+                } catch (IOException e) {
+                    logger.error(e.getMessage());
+                    continue;
+                }
+                mapCopies.put(clone.name, copy);
+            }
+            // the runs of lines that are the same.
+            run = 0;
+            for (int y = 0; y <= clone.count; y++) {
+                if (y < clone.count && clone.row + y < snapshot.getLineCount() && copy.isSame(clone.rowOther + y, snapshot, clone.row + y)) {
+                    run++;
+                    continue;
+                }
+                if (run >= MIN_LINES) {
+                    list.add(new Clone(clone.name, clone.row + y - run, clone.rowOther + y - run, run));
+                }
+                run = 0;
+            }
+        }
+        return list;
+    }
+
+    /**
+     * works out the hashes of all the runs of a number of lines. the run at x
+     * starts at line x, there are no runs if there are fewer lines than that.
+     *
+     * @param hashes int[] the hashes of the lines, see SourceSnapshot.hash().
+     * @param size int the number of lines.
+     * @param lines int the number of lines in a run.
+     * @return int[]
+     */
+    public static int[] windows(int[] hashes, int size, int lines) {
+        int[] windows;
+        long hash, power;
+
+        if (size < lines) {
+            return new int[0];
+        }
+        windows = new int[size - lines + 1];
+        // the multiplier of the line that drops out of the run.
+        power = 1;
+        for (int x = 1; x < lines; x++) {
+            power *= PRIME;
+        }
+        hash = 0;
+        for (int row = 0; row < size; row++) {
+            if (row >= lines) {
+                hash -= power * hashes[row - lines];
+            }
+            hash = hash * PRIME + hashes[row];
+            if (row >= lines - 1) {
+                windows[row - lines + 1] = (int) (hash ^ (hash >>> 32));
+            }
+        }
+        return windows;
+    }
+
+    /**
+     * hashes the lines of the copy of a member.
+     */
+    protected Entry read(String name, File file) throws IOException {
+        StringBuilder buffer;
+        int[] starts;
+        int[] hashes;
+
+        buffer = readText(file);
+        starts = starts(buffer);
+        hashes = new int[starts.length - 1];
+        for (int x = 0; x < hashes.length; x++) {
+            hashes[x] = SourceSnapshot.hash(buffer, starts[x], starts[x + 1]);
+        }
+        return new Entry(name, file.lastModified(), file.length(), windows(hashes, hashes.length, MIN_LINES));
+    }
+
+    /**
+     * returns the text of the copy of a member with \n at the end of the
+     * lines.
+     */
+    protected static StringBuilder readText(File file) throws IOException {
+        Reader reader;
+        StringBuilder buffer;
+        char[] chars;
+        int read;
+
+        buffer = new StringBuilder((int) file.length());
+        chars = new char[8192];
+        reader = new InputStreamReader(new FileInputStream(file));
+        try {
+            while ((read = reader.read(chars)) != -1) {
+                // the copy has \r\n at the end of the lines, the editor \n.
+                for (int x = 0; x < read; x++) {
+                    if (chars[x] != '\r') {
+                        buffer.append(chars[x]);
+                    }
+                }
+            }
+        } finally {
+            reader.close();
+        }
+        return buffer;
+    }
+
+    /**
+     * returns the start of every line of the text, plus the length of the
+     * text at the end. the last line does not need a \n.
+     */
+    protected static int[] starts(CharSequence text) {
+        int[] starts;
+        int size;
+
+        starts = new int[256];
+        size = 1;
+        for (int x = 0; x < text.length(); x++) {
+            if (text.charAt(x) == '\n' || x == text.length() - 1) {
+                if (size == starts.length) {
+                    starts = Arrays.copyOf(starts, size * 2);
+                }
+                starts[size++] = x + 1;
+            }
+        }
+        return Arrays.copyOf(starts, size);
+    }
+
+    /**
+     * numbers the runs of all the members and sorts them by their hash.
+     */
+    @SuppressWarnings("unchecked")
+    protected void build() {
+        int total, place;
+
+        entries = (Entry[]) mapEntries.values().toArray(new Entry[mapEntries.size()]);
+        total = 0;
+        for (int x = 0; x < entries.length; x++) {
+            entries[x].start = total;
+            total += entries[x].windows.length;
+        }
+        places = new long[total];
+        place = 0;
+        for (int x = 0; x < entries.length; x++) {
+            for (int y = 0; y < entries[x].windows.length; y++) {
+                places[place] = ((long) entries[x].windows[y] << 32) | place;
+                place++;
+            }
+        }
+        Arrays.sort(places);
+    }
+
+    /**
+     * returns the first place with the hash, or -1.
+     */
+    protected int search(int hash) {
+        int low, high, middle;
+
+        low = 0;
+        high = places.length;
+        while (low < high) {
+            middle = (low + high) >>> 1;
+            if ((int) (places[middle] >> 32) < hash) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        if (low < places.length && (int) (places[low] >> 32) == hash) {
+            return low;
+        }
+        return -1;
+    }
+
+    /**
+     * returns the index of the member the numbered run is in.
+     */
+    protected int findEntry(int place) {
+        int low, high, middle;
+
+        low = 0;
+        high = entries.length - 1;
+        while (low < high) {
+            middle = (low + high + 1) >>> 1;
+            if (entries[middle].start <= place) {
+                low = middle;
+            } else {
+                high = middle - 1;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * reads the index saved in the project directory.
+     */
+    @SuppressWarnings("unchecked")
+    protected void load() {
+        DataInputStream input;
+        File file;
+        Entry entry;
+        int count;
+
+        file = new File(directory, FILE_NAME);
+        if (file.exists() == false) {
+            return;
+        }
+        try {
+            input = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+            try {
+                if (input.readInt() != VERSION || input.readInt() != MIN_LINES) {
+                    return;
+                }
+                count = input.readInt();
+                for (int x = 0; x < count; x++) {
+                    entry = new Entry(input.readUTF(), input.readLong(), input.readLong(), new int[input.readInt()]);
+                    for (int y = 0; y < entry.windows.length; y++) {
+                        entry.windows[y] = input.readInt();
+                    }
+                    mapEntries.put(entry.name, entry);
+                }
+            } finally {
+                input.close();
+            }
+        } catch (IOException e) {
+            // start over.
+            mapEntries.clear();
+            logger.error(e.getMessage());
+        }
+        build();
+    }
+
+    /**
+     * saves the index in the project directory.
+     */
+    protected void save() {
+        DataOutputStream output;
+
+        if (directory.exists() == false) {
+            return;
+        }
+        try {
+            output = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(new File(directory, FILE_NAME))));
+            try {
+                output.writeInt(VERSION);
+                output.writeInt(MIN_LINES);
+                output.writeInt(entries.length);
+                for (int x = 0; x < entries.length; x++) {
+                    output.writeUTF(entries[x].name);
+                    output.writeLong(entries[x].modified);
+                    output.writeLong(entries[x].length);
+                    output.writeInt(entries[x].windows.length);
+                    for (int y = 0; y < entries[x].windows.length; y++) {
+                        output.writeInt(entries[x].windows[y]);
+                    }
+                }
+            } finally {
+                output.close();
+            }
+        } catch (IOException e) {
+            logger.error(e.getMessage());
+        }
+    }
+
+    /**
+     * the runs of one member.
+     */
+    static class Entry {
+
+        String name;
+        long modified;
+        long length;
+        int[] windows;
+        // the number of the first run of the member.
+        int start;
+
+        Entry(String name, long modified, long length, int[] windows) {
+            this.name = name;
+            this.modified = modified;
+            this.length = length;
+            this.windows = windows;
+        }
+    }
+
+    /**
+     * the text of the copy of another member, to compare the lines with.
+     */
+    static class Copy {
+
+        CharSequence text;
+        int[] starts;
+
+        Copy(CharSequence text) {
+            this.text = text;
+            this.starts = starts(text);
+        }
+
+        boolean isSame(int row, SourceSnapshot snapshot, int rowSnapshot) {
+            if (row >= starts.length - 1) {
+                return false;
+            }
+            return SourceSnapshot.isSame(text, starts[row], starts[row + 1], snapshot.getText(),
+                    snapshot.getStart(rowSnapshot), snapshot.getStart(rowSnapshot) + snapshot.getLength(rowSnapshot));
+        }
+    }
+
+    /**
+     * lines that are repeated in another member.
+     */
+    public static class Clone {
+
+        // the name of the copy of the other member.
+        public String name;
+        // the first row in the member that was looked for.
+        public int row;
+        // the first row in the other member.
+        public int rowOther;
+        public int count;
+
+        Clone(String name, int row, int rowOther, int count) {
+            this.name = name;
+            this.row = row;
+            this.rowOther = rowOther;
+            this.count = count;
+        }
+    }
+}
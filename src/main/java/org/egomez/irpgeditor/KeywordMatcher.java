@@ -0,0 +1,122 @@
+package org.egomez.irpgeditor;
+
+/*
+ * Copyright:    Copyright (c) 2004
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2, or (at your option)
+ * any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this software; see the file COPYING.  If not, write to
+ * the Free Software Foundation, Inc., 59 Temple Place, Suite 330,
+ * Boston, MA 02111-1307 USA
+ */
+import java.util.*;
+
+/**
+ * finds out if a range of characters is one of a set of words, ignoring case.
+ * the words are kept in an open addressed hash table of lower case char
+ * arrays, the range is hashed and compared where it is, so no strings are
+ * made to look a word up. the case is folded the same way whatever the
+ * locale is.
+ *
+ * @author Derek Van Kooten.
+ */
+public class KeywordMatcher {
+
+    char[][] table;
+    int mask;
+    int longest = 0;
+
+    @SuppressWarnings("rawtypes")
+    public KeywordMatcher(Collection words) {
+        Iterator iterator;
+        char[] word;
+        int size, slot;
+
+        size = 16;
+        while (size < words.size() * 4) {
+            size *= 2;
+        }
+        table = new char[size][];
+        mask = size - 1;
+        iterator = words.iterator();
+        while (iterator.hasNext()) {
+            word = iterator.next().toString().toLowerCase(Locale.ROOT).toCharArray();
+            if (word.length > longest) {
+                longest = word.length;
+            }
+            slot = hash(word, 0, word.length) & mask;
+            while (table[slot] != null && Arrays.equals(table[slot], word) == false) {
+                slot = (slot + 1) & mask;
+            }
+            table[slot] = word;
+        }
+    }
+
+    /**
+     * returns true if the characters from start to end are one of the words.
+     *
+     * @param text CharSequence
+     * @param start int
+     * @param end int
+     * @return boolean
+     */
+    public boolean matches(CharSequence text, int start, int end) {
+        char[] word;
+        int slot, length, hash;
+
+        length = end - start;
+        if (length <= 0 || length > longest) {
+            return false;
+        }
+        hash = 0;
+        for (int x = start; x < end; x++) {
+            hash = 31 * hash + lower(text.charAt(x));
+        }
+        slot = hash & mask;
+        while ((word = table[slot]) != null) {
+            if (word.length == length && same(word, text, start)) {
+                return true;
+            }
+            slot = (slot + 1) & mask;
+        }
+        return false;
+    }
+
+    private static boolean same(char[] word, CharSequence text, int start) {
+        for (int x = 0; x < word.length; x++) {
+            if (word[x] != lower(text.charAt(start + x))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static int hash(char[] word, int start, int end) {
+        int hash;
+
+        hash = 0;
+        for (int x = start; x < end; x++) {
+            hash = 31 * hash + word[x];
+        }
+        return hash;
+    }
+
+    private static char lower(char c) {
+        if (c >= 'A' && c <= 'Z') {
+            return (char) (c + ('a' - 'A'));
+        }
+        if (c < 128) {
+            return c;
+        }
+        return Character.toLowerCase(c);
+    }
+}
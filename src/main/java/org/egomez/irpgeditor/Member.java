@@ -83,10 +83,20 @@ public class Member {
     String created;
     String changed;
     int copyID;
+    // saves only the lines that changed, see saveDelta().
+    boolean deltaSave = true;
+    // true while the sequence numbers of the lines in the editor are the ones
+    // in the member.
+    boolean numbered = false;
+    // the number of records and the largest sequence number, in hundredths,
+    // the member had when it was loaded or saved.
+    int rowsLoaded, lastLoaded;
     @SuppressWarnings("rawtypes")
     ArrayList listListeners = new ArrayList();
     Logger logger = LoggerFactory.getLogger(Member.class);
 
+    // the largest sequence number of a line, 9999.99 in hundredths.
+    static final int SEQUENCE_MAX = 999999;
     public static String SOURCE_TYPE_DSPF = "DSPF";
     public static String SOURCE_TYPE_RPG = "RPG";
     public static String SOURCE_TYPE_RPGLE = "RPGLE";
@@ -247,9 +257,41 @@ public class Member {
         }
     }
 
-    public void getSource(SourceLoader sourceLoader) throws SQLException {
-        copyID = as400system.getSource(library, file, member, sourceLoader);
+    public void getSource(final SourceLoader sourceLoader) throws SQLException {
+        rowsLoaded = 0;
+        lastLoaded = 0;
+        copyID = as400system.getSource(library, file, member, new SourceLoader() {
+            @Override
+            public void lineLoaded(float number, int date, String line) {
+                loaded(number);
+                sourceLoader.lineLoaded(number, date, line);
+            }
+
+            @Override
+            public void linesLoaded(float[] numbers, int[] dates, CharSequence lines) {
+                for (int x = 0; x < numbers.length; x++) {
+                    loaded(numbers[x]);
+                }
+                sourceLoader.linesLoaded(numbers, dates, lines);
+            }
+        });
+        numbered = true;
+    }
 
+    /**
+     * counts a record loaded from the member.
+     */
+    void loaded(float number) {
+        rowsLoaded++;
+        lastLoaded = Math.max(lastLoaded, Math.round(number * 100));
+    }
+
+    public void setDeltaSave(boolean deltaSave) {
+        this.deltaSave = deltaSave;
+    }
+
+    public boolean isDeltaSave() {
+        return deltaSave;
     }
 
     public String saveBackup(SourceParser parser) throws Exception {
@@ -289,9 +331,25 @@ public class Member {
         return file1.getAbsolutePath();
     }
 
+    /**
+     * saves the lines that changed if the sequence numbers are known, see
+     * saveDelta(), otherwise the whole member.
+     */
     public void save(SourceParser parser, ListenerSave listener) throws SQLException {
+        if (deltaSave && numbered) {
+            saveDelta(parser, listener);
+            return;
+        }
+        saveFull(parser, listener);
+    }
+
+    /**
+     * uploads the whole member.
+     */
+    public void saveFull(SourceParser parser, ListenerSave listener) throws SQLException {
         Connection connection = null;
         Statement stmt = null;
+
         /*
 		 * StringBuffer buffer; int row, date, today; Calendar cal; SourceLine line;
 		 * String backup = null; int a;
@@ -348,27 +406,9 @@ public class Member {
         SourceLine line;
         StringBuffer buffer = new StringBuffer();
         String backup = null, append = " ", cadena = "";
-        int lengthFile = as400system.getSourceFileRecordLength(library, file);
         // test length of lines first.
-        row = 1;
-        line = parser.getFirst();
-        while (line != null) {
-            // 81 because the cr/lf is counted.
-            // if (file.equals("QRPGLESRC")) {
-            if (line.getText().trim().length() > lengthFile) {
-                if (listener != null) {
-                    listener.saveComplete(0, false, "Line number: " + row + " is over " + lengthFile + " characters.");
-                }
-                return;
-                // }
-                /*
-				 * } else { if (line.getText().length() > 100) { if (listener != null) {
-				 * listener.saveComplete(0, false, "Line number: " + row +
-				 * " is over 120 characters."); } return; }
-                 */
-            }
-            row++;
-            line = line.getNext();
+        if (checkLength(parser, listener) == false) {
+            return;
         }
 
         try {
@@ -390,14 +430,14 @@ public class Member {
                     if (!line.getText().substring(line.getText().length() - 1).equals("\n")) {
                         buffer.append("\n");
                     }
-                    date = line.date;
-                    if (line.changed || line.created) {
+                    date = line.getDate();
+                    if (line.isChanged() || line.isCreated()) {
                         date = today;
                     }
-                    line.changed = false;
-                    line.created = false;
-                    line.date = date;
-                    buffer.append(line.date);
+                    line.setChanged(false);
+                    line.setCreated(false);
+                    line.setDate(date);
+                    buffer.append(line.getDate());
                     buffer.append("\n");
                     row++;
                     if (buffer.length() > 31000) {
@@ -423,6 +463,14 @@ public class Member {
 
                 stmt.execute(as400system.buildSqlForCmd("CPYF FROMFILE(QTEMP/SRCUPLOAD) TOFILE(" + library + "/" + file
                         + ") TOMBR(" + member + ") MBROPT(*REPLACE) FMTOPT(*MAP *DROP)"));
+                // the upload numbers the lines again, the numbers are read
+                // back so the next save only sends the changes.
+                try {
+                    numbered = loadNumbers(stmt, parser);
+                } catch (SQLException e) {
+                    numbered = false;
+                    logger.error(e.getMessage());
+                }
                 stmt.close();
             }
             if (listener != null) {
@@ -438,6 +486,398 @@ public class Member {
         }
     }
 
+    /**
+     * returns false and tells the listener if a line is too long for the
+     * source file.
+     */
+    protected boolean checkLength(SourceParser parser, ListenerSave listener) throws SQLException {
+        SourceLine line;
+        int row;
+        int lengthFile = as400system.getSourceFileRecordLength(library, file);
+
+        row = 1;
+        line = parser.getFirst();
+        while (line != null) {
+            // 81 because the cr/lf is counted.
+            // if (file.equals("QRPGLESRC")) {
+            if (line.getText().trim().length() > lengthFile) {
+                if (listener != null) {
+                    listener.saveComplete(0, false, "Line number: " + row + " is over " + lengthFile + " characters.");
+                }
+                return false;
+                // }
+                /*
+				 * } else { if (line.getText().length() > 100) { if (listener != null) {
+				 * listener.saveComplete(0, false, "Line number: " + row +
+				 * " is over 120 characters."); } return; }
+                 */
+            }
+            row++;
+            line = line.getNext();
+        }
+        return true;
+    }
+
+    /**
+     * saves only the lines that were deleted, changed or added since the
+     * source was loaded or saved. the lines added get sequence numbers in the
+     * gap between the lines around them. only when a gap is too small are all
+     * the lines numbered again, that is done on the server from the numbers it
+     * has, so the text of the lines that did not change is not sent. the
+     * member is put back in order on the server too.
+     *
+     * the whole member is uploaded instead if the member on the server does
+     * not have the number of records and the last sequence number it had when
+     * it was loaded or saved, someone else changed it and the numbers of the
+     * lines can not be trusted. the upload reads the new numbers back, so the
+     * save after it is a delta again. if this fails the next save sends the
+     * whole member.
+     *
+     * @param parser SourceParser
+     * @param listener ListenerSave
+     * @throws SQLException
+     */
+    public void saveDelta(SourceParser parser, ListenerSave listener) throws SQLException {
+        Connection connection;
+        Statement stmt;
+        SourceLine line;
+        Calendar cal;
+        int[] numbers;
+        int today, count, step, sent, row, a;
+        boolean renumber, created, unchanged;
+        String backup = null;
+
+        try {
+            unchanged = isUnchanged();
+        } catch (SQLException e) {
+            logger.error(e.getMessage());
+            unchanged = false;
+        }
+        if (unchanged == false) {
+            logger.info(library + "/" + file + "(" + member + ") changed on the server, saving all of it.");
+            numbered = false;
+            saveFull(parser, listener);
+            return;
+        }
+        if (checkLength(parser, listener) == false) {
+            return;
+        }
+        try {
+            backup = "Backup file saved to: " + saveBackup(parser);
+        } catch (Exception e) {
+            logger.error(e.getMessage());
+        }
+        cal = Calendar.getInstance();
+        today = (cal.get(Calendar.YEAR) - 2000) * 10000;
+        today += ((cal.get(Calendar.MONTH) + 1) * 100);
+        today += cal.get(Calendar.DAY_OF_MONTH);
+        // the sequence numbers the lines will have, in hundredths.
+        numbers = new int[parser.getLineCount()];
+        renumber = number(parser, numbers) == false;
+        step = 0;
+        if (renumber) {
+            step = Math.min(100, SEQUENCE_MAX / Math.max(1, numbers.length));
+            if (step == 0) {
+                // too many lines to number, send them all.
+                numbered = false;
+                saveFull(parser, listener);
+                return;
+            }
+            for (int x = 0; x < numbers.length; x++) {
+                numbers[x] = (x + 1) * step;
+            }
+        }
+        sent = 0;
+        created = false;
+        try {
+            connection = as400system.getConnection();
+            synchronized (connection) {
+                stmt = connection.createStatement();
+                synchronized (as400system) {
+                    alias++;
+                    a = alias;
+                }
+                stmt.execute("create alias qtemp/a" + a + " for " + library + "/" + file + "(" + member + ")");
+                try {
+                    // deletes.
+                    for (int x = 0; x < parser.listDeleted.size(); x++) {
+                        line = (SourceLine) parser.listDeleted.get(x);
+                        if (line.isCreated() == false) {
+                            stmt.execute("delete from qtemp/a" + a + " where srcseq = " + sequence(line));
+                            sent++;
+                        }
+                    }
+                    // changes, by the numbers the lines have now.
+                    line = parser.getFirst();
+                    while (line != null) {
+                        if (line.isCreated()) {
+                            created = true;
+                        } else if (line.isChanged()) {
+                            stmt.execute("update qtemp/a" + a + " set srcdta = '" + quote(line) + "', srcdat = " + today
+                                    + " where srcseq = " + sequence(line));
+                            sent++;
+                            if (listener != null) {
+                                listener.lineSaved(sent);
+                            }
+                        }
+                        line = line.getNext();
+                    }
+                    // the new lines go in a copy of the member that is put
+                    // back in order of the sequence numbers.
+                    if (created) {
+                        stmt.execute("create table qtemp/d" + a + " as (select "
+                                + (renumber ? "(" + renumber(parser) + ") * " + sequence(step) : "srcseq")
+                                + " as srcseq, srcdat, srcdta from qtemp/a" + a + ") with data");
+                        row = 0;
+                        line = parser.getFirst();
+                        while (line != null) {
+                            if (line.isCreated()) {
+                                stmt.execute("insert into qtemp/d" + a + " (srcseq, srcdat, srcdta) values("
+                                        + sequence(numbers[row]) + ", " + today + ", '" + quote(line) + "')");
+                                sent++;
+                                if (listener != null) {
+                                    listener.lineSaved(sent);
+                                }
+                            }
+                            row++;
+                            line = line.getNext();
+                        }
+                        stmt.execute("delete from qtemp/a" + a);
+                        stmt.execute("insert into qtemp/a" + a + " select srcseq, srcdat, srcdta from qtemp/d" + a
+                                + " order by srcseq");
+                        stmt.execute("drop table qtemp/d" + a);
+                    }
+                } finally {
+                    stmt.execute("drop alias qtemp/a" + a);
+                    stmt.close();
+                }
+            }
+        } catch (SQLException e) {
+            // what was saved is not known, the next save sends it all.
+            numbered = false;
+            logger.error(e.getMessage());
+            if (listener != null) {
+                listener.saveComplete(0, false, e.getMessage() + "\n" + backup);
+            }
+            return;
+        }
+        row = 0;
+        lastLoaded = 0;
+        line = parser.getFirst();
+        while (line != null) {
+            if (line.isCreated() || line.isChanged()) {
+                line.setDate(today);
+            }
+            line.setNumber(numbers[row] / 100f);
+            line.setChanged(false);
+            line.setCreated(false);
+            lastLoaded = Math.max(lastLoaded, numbers[row]);
+            row++;
+            line = line.getNext();
+        }
+        rowsLoaded = numbers.length;
+        parser.clearDeleted();
+        if (listener != null) {
+            listener.saveComplete(sent, true, backup);
+        }
+        parser.setDirty(false);
+    }
+
+    /**
+     * returns true if the member on the server has the number of records and
+     * the last sequence number it had when it was loaded or saved.
+     */
+    protected boolean isUnchanged() throws SQLException {
+        Connection connection;
+        Statement stmt;
+        ResultSet rs;
+        boolean unchanged;
+        int a;
+
+        connection = as400system.getConnection();
+        synchronized (connection) {
+            stmt = connection.createStatement();
+            synchronized (as400system) {
+                alias++;
+                a = alias;
+            }
+            stmt.execute("create alias qtemp/a" + a + " for " + library + "/" + file + "(" + member + ")");
+            try {
+                rs = stmt.executeQuery("select count(*), coalesce(max(srcseq), 0) from qtemp/a" + a);
+                rs.next();
+                unchanged = rs.getInt(1) == rowsLoaded && rs.getBigDecimal(2).movePointRight(2).intValue() == lastLoaded;
+                rs.close();
+            } finally {
+                stmt.execute("drop alias qtemp/a" + a);
+                stmt.close();
+            }
+        }
+        return unchanged;
+    }
+
+    /**
+     * reads the sequence numbers of the member into the lines after it was
+     * uploaded whole, the lines were uploaded in order so the records are in
+     * the same order. returns false if the records are not the lines.
+     */
+    protected boolean loadNumbers(Statement stmt, SourceParser parser) throws SQLException {
+        ResultSet rs;
+        SourceLine line;
+        int[] numbers;
+        int count, a;
+
+        synchronized (as400system) {
+            alias++;
+            a = alias;
+        }
+        numbers = new int[parser.getLineCount()];
+        count = 0;
+        stmt.execute("create alias qtemp/a" + a + " for " + library + "/" + file + "(" + member + ")");
+        try {
+            rs = stmt.executeQuery("select srcseq from qtemp/a" + a);
+            while (rs.next()) {
+                if (count == numbers.length) {
+                    rs.close();
+                    return false;
+                }
+                numbers[count++] = rs.getBigDecimal(1).movePointRight(2).intValue();
+            }
+            rs.close();
+        } finally {
+            stmt.execute("drop alias qtemp/a" + a);
+        }
+        if (count < numbers.length) {
+            return false;
+        }
+        rowsLoaded = 0;
+        lastLoaded = 0;
+        line = parser.getFirst();
+        for (int x = 0; x < count; x++) {
+            line.setNumber(numbers[x] / 100f);
+            loaded(numbers[x] / 100f);
+            line = line.getNext();
+        }
+        // the lines taken out are not in the member anymore.
+        parser.clearDeleted();
+        return true;
+    }
+
+    /**
+     * works out the sequence numbers of the lines, the lines that are there
+     * keep theirs and the new lines are spread out in the gaps. returns false
+     * if a gap is too small.
+     */
+    protected boolean number(SourceParser parser, int[] numbers) {
+        SourceLine line;
+        int row, before, runStart;
+
+        row = 0;
+        before = 0;
+        runStart = -1;
+        line = parser.getFirst();
+        while (line != null) {
+            if (line.isCreated()) {
+                if (runStart == -1) {
+                    runStart = row;
+                }
+            } else {
+                numbers[row] = hundredths(line);
+                if (runStart != -1) {
+                    if (fill(numbers, runStart, row, before, numbers[row]) == false) {
+                        return false;
+                    }
+                    runStart = -1;
+                }
+                before = numbers[row];
+            }
+            row++;
+            line = line.getNext();
+        }
+        if (runStart != -1) {
+            return fill(numbers, runStart, row, before, Math.min(before + (((row - runStart) + 1) * 100), SEQUENCE_MAX + 1));
+        }
+        return true;
+    }
+
+    /**
+     * spreads the numbers of the lines from start to end evenly between
+     * before and after.
+     */
+    protected boolean fill(int[] numbers, int start, int end, int before, int after) {
+        int count;
+
+        count = end - start;
+        if ((after - before) - 1 < count) {
+            return false;
+        }
+        for (int x = 0; x < count; x++) {
+            numbers[start + x] = before + (((after - before) * (x + 1)) / (count + 1));
+        }
+        return true;
+    }
+
+    /**
+     * returns the sql for the row of a line that is in the member once the
+     * new lines are put in, the row among the lines in the member plus the
+     * new lines before it.
+     */
+    protected String renumber(SourceParser parser) {
+        StringBuilder buffer;
+        SourceLine line, lineBefore;
+        int count;
+
+        buffer = new StringBuilder("row_number() over (order by srcseq)");
+        lineBefore = null;
+        count = 0;
+        line = parser.getFirst();
+        while (line != null) {
+            if (line.isCreated()) {
+                count++;
+            } else {
+                if (count > 0) {
+                    if (lineBefore == null) {
+                        buffer.append(" + ").append(count);
+                    } else {
+                        buffer.append(" + case when srcseq > ").append(sequence(lineBefore)).append(" then ")
+                                .append(count).append(" else 0 end");
+                    }
+                    count = 0;
+                }
+                lineBefore = line;
+            }
+            line = line.getNext();
+        }
+        return buffer.toString();
+    }
+
+    static int hundredths(SourceLine line) {
+        return Math.round(line.getNumber() * 100);
+    }
+
+    static String sequence(SourceLine line) {
+        return sequence(hundredths(line));
+    }
+
+    /**
+     * returns a sequence number in hundredths the way sql takes it.
+     */
+    static String sequence(int hundredths) {
+        return (hundredths / 100) + "." + ((hundredths % 100) < 10 ? "0" : "") + (hundredths % 100);
+    }
+
+    /**
+     * returns the text of the line for sql.
+     */
+    protected String quote(SourceLine line) {
+        String text;
+
+        text = line.getText();
+        if (text.endsWith("\n")) {
+            text = text.substring(0, text.length() - 1);
+        }
+        return text.replaceAll("\t", "  ").replaceAll("'", "''");
+    }
+
     public void asaveNew(SourceParser parser, ListenerSave listener) throws Exception {
         Connection connection;
         Statement stmt;
@@ -461,38 +901,38 @@ public class Member {
             // deletes.
             for (int x = 0; x < parser.listDeleted.size(); x++) {
                 line = (SourceLine) parser.listDeleted.get(x);
-                if (line.created == false) {
-                    stmt.execute("delete from qtemp/c" + copyID + " where srcseq = " + line.number);
+                if (line.isCreated() == false) {
+                    stmt.execute("delete from qtemp/c" + copyID + " where srcseq = " + line.getNumber());
                 }
             }
             line = parser.first;
             // inserts and changes.
             while (line != null) {
-                date = line.date;
-                if (line.created) { // new line.
+                date = line.getDate();
+                if (line.isCreated()) { // new line.
                     format(line, buffer);
                     date = today;
                     // calculate the row for this new line.
                     getRow(line, stmt, today, buffer);
-                    stmt.execute("insert into qtemp/c" + copyID + "(srcseq, srcdat, srcdta) values(" + line.number
+                    stmt.execute("insert into qtemp/c" + copyID + "(srcseq, srcdat, srcdta) values(" + line.getNumber()
                             + ", " + date + ", '" + buffer + "')");
                     if (listener != null) {
                         listener.lineSaved(1);
                     }
                     changed1 = true;
-                } else if (line.changed) { // changed line.
+                } else if (line.isChanged()) { // changed line.
                     format(line, buffer);
                     date = today;
                     stmt.execute("update qtemp/c" + copyID + " set srcdta = '" + buffer + "', srcdat = " + date
-                            + " where srcseq = " + line.number);
+                            + " where srcseq = " + line.getNumber());
                     if (listener != null) {
                         listener.lineSaved(1);
                     }
                     changed1 = true;
                 }
-                line.changed = false;
-                line.created = false;
-                line.date = date;
+                line.setChanged(false);
+                line.setCreated(false);
+                line.setDate(date);
                 line = line.getNext();
             }
             if (changed1 || parser.listDeleted.size() > 0) {
@@ -510,7 +950,7 @@ public class Member {
         if (listener != null) {
             listener.saveComplete(1, true, "");
         }
-        parser.listDeleted.clear();
+        parser.clearDeleted();
         parser.setDirty(false);
     }
 
@@ -529,32 +969,32 @@ public class Member {
         if (line.parent == null) {
             previousRow = 0;
         } else {
-            previousRow = (int) (line.parent.number * 100);
+            previousRow = (int) (line.parent.getNumber() * 100);
         }
         if (line.next == null) {
             row = (float) (previousRow + 100);
             row = (row / 100);
-            line.number = row;
+            line.setNumber(row);
         } else {
-            nextRow = (int) (line.next.number * 100);
-            if (line.next.created) {
+            nextRow = (int) (line.next.getNumber() * 100);
+            if (line.next.isCreated()) {
                 // the next row is a new row.
                 // set the row for the current line before doing the next line.
                 row = (float) (previousRow + 100);
                 row = (row / 100);
-                line.number = row;
+                line.setNumber(row);
                 // calculate the row for the next new line.
                 getRow(line.next, stmt, today, buffer);
                 format(line.next, buffer);
-                line.next.date = today;
-                stmt.execute("insert into qtemp/c" + copyID + "(srcseq, srcdat, srcdta) values(" + line.next.number
+                line.next.setDate(today);
+                stmt.execute("insert into qtemp/c" + copyID + "(srcseq, srcdat, srcdta) values(" + line.next.getNumber()
                         + ", " + today + ", '" + buffer + "')");
-                line.next.changed = false;
-                line.next.created = false;
+                line.next.setChanged(false);
+                line.next.setCreated(false);
             } else if ((nextRow - previousRow) > 1) {
                 row = (float) (previousRow + ((nextRow - previousRow) / 2));
                 row = (row / 100);
-                line.number = row;
+                line.setNumber(row);
             } else {
                 // the difference between these two rows is not enought to put a
                 // line inbetween
@@ -567,20 +1007,20 @@ public class Member {
                     row = (float) (previousRow + 100);
                 }
                 row = (row / 100);
-                line.number = row;
+                line.setNumber(row);
                 getRow(line.next, stmt, today, buffer);
                 // if this line has changed, then we should go ahead and update
                 // the changes also instead of doing another
                 // update again later for the source changes.
-                if (line.next.changed) {
+                if (line.next.isChanged()) {
                     format(line.next, buffer);
-                    line.next.date = today;
-                    stmt.execute("update qtemp/c" + copyID + " set srcseq = " + line.next.number + ", srcdta = '"
+                    line.next.setDate(today);
+                    stmt.execute("update qtemp/c" + copyID + " set srcseq = " + line.next.getNumber() + ", srcdta = '"
                             + buffer + "', srcdat = " + today + " where srcseq = " + row);
-                    line.next.changed = false;
+                    line.next.setChanged(false);
                 } else {
                     stmt.execute(
-                            "update qtemp/c" + copyID + " set srcseq = " + line.next.number + " where srcseq = " + row);
+                            "update qtemp/c" + copyID + " set srcseq = " + line.next.getNumber() + " where srcseq = " + row);
                 }
             }
         }
@@ -592,13 +1032,14 @@ public class Member {
      * @param buffer
      */
     public void format(SourceLine line, StringBuffer buffer) {
-        int index;
+        int index, start;
 
+        start = line.getStart();
         try {
-            buffer.replace(0, buffer.length(), line.parser.getText(line.start, line.start + line.length - 1));
+            buffer.replace(0, buffer.length(), line.parser.getText(start, start + line.length - 1));
         } catch (StringIndexOutOfBoundsException e) {
             
-            logger.info("buffer: " + buffer + ", " + buffer.toString().length() + ", " + line.start + ", " + line.length
+            logger.info("buffer: " + buffer + ", " + buffer.toString().length() + ", " + start + ", " + line.length
                     + ", " + line.parser.length());
             
             logger.error(e.getMessage());
@@ -33,7 +33,6 @@ import javax.swing.text.*;
 import javax.swing.tree.*;
 import javax.swing.undo.CannotRedoException;
 import javax.swing.undo.CannotUndoException;
-import javax.swing.undo.UndoManager;
 import javax.swing.undo.UndoableEdit;
 
 import org.eclipse.jgit.api.Git;
@@ -297,7 +296,7 @@ public class PanelMember extends PanelTool implements SourceLoader, ListenerSave
     FlowLayout flowLayout6 = new FlowLayout();
     transient Logger logger = LoggerFactory.getLogger(PanelMember.class);
 
-    protected UndoManager undoManager = new UndoManager();
+    protected SourceUndoManager undoManager = new SourceUndoManager();
     private UndoAction undoAction = new UndoAction();
     private RedoAction redoAction = new RedoAction();
 
@@ -392,6 +391,7 @@ public class PanelMember extends PanelTool implements SourceLoader, ListenerSave
         panelDesign.setLayout(borderLayout14);
         jSplitPane2.setOrientation(JSplitPane.VERTICAL_SPLIT);
         jSplitPane2.setLastDividerLocation(500);
+        editorPaneSource.setEditorKit(new RPGSourceEditorKit());
         editorPaneSource.setFont(new java.awt.Font("DialogInput", 0, 14));
         editorPaneSource.setOpaque(false);
         jPanel17.setLayout(borderLayout15);
@@ -773,20 +773,14 @@ public class PanelMember extends PanelTool implements SourceLoader, ListenerSave
         editorPaneSource.getActionMap().put("redoKeystroke", redoAction);
         editorPaneSource.getDocument().addUndoableEditListener(new UndoableEditListener() {
 
-            @SuppressWarnings("unused")
-            private Locale loc;
-
             @Override
             public void undoableEditHappened(UndoableEditEvent e) {
-                loc = new Locale("en", "US");
-                if (!e.getEdit().getUndoPresentationName().equals("Undo style change")
-                        && !e.getEdit().getUndoPresentationName().equals("Deshacer cambio de estilo")) {
-                    UndoableEdit edit = e.getEdit();
-                    undoManager.addEdit(edit);
-                    undoAction.update();
-                    redoAction.update();
-                }
-
+                // the highlighter does not change the document, so every
+                // edit is a change to the text.
+                UndoableEdit edit = e.getEdit();
+                undoManager.addEdit(edit);
+                undoAction.update();
+                redoAction.update();
             }
 
         });
@@ -982,8 +976,8 @@ public class PanelMember extends PanelTool implements SourceLoader, ListenerSave
     public void requestingFocus(SourceLine sourceLine) {
         editorPaneSource.setSelectionStart(editorPaneSource.getText().length() - 1);
         editorPaneSource.setSelectionEnd(editorPaneSource.getText().length() - 1);
-        editorPaneSource.setSelectionStart(sourceLine.start);
-        editorPaneSource.setSelectionEnd(sourceLine.start);
+        editorPaneSource.setSelectionStart(sourceLine.getStart());
+        editorPaneSource.setSelectionEnd(sourceLine.getStart());
         editorPaneSource.requestFocus();
         focus();
     }
@@ -1014,31 +1008,56 @@ public class PanelMember extends PanelTool implements SourceLoader, ListenerSave
     }
 
     public void requestingFlowChart(SourceBlock sourceBlock) {
-        FCShape shape;
-
-        shape = FCShape.process(editorPaneSource.getText(), sourceBlock.lineStart.getStart(),
-                sourceBlock.lineEnd.getStart() + sourceBlock.lineEnd.getLength());
-        panelFlowChart.setFCShape(shape);
+        // built from the lines of the block, and again when they change.
+        panelFlowChart.setBlock(sourceParser, sourceBlock);
         jTabbedPane1.setSelectedComponent(panelFlowChartTab);
     }
 
     /**
      * gets called when a line is loaded from the as400. the source file is
-     * being loaded one line at a time.
+     * being loaded one line at a time. the line is added to the parser on the
+     * event thread, the listeners read the parser there.
      */
-    public void lineLoaded(float number, int date, String line) {
+    public void lineLoaded(final float number, final int date, final String line) {
         final int count;
 
         this.count++;
         count = this.count;
-        // source parser will be null if the user closed the panel before
-        // finished loading.
-        if (sourceParser == null) {
-            return;
-        }
-        sourceParser.lineLoaded(number, date, line);
         SwingUtilities.invokeLater(new Runnable() {
             public void run() {
+                // source parser will be null if the user closed the panel
+                // before finished loading.
+                if (sourceParser == null) {
+                    return;
+                }
+                sourceParser.lineLoaded(number, date, line);
+                panelLoading.setText("Loading Source. " + count + " lines loaded.");
+            }
+        });
+    }
+
+    /**
+     * gets called when a block of lines is loaded from the as400. the block is
+     * added to the parser on the event thread, so the listeners that get the
+     * events later never read the parser while the loader writes to it. the
+     * loader uses the buffer of the lines again, so it is copied.
+     */
+    public void linesLoaded(float[] numbers, int[] dates, CharSequence lines) {
+        final float[] numbersBlock = numbers.clone();
+        final int[] datesBlock = dates.clone();
+        final String linesBlock = lines.toString();
+        final int count;
+
+        this.count += numbers.length;
+        count = this.count;
+        SwingUtilities.invokeLater(new Runnable() {
+            public void run() {
+                // source parser will be null if the user closed the panel
+                // before finished loading.
+                if (sourceParser == null) {
+                    return;
+                }
+                sourceParser.linesLoaded(numbersBlock, datesBlock, linesBlock);
                 panelLoading.setText("Loading Source. " + count + " lines loaded.");
             }
         });
@@ -1395,10 +1414,10 @@ public class PanelMember extends PanelTool implements SourceLoader, ListenerSave
         int rowLast = -1;
         int dotLast = -1;
         int dotEndLast = -1;
-        SimpleAttributeSet attributesGray = new SimpleAttributeSet();
+        Highlighter.HighlightPainter painterGray = new DefaultHighlighter.DefaultHighlightPainter(new Color(235, 235, 235));
+        Object tagGray;
 
         public HandlerCaret() {
-            StyleConstants.setBackground(attributesGray, new Color(235, 235, 235));
         }
 
         /**
@@ -1408,7 +1427,7 @@ public class PanelMember extends PanelTool implements SourceLoader, ListenerSave
          */
         public void changed(boolean modified) {
             Point point;
-            int dot;
+            int dot, length;
             LinePosition position;
             Caret caret;
             Rectangle rectangle;
@@ -1427,16 +1446,15 @@ public class PanelMember extends PanelTool implements SourceLoader, ListenerSave
             line = sourceParser.getLine(dot);
             position = RPGLineSpec.getLinePosition(line, point.x);
             // if same row and same position, dont do anything
-            // if the content was modified, then the highlighter redid the
-            // highlighting,
-            // so the grey must be applied again.
+            // if the content was modified, the length of the line might have
+            // changed, so the band is worked out again.
             if (modified == false && position != null && position.equals(positionLast) && rowLast == point.y) {
                 return;
             }
             positionLast = position;
-            white();
             lineLast = line;
             if (position == null) {
+                white();
                 labelDescription.setText("");
                 if (popup != null) {
                     popup.hide();
@@ -1449,12 +1467,11 @@ public class PanelMember extends PanelTool implements SourceLoader, ListenerSave
             // position returned.
             // see if the column is past the first of the line position.
             dot -= (point.x - position.start);
-            dotLast = dot;
-            dotEndLast = (position.end - position.start) + 1;
-            if (dot + dotEndLast > line.start + line.length) {
-                dotEndLast = (line.start + line.length) - dot;
+            length = (position.end - position.start) + 1;
+            if (dot + length > line.getStart() + line.length) {
+                length = (line.getStart() + line.length) - dot;
             }
-            gray(dotLast, dotEndLast);
+            gray(dot, length);
             if (labelDescription.getText().equals(position.description) && rowLast == point.y) {
                 return;
             }
@@ -1481,15 +1498,35 @@ public class PanelMember extends PanelTool implements SourceLoader, ListenerSave
             }
         }
 
-        private void gray(final int start, final int end) {
-            ((StyledDocument) editorPaneSource.getDocument()).setCharacterAttributes(start, end, attributesGray, false);
+        /**
+         * shows the band behind the columns, it is moved rather than taken
+         * away and added again, so only the old and new columns repaint.
+         */
+        private void gray(int start, int length) {
+            if (tagGray != null && start == dotLast && length == dotEndLast) {
+                return;
+            }
+            try {
+                if (tagGray == null) {
+                    tagGray = editorPaneSource.getHighlighter().addHighlight(start, start + length, painterGray);
+                } else {
+                    editorPaneSource.getHighlighter().changeHighlight(tagGray, start, start + length);
+                }
+                dotLast = start;
+                dotEndLast = length;
+            } catch (BadLocationException e) {
+                logger.error(e.getMessage());
+            }
         }
 
         private void white() {
-            if (lineLast == null) {
+            if (tagGray == null) {
                 return;
             }
-            sourceHighlighter.addStyle(lineLast);
+            editorPaneSource.getHighlighter().removeHighlight(tagGray);
+            tagGray = null;
+            dotLast = -1;
+            dotEndLast = -1;
         }
 
         public void stateChanged(ChangeEvent e) {
@@ -1937,7 +1974,13 @@ public class PanelMember extends PanelTool implements SourceLoader, ListenerSave
             if (end == -1) {
                 end = editorPaneSource.getText().length() - 1;
             }
-            refactor.refactor(sourceParser, start, end);
+            // one undo for the whole refactor.
+            undoManager.beginCompound((String) getValue(Action.NAME));
+            try {
+                refactor.refactor(sourceParser, start, end);
+            } finally {
+                undoManager.endCompound();
+            }
         }
     }
 
@@ -2246,6 +2289,7 @@ public class PanelMember extends PanelTool implements SourceLoader, ListenerSave
                 setEnabled(false);
                 putValue(Action.NAME, "Undo");
             }
+            putValue(Action.SHORT_DESCRIPTION, "Undo history: " + ((undoManager.getSize() + 1023) / 1024) + " KB");
         }
 
     }
@@ -2312,12 +2356,24 @@ class PanelDspf extends JPanel implements ListenerParser {
      */
     private static final long serialVersionUID = 1071738252107348094L;
     SourceBlock selectedBlock;
-    DspfLine lineFirst = null;
+    // the record format shown.
+    Screen screen;
     DspfLine lineSelected = null;
     int textHeight, textWidth, descent;
     Font font;
-    boolean changed;
+    // the part of the screen to paint again after the events.
+    Rectangle dirty;
     ListenerPanelDspf listener;
+    // the record formats that have been shown, by block. they are kept up to
+    // date with the source, so showing one again does not parse it again.
+    @SuppressWarnings("rawtypes")
+    IdentityHashMap mapScreens = new IdentityHashMap();
+    // the line of a screen for each source line.
+    @SuppressWarnings("rawtypes")
+    IdentityHashMap mapLines = new IdentityHashMap();
+    // the screen for the first line of each block.
+    @SuppressWarnings("rawtypes")
+    IdentityHashMap mapStarts = new IdentityHashMap();
 
     public PanelDspf() {
         FontMetrics fm;
@@ -2351,14 +2407,34 @@ class PanelDspf extends JPanel implements ListenerParser {
             listener.selectionChanged();
         }
     }
+
+    public DspfLine getFirst() {
+        if (screen == null) {
+            return null;
+        }
+        return screen.first;
+    }
+
+    /**
+     * only the lines that are in the area being painted are drawn.
+     */
 @Override
     public void paintComponent(Graphics graphics) {
+        Rectangle clip, bounds;
+        DspfLine line;
+
         super.paintComponent(graphics);
         graphics.setColor(new Color(85, 85, 85));
         graphics.fillRect(0, 0, (80 * textWidth) + descent, (24 * textHeight) + descent);
         graphics.setFont(font);
-        if (lineFirst != null) {
-            lineFirst.paint(graphics, font, textWidth, textHeight, descent);
+        clip = graphics.getClipBounds();
+        line = getFirst();
+        while (line != null) {
+            bounds = line.getBounds(textWidth, textHeight, descent);
+            if (bounds != null && (clip == null || bounds.intersects(clip))) {
+                line.paint(graphics, font, textWidth, textHeight, descent);
+            }
+            line = line.next;
         }
         if (lineSelected != null) {
             graphics.setColor(Color.yellow);
@@ -2366,45 +2442,102 @@ class PanelDspf extends JPanel implements ListenerParser {
         }
     }
 
+    /**
+     * shows a record format. the lines of a record format that was shown
+     * before are used again if the block still has the same lines.
+     */
+    @SuppressWarnings("unchecked")
     public DspfLine setScreen(SourceBlock selectedBlock) {
         SourceLine line;
         DspfLine lineDspf, lineLast;
 
         this.selectedBlock = selectedBlock;
-        lineFirst = null;
         lineSelected = null;
         if (selectedBlock.lineStart == null) {
+            screen = null;
             repaint();
             return null;
         }
+        screen = (Screen) mapScreens.get(selectedBlock);
+        if (screen != null && screen.isCurrent()) {
+            repaint();
+            return screen.first;
+        }
+        if (screen != null) {
+            forget(screen);
+        }
+        forgetInvalid();
+        screen = new Screen(selectedBlock);
         lineLast = null;
         line = selectedBlock.lineStart.getNext();
         while (line != null) {
             lineDspf = new DspfLine(lineLast, line);
+            lineDspf.screen = screen;
+            mapLines.put(line, lineDspf);
             if (lineLast != null) {
                 lineLast.next = lineDspf;
             }
             lineLast = lineDspf;
-            if (lineFirst == null) {
-                lineFirst = lineDspf;
+            if (screen.first == null) {
+                screen.first = lineDspf;
             }
             if (line == selectedBlock.lineEnd) {
                 break;
             }
             line = line.getNext();
         }
+        mapScreens.put(selectedBlock, screen);
+        mapStarts.put(selectedBlock.lineStart, screen);
         repaint();
-        return lineFirst;
+        return screen.first;
     }
 
+    protected void forget(Screen screen) {
+        DspfLine line;
+
+        line = screen.first;
+        while (line != null) {
+            if (mapLines.get(line.line) == line) {
+                mapLines.remove(line.line);
+            }
+            line = line.next;
+        }
+        mapScreens.remove(screen.block);
+        if (mapStarts.get(screen.block.lineStart) == screen) {
+            mapStarts.remove(screen.block.lineStart);
+        }
+    }
+
+    /**
+     * drops the screens of the blocks that are gone.
+     */
+    @SuppressWarnings("rawtypes")
+    protected void forgetInvalid() {
+        ArrayList list;
+        Screen s;
+
+        list = new ArrayList(mapScreens.values());
+        for (int x = 0; x < list.size(); x++) {
+            s = (Screen) list.get(x);
+            if (s.block.lineStart == null || s.block.lineStart.isInvalid()) {
+                forget(s);
+            }
+        }
+    }
+
+    /**
+     * only the lines that changed are parsed again, and only the part of the
+     * screen they are on is painted again.
+     */
     @SuppressWarnings("rawtypes")
     public void parserEvents(ArrayList listEvents) {
         SourceParserEvent event;
+        SourceLine line;
 
-        if (selectedBlock == null) {
+        if (mapScreens.isEmpty()) {
             return;
         }
-        changed = false;
+        dirty = null;
         for (int x = 0; x < listEvents.size(); x++) {
             event = (SourceParserEvent) listEvents.get(x);
             if (event.type == SourceParserEvent.CHANGED) {
@@ -2413,10 +2546,19 @@ class PanelDspf extends JPanel implements ListenerParser {
                 added(event.line);
             } else if (event.type == SourceParserEvent.REMOVED) {
                 removed(event.line);
+            } else if (event.type == SourceParserEvent.LOADED) {
+                line = event.line;
+                while (line != null) {
+                    added(line);
+                    if (line == event.lineLast) {
+                        break;
+                    }
+                    line = line.getNext();
+                }
             }
         }
-        if (changed) {
-            repaint();
+        if (dirty != null) {
+            repaint(dirty);
         }
     }
 
@@ -2425,43 +2567,39 @@ class PanelDspf extends JPanel implements ListenerParser {
      *
      * @param lineAdded RPGSourceLine
      */
+    @SuppressWarnings("unchecked")
     protected void added(SourceLine lineAdded) {
         DspfLine line, lineNew;
-        SourceLine lineSource;
+        Screen s;
 
-        // if this line is a member of the block then it gets inserted into
-        // the lines.
-        line = lineFirst;
-        while (line != null) {
-            lineSource = line.line;
-            if (lineSource.getNext().equals(lineAdded)) {
-                lineNew = new DspfLine(line, lineAdded);
-                lineNew.next = line.next;
-                line.next = lineNew;
-                if (lineNew.next != null) {
-                    lineNew.next.previous = lineNew;
-                }
-                changed = true;
-                if (listener != null) {
-                    listener.lineAdded(lineNew);
-                }
+        // if the line before it is in a screen then it gets inserted after
+        // it, if it is the first line of a block then it goes first.
+        line = (DspfLine) mapLines.get(lineAdded.getParent());
+        if (line != null && line.line.getNext() == lineAdded) {
+            s = line.screen;
+            lineNew = new DspfLine(line, lineAdded);
+            lineNew.next = line.next;
+            line.next = lineNew;
+        } else {
+            s = (Screen) mapStarts.get(lineAdded.getParent());
+            if (s == null) {
                 return;
             }
-            line = line.next;
+            lineNew = new DspfLine(null, lineAdded);
+            lineNew.next = s.first;
+            s.first = lineNew;
         }
-        // if this section is reached, then the line added is the first or not a
-        // part of this block.
-        if (selectedBlock.lineStart.equals(lineAdded)) {
-            lineNew = new DspfLine(line, lineAdded);
-            lineNew.next = lineFirst;
-            if (lineFirst != null) {
-                lineFirst.previous = lineNew;
-            }
-            lineFirst = lineNew;
+        if (lineNew.next != null) {
+            lineNew.next.previous = lineNew;
+        }
+        lineNew.screen = s;
+        mapLines.put(lineAdded, lineNew);
+        parseFrom(lineNew.next);
+        if (s == screen) {
+            dirty(lineNew);
             if (listener != null) {
                 listener.lineAdded(lineNew);
             }
-            changed = true;
         }
     }
 
@@ -2473,14 +2611,17 @@ class PanelDspf extends JPanel implements ListenerParser {
     protected void changed(SourceLine lineChanged) {
         DspfLine line;
 
-        line = lineFirst;
-        while (line != null) {
-            if (line.line.equals(lineChanged)) {
-                changed = true;
-                line.parse();
-                return;
-            }
-            line = line.next;
+        line = (DspfLine) mapLines.get(lineChanged);
+        if (line == null) {
+            return;
+        }
+        if (line.screen == screen) {
+            dirty(line);
+        }
+        line.parse();
+        parseFrom(line.next);
+        if (line.screen == screen) {
+            dirty(line);
         }
     }
 
@@ -2492,32 +2633,114 @@ class PanelDspf extends JPanel implements ListenerParser {
     protected void removed(SourceLine lineRemoved) {
         DspfLine line;
 
-        line = lineFirst;
-        while (line != null) {
-            if (line.line.equals(lineRemoved)) {
+        line = (DspfLine) mapLines.remove(lineRemoved);
+        if (line == null) {
+            return;
+        }
+        if (line.screen == screen) {
+            dirty(line);
+            if (listener != null) {
+                listener.lineDeleted(line);
+            }
+            if (line.equals(lineSelected)) {
+                lineSelected = null;
                 if (listener != null) {
-                    listener.lineDeleted(line);
+                    listener.selectionChanged();
                 }
-                if (line.equals(lineSelected)) {
-                    lineSelected = null;
-                    if (listener != null) {
-                        listener.selectionChanged();
-                    }
-                }
-                changed = true;
-                if (line.previous != null) {
-                    line.previous.next = line.next;
-                } else {
-                    // no previous means this is first line.
-                    lineFirst = line.next;
+            }
+        }
+        if (line.previous != null) {
+            line.previous.next = line.next;
+        } else {
+            // no previous means this is first line.
+            line.screen.first = line.next;
+        }
+        if (line.next != null) {
+            line.next.previous = line.previous;
+            parseFrom(line.next);
+        }
+    }
+
+    /**
+     * parses a line again, and the ones after it while they are or were a
+     * continuation, that depends on the line before them.
+     */
+    protected void parseFrom(DspfLine l) {
+        int type;
+
+        while (l != null) {
+            type = l.type;
+            if (l.screen == screen) {
+                dirty(l);
+            }
+            l.parse();
+            if (l.screen == screen) {
+                dirty(l);
+            }
+            if (type != DspfLine.TYPE_CONTINUATION && l.type != DspfLine.TYPE_CONTINUATION) {
+                break;
+            }
+            l = l.next;
+        }
+    }
+
+    /**
+     * adds the area of the field a line belongs to, the attributes and
+     * continuations that follow a field change how it is drawn.
+     */
+    protected void dirty(DspfLine line) {
+        Rectangle bounds;
+
+        while (line.previous != null
+                && (line.type == DspfLine.TYPE_ATTRIBUTE || line.type == DspfLine.TYPE_CONTINUATION)) {
+            line = line.previous;
+        }
+        bounds = line.getBounds(textWidth, textHeight, descent);
+        if (bounds == null) {
+            return;
+        }
+        if (dirty == null) {
+            dirty = bounds;
+        } else {
+            dirty.add(bounds);
+        }
+    }
+
+    /**
+     * the lines of a record format.
+     */
+    class Screen {
+
+        SourceBlock block;
+        DspfLine first;
+
+        Screen(SourceBlock block) {
+            this.block = block;
+        }
+
+        /**
+         * returns true if the lines are still the lines of the block.
+         */
+        boolean isCurrent() {
+            SourceLine line;
+            DspfLine lineDspf;
+
+            if (block.lineStart == null || block.lineStart.isInvalid()) {
+                return false;
+            }
+            line = block.lineStart.getNext();
+            lineDspf = first;
+            while (line != null && lineDspf != null) {
+                if (lineDspf.line != line) {
+                    return false;
                 }
-                if (line.next != null) {
-                    line.next.previous = line.previous;
+                if (line == block.lineEnd) {
+                    return lineDspf.next == null;
                 }
-
-                return;
+                line = line.getNext();
+                lineDspf = lineDspf.next;
             }
-            line = line.next;
+            return line == null && lineDspf == null;
         }
     }
 
@@ -2529,7 +2752,7 @@ class PanelDspf extends JPanel implements ListenerParser {
         public void mouseClicked(MouseEvent evt) {
             DspfLine line;
 
-            line = lineFirst;
+            line = getFirst();
             while (line != null) {
                 if (line.hitTest(evt.getX(), evt.getY(), textWidth, textHeight)) {
                     lineSelected = line;
@@ -2548,6 +2771,8 @@ class DspfLine {
 
     DspfLine previous, next;
     SourceLine line;
+    // the record format the line is in.
+    PanelDspf.Screen screen;
     String name;
     String inputType; // I/O/B
     String dataType; // A/Y/....
@@ -2574,35 +2799,39 @@ class DspfLine {
         parse();
     }
 
+    /**
+     * parses the line from its own text, the text is copied once.
+     */
     public void parse() {
-        StringBuffer source;
+        String text;
 
         if (line.isComment() || line.length <= 44) {
             type = TYPE_INVALID;
             return;
         }
-        source = line.parser.getText();
-        inputType = source.substring(line.start + 37, line.start + 38).trim();
-        n01 = source.substring(line.start + 7, line.start + 10).trim();
-        n02 = source.substring(line.start + 10, line.start + 13).trim();
-        n03 = source.substring(line.start + 13, line.start + 16).trim();
+        text = line.getText();
+        reference = false;
+        inputType = trimmed(text, 37, 38);
+        n01 = trimmed(text, 7, 10);
+        n02 = trimmed(text, 10, 13);
+        n03 = trimmed(text, 13, 16);
         try {
             if (inputType.trim().length() > 0) {
                 // EDIT
                 // get the name of the edit.
-                this.name = source.substring(line.start + 18, line.start + 28).trim();
-                dataType = source.substring(line.start + 34, line.start + 35);
-                if (source.substring(line.start + 28, line.start + 29).equalsIgnoreCase("R")) {
+                this.name = trimmed(text, 18, 28);
+                dataType = text.substring(34, 35);
+                if (text.substring(28, 29).equalsIgnoreCase("R")) {
                     reference = true;
                     // get the length;
                     length = 0;
                 } else {
                     // get the length;
 
-                    length = Integer.parseInt(line.get(LinePosition.A_LENGTH).trim());
+                    length = Integer.parseInt(SourceLine.get(text, 0, line.length, LinePosition.A_LENGTH));
                 }
                 width = length;
-                String buffer = source.substring(line.start + 35, line.start + 37).trim();
+                String buffer = trimmed(text, 35, 37);
                 if (buffer.length() > 0) {
                     precision = Integer.parseInt(buffer);
                 } else {
@@ -2614,17 +2843,17 @@ class DspfLine {
                     type = TYPE_HIDDEN;
                 } else {
                     type = TYPE_EDIT;
-                    row = Integer.parseInt(source.substring(line.start + 38, line.start + 41).trim());
-                    col = Integer.parseInt(source.substring(line.start + 41, line.start + 44).trim());
+                    row = Integer.parseInt(trimmed(text, 38, 41));
+                    col = Integer.parseInt(trimmed(text, 41, 44));
                 }
                 if (line.length > 44) {
-                    keyword = source.substring(line.start + 44, (line.start + line.length) - 1).trim();
+                    keyword = trimmed(text, 44, line.length - 1);
                 } else {
                     keyword = "";
                 }
             } // row == blanks
-            else if (line.length > 44 && source.substring(line.start + 39, line.start + 41).trim().length() == 0) {
-                String buffer = source.substring(line.start + 44, (line.start + line.length) - 1).trim();
+            else if (line.length > 44 && trimmed(text, 39, 41).length() == 0) {
+                String buffer = trimmed(text, 44, line.length - 1);
                 keyword = "";
                 if (buffer.length() > 0) {
                     // could be a continuation.
@@ -2632,9 +2861,9 @@ class DspfLine {
                     // character then this is a continuation.
                     if (previous != null
                             && (previous.type == DspfLine.TYPE_CONSTANT || previous.type == DspfLine.TYPE_CONTINUATION)
-                            && source.charAt((previous.line.start + previous.line.length) - 2) == '-'
-                            && (source.charAt((line.start + line.length) - 2) == '-'
-                                    || source.charAt((line.start + line.length) - 2) == '\'')) {
+                            && previous.line.charAt(previous.line.length - 2) == '-'
+                            && (text.charAt(line.length - 2) == '-'
+                                    || text.charAt(line.length - 2) == '\'')) {
                         type = TYPE_CONTINUATION;
                         name = buffer.substring(0, buffer.length() - 1);
                         width = name.length();
@@ -2653,22 +2882,21 @@ class DspfLine {
                 // CONSTANT
                 keyword = "";
                 type = TYPE_CONSTANT;
-                source = line.parser.getText();
-                row = Integer.parseInt(source.substring(line.start + 38, line.start + 41).trim());
-                col = Integer.parseInt(source.substring(line.start + 41, line.start + 44).trim());
+                row = Integer.parseInt(trimmed(text, 38, 41));
+                col = Integer.parseInt(trimmed(text, 41, 44));
                 // could be DATE or TIME constant
-                if (source.charAt(line.start + 44) == '\'') {
+                if (text.charAt(44) == '\'') {
                     try {
-                        this.name = source.substring(line.start + 45, (line.start + line.length) - 2);
+                        this.name = text.substring(45, line.length - 2);
                     } catch (Exception e) {
-                        // System.out.println(line.start + ", " + line.length +
+                        // System.out.println(start + ", " + line.length +
                         // ", text: " + line.getText() + ")");
-                        logger.info(line.start + ", " + line.length + ", text: " + line.getText() + ")");
+                        logger.info(line.getStart() + ", " + line.length + ", text: " + text + ")");
                         // e.printStackTrace();
                         logger.error(e.getMessage());
                     }
                 } else {
-                    this.name = source.substring(line.start + 44, (line.start + line.length) - 1);
+                    this.name = text.substring(44, line.length - 1);
                 }
                 width = name.length();
             }
@@ -2677,6 +2905,44 @@ class DspfLine {
         }
     }
 
+    /**
+     * returns the text between start and end without the blanks at either
+     * end.
+     */
+    static String trimmed(String text, int start, int end) {
+        while (start < end && text.charAt(start) <= ' ') {
+            start++;
+        }
+        while (end > start && text.charAt(end - 1) <= ' ') {
+            end--;
+        }
+        return text.substring(start, end);
+    }
+
+    /**
+     * returns the area the line is drawn in with its continuations, or null
+     * if nothing is drawn for it.
+     */
+    public Rectangle getBounds(int textWidth, int textHeight, int descent) {
+        DspfLine l;
+        int w;
+
+        if (type != TYPE_CONSTANT && type != TYPE_EDIT && type != TYPE_CONTINUATION) {
+            return null;
+        }
+        if (type == TYPE_CONTINUATION) {
+            getPosition();
+        }
+        w = width;
+        l = next;
+        while (l != null && l.type == TYPE_CONTINUATION) {
+            w += l.width;
+            l = l.next;
+        }
+        return new Rectangle(((col - 1) * textWidth) - 2, ((row - 1) * textHeight) - 2, ((w + 1) * textWidth) + 4,
+                textHeight + descent + 4);
+    }
+
     protected void getPosition() {
         // get the column that this is drawn on.
         int diff = 0;
@@ -2695,6 +2961,8 @@ class DspfLine {
     }
 
     public void paint(Graphics graphics, Font font, int textWidth, int textHeight, int descent) {
+        // the attributes are looked at again each time.
+        underline = false;
         // constant?
         if (type == TYPE_CONTINUATION) {
             getPosition();
@@ -2731,9 +2999,6 @@ class DspfLine {
                 graphics.drawString(inputType, ((col - 1) + x) * textWidth, (row * textHeight) - descent);
             }
         }
-        if (next != null) {
-            next.paint(graphics, font, textWidth, textHeight, descent);
-        }
     }
 
     /**
@@ -2835,7 +3100,7 @@ class DspfLine {
             l = l.next;
         }
         try {
-            line.parser.getDocument().remove(line.start, total);
+            line.parser.getDocument().remove(line.getStart(), total);
         } catch (Exception e) {
             // e.printStackTrace();
             logger.error(e.getMessage());
@@ -2850,7 +3115,7 @@ class DspfLine {
         ArrayList list;
 
         list = new ArrayList();
-        buffer = new StringBuffer(line.parser.getText(line.start, line.start + (line.length - 1)));
+        buffer = new StringBuffer(line.parser.getText(line.getStart(), line.getStart() + (line.length - 1)));
         // indicators 1
         line.formatText(buffer, LinePosition.A_INDICATOR1, n01.trim());
         // indicators 2
@@ -2940,18 +3205,18 @@ class DspfLine {
             // delete all the continuations.
             l = next;
             while (l != null && l.type == TYPE_CONTINUATION) {
-                line.parser.getDocument().remove(l.line.start, l.line.length);
+                line.parser.getDocument().remove(l.line.getStart(), l.line.length);
                 l = l.next;
             }
             // dont delete the end of line, so the line wont be gone.
-            line.parser.getDocument().remove(line.start, line.length - 1);
-            line.parser.getDocument().insertString(line.start, buffer.toString(), null);
+            line.parser.getDocument().remove(line.getStart(), line.length - 1);
+            line.parser.getDocument().insertString(line.getStart(), buffer.toString(), null);
             // add in new continuations.
             buffer.replace(0, buffer.length(), "     A                                      \n");
             while (list.size() > 0) {
                 String text = (String) list.remove(list.size() - 1);
                 buffer.replace(44, buffer.length() - 1, text);
-                line.parser.getDocument().insertString(line.start + line.length, buffer.toString(), null);
+                line.parser.getDocument().insertString(line.getStart() + line.length, buffer.toString(), null);
             }
         } catch (Exception e) {
             // e.printStackTrace();
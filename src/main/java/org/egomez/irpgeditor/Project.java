@@ -48,6 +48,7 @@ public class Project extends NodeAbstract {
     @SuppressWarnings("rawtypes")
     ArrayList listListeners = new ArrayList();
     ProjectMember memberSelected;
+    transient CloneIndex cloneIndex;
     transient Logger logger = LoggerFactory.getLogger(Project.class);
 
     /**
@@ -162,6 +163,20 @@ public class Project extends NodeAbstract {
         return fileName;
     }
 
+    /**
+     * returns the index of the code that is repeated between the members of
+     * the project, it is kept in the directory of the project.
+     *
+     * @return CloneIndex
+     */
+    public synchronized CloneIndex getCloneIndex() {
+        if (cloneIndex == null) {
+            cloneIndex = new CloneIndex(new File(System.getProperty("user.home") + File.separator + ".iRPGEditor"
+                    + File.separator + "projects" + File.separator + name));
+        }
+        return cloneIndex;
+    }
+
     /**
      * returns all the source members in the project.
      *
@@ -65,6 +65,32 @@ public class RPGLineSpec {
         })
     };
 
+    // the position for each column of each spec, the first position of a
+    // spec that holds a column wins.
+    static final LinePosition[][] COLUMNS = new LinePosition[128][];
+
+    static {
+        LinePosition[] columns;
+        int end;
+
+        for (RPGLineSpec spec : SPECS) {
+            end = 0;
+            for (LinePosition position : spec.positions) {
+                end = Math.max(end, position.end);
+            }
+            columns = new LinePosition[end + 1];
+            for (LinePosition position : spec.positions) {
+                for (int col = Math.max(position.start, 0); col <= position.end; col++) {
+                    if (columns[col] == null) {
+                        columns[col] = position;
+                    }
+                }
+            }
+            COLUMNS[spec.specUpper] = columns;
+            COLUMNS[spec.specLower] = columns;
+        }
+    }
+
     private RPGLineSpec(char specUpper, char specLower, LinePosition[] positions) {
         this.specUpper = specUpper;
         this.specLower = specLower;
@@ -75,39 +101,35 @@ public class RPGLineSpec {
     }
 
     public static LinePosition getLinePosition(char c, int col) {
-        RPGLineSpec spec;
-        LinePosition position;
+        LinePosition[] columns;
 
         if (col == 6) {
             return LinePosition.FORM_TYPE;
         }
-        for (RPGLineSpec SPECS1 : SPECS) {
-            spec = SPECS1;
-            if (spec.specLower == c || spec.specUpper == c) {
-                for (LinePosition position1 : spec.positions) {
-                    position = position1;
-                    if (col >= position.start && col <= position.end) {
-                        return position;
-                    }
-                }
-                return null;
-            }
+        if (c >= COLUMNS.length) {
+            return null;
+        }
+        columns = COLUMNS[c];
+        if (columns == null || col < 0 || col >= columns.length) {
+            return null;
         }
-        return null;
+        return columns[col];
     }
 
     public static LinePosition getLinePosition(SourceLine line, int position) {
-        StringBuilder source = new StringBuilder();
+        CharSequence source;
         char c;
+        int start;
 
         if (line == null) {
             return null;
         }
-        source.append(line.parser.getText());
-        if (line.start + 6 >= source.length()) {
+        source = line.parser.getText();
+        start = line.getStart();
+        if (start + 6 >= source.length()) {
             return null;
         }
-        c = source.charAt(line.start + 6);
+        c = source.charAt(start + 6);
         if (c == '*') {
             return null;
         }
@@ -118,12 +140,12 @@ public class RPGLineSpec {
             return null;
         }
         // compile time data.
-        if (source.charAt(line.start) == '*'
-                && source.charAt(line.start + 1) == '*') {
+        if (source.charAt(start) == '*'
+                && source.charAt(start + 1) == '*') {
             return null;
         }
 
-        c = source.charAt(line.start + 5);
+        c = source.charAt(start + 5);
         return getLinePosition(c, position);
     }
 }
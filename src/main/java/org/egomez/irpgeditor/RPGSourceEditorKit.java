@@ -0,0 +1,152 @@
+package org.egomez.irpgeditor;
+
+/*
+ * Copyright:    Copyright (c) 2004
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2, or (at your option)
+ * any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this software; see the file COPYING.  If not, write to
+ * the Free Software Foundation, Inc., 59 Temple Place, Suite 330,
+ * Boston, MA 02111-1307 USA
+ */
+import java.awt.*;
+import javax.swing.text.*;
+
+/**
+ * an editor kit for source members. the text is shown by one view that
+ * paints every line in the colors of the style tokens the highlighter keeps
+ * for the line, the document itself never gets any attributes. so styling a
+ * line does not change the document, there are no elements for the runs and
+ * no style change edits for undo.
+ *
+ * until a highlighter is set, or for lines it has not styled yet, the text is
+ * painted plain.
+ *
+ * @author Derek Van Kooten.
+ */
+@SuppressWarnings("serial")
+public class RPGSourceEditorKit extends StyledEditorKit {
+
+    transient RPGSourceHighlighter highlighter;
+    transient ViewFactory factory = new ViewFactory() {
+        @Override
+        public View create(Element element) {
+            return new SourceView(element);
+        }
+    };
+
+    public void setHighlighter(RPGSourceHighlighter highlighter) {
+        this.highlighter = highlighter;
+    }
+
+    public RPGSourceHighlighter getHighlighter() {
+        return highlighter;
+    }
+
+    @Override
+    public ViewFactory getViewFactory() {
+        return factory;
+    }
+
+    /**
+     * paints the lines a token at a time.
+     */
+    class SourceView extends PlainView {
+
+        Font font;
+        Font fontBold;
+        Color[] colors = new Color[RPGSourceTokenizer.STYLES];
+        boolean[] bold = new boolean[RPGSourceTokenizer.STYLES];
+
+        SourceView(Element element) {
+            super(element);
+            for (int x = 0; x < RPGSourceTokenizer.STYLES; x++) {
+                colors[x] = StyleConstants.getForeground(RPGSourceHighlighter.attributesStyles[x]);
+                bold[x] = StyleConstants.isBold(RPGSourceHighlighter.attributesStyles[x]);
+            }
+        }
+
+        @SuppressWarnings("deprecation")
+        @Override
+        protected int drawUnselectedText(Graphics g, int x, int y, int p0, int p1) throws BadLocationException {
+            Element root;
+            int[] tokens;
+            int row, lineStart, start, end, tokenStart, tokenEnd;
+
+            if (highlighter == null) {
+                return super.drawUnselectedText(g, x, y, p0, p1);
+            }
+            root = getElement();
+            row = root.getElementIndex(p0);
+            tokens = highlighter.getTokens(row);
+            if (tokens == null) {
+                return super.drawUnselectedText(g, x, y, p0, p1);
+            }
+            lineStart = root.getElement(row).getStartOffset();
+            start = p0;
+            for (int t = 0; t < tokens.length && start < p1; t += 2) {
+                tokenStart = lineStart + tokens[t];
+                tokenEnd = tokenStart + (tokens[t + 1] >>> 8);
+                if (tokenEnd <= start) {
+                    continue;
+                }
+                // the gap before the token.
+                if (tokenStart > start) {
+                    end = Math.min(tokenStart, p1);
+                    x = draw(g, x, y, start, end, -1);
+                    start = end;
+                }
+                end = Math.min(tokenEnd, p1);
+                if (end > start) {
+                    x = draw(g, x, y, start, end, tokens[t + 1] & 0xff);
+                    start = end;
+                }
+            }
+            if (start < p1) {
+                x = draw(g, x, y, start, p1, -1);
+            }
+            return x;
+        }
+
+        @SuppressWarnings("deprecation")
+        @Override
+        protected int drawSelectedText(Graphics g, int x, int y, int p0, int p1) throws BadLocationException {
+            g.setFont(getContainer().getFont());
+            return super.drawSelectedText(g, x, y, p0, p1);
+        }
+
+        /**
+         * draws the text from p0 to p1 in a style, -1 is the plain text.
+         */
+        @SuppressWarnings("deprecation")
+        protected int draw(Graphics g, int x, int y, int p0, int p1, int style) throws BadLocationException {
+            Segment segment;
+            Container host;
+
+            host = getContainer();
+            if (host.getFont() != font) {
+                font = host.getFont();
+                fontBold = font.deriveFont(Font.BOLD);
+            }
+            if (style == -1) {
+                g.setColor(host.isEnabled() ? host.getForeground() : ((JTextComponent) host).getDisabledTextColor());
+                g.setFont(font);
+            } else {
+                g.setColor(colors[style]);
+                g.setFont(bold[style] ? fontBold : font);
+            }
+            segment = getLineBuffer();
+            getDocument().getText(p0, p1 - p0, segment);
+            return Utilities.drawTabbedText(segment, x, y, g, this, p0);
+        }
+    }
+}
@@ -19,24 +19,28 @@ package org.egomez.irpgeditor;
  * Boston, MA 02111-1307 USA
  */
 import java.util.*;
+import java.util.concurrent.*;
 import java.awt.*;
 import javax.swing.*;
 import javax.swing.text.*;
 
 import org.egomez.irpgeditor.event.*;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 /**
  * highlights rpg source code according to types and keywords.
  *
+ * the styles of a line are kept as tokens with the line, the document is not
+ * changed. the text pane has to use the RPGSourceEditorKit, which paints the
+ * lines from the tokens.
+ *
  * @author Derek Van Kooten.
  */
 @SuppressWarnings("unchecked")
 public class RPGSourceHighlighter implements ListenerParser {
 
     JTextPane textPane;
-    StyledDocument styleDocument;
-
-    SimpleAttributeSet attributes = new SimpleAttributeSet();
 
     // COMMENTS
     static SimpleAttributeSet attributesComment = new SimpleAttributeSet();
@@ -262,13 +266,83 @@ public class RPGSourceHighlighter implements ListenerParser {
         setKeywords.add("reset");
         setKeywords.add("add(h)");
     }
+    // looks keywords up straight from the source text.
+    static KeywordMatcher keywords = new KeywordMatcher(setKeywords);
+
+    // the attributes for each style of the tokenizer.
+    static SimpleAttributeSet[] attributesStyles = new SimpleAttributeSet[RPGSourceTokenizer.STYLES];
+
+    static {
+        attributesStyles[RPGSourceTokenizer.STYLE_UNKNOWN] = attributesUnknown;
+        attributesStyles[RPGSourceTokenizer.STYLE_COMMENT] = attributesComment;
+        attributesStyles[RPGSourceTokenizer.STYLE_HEADER] = attributesHeader;
+        attributesStyles[RPGSourceTokenizer.STYLE_DIRECTIVES] = attributesDirectives;
+        attributesStyles[RPGSourceTokenizer.STYLE_FILES] = attributesFiles;
+        attributesStyles[RPGSourceTokenizer.STYLE_D] = attributesD;
+        attributesStyles[RPGSourceTokenizer.STYLE_P] = attributesP;
+        attributesStyles[RPGSourceTokenizer.STYLE_A] = attributesA;
+        attributesStyles[RPGSourceTokenizer.STYLE_A_RECORD] = attributesARecord;
+        attributesStyles[RPGSourceTokenizer.STYLE_SQL] = attributesSql;
+        attributesStyles[RPGSourceTokenizer.STYLE_KEYWORD] = attributesKeyword;
+        attributesStyles[RPGSourceTokenizer.STYLE_INDICATOR] = attributesIndicator;
+    }
+
+    // the most lines that are styled in one go on the event thread.
+    static final int APPLY_LINES = 500;
+    // the most lines that are tokenized by one job of the worker.
+    static final int CHUNK_LINES = 300;
+    // the most lines one job tokenizes again because a state changed.
+    static final int EXTEND_LINES = 2000;
+
+    // tokenizes the lines that need styling, one job at a time.
+    static final ExecutorService worker = Executors.newSingleThreadExecutor(new ThreadFactory() {
+        @Override
+        public Thread newThread(Runnable runnable) {
+            Thread thread;
+
+            thread = new Thread(runnable, "highlighter");
+            thread.setDaemon(true);
+            thread.setPriority(Thread.MIN_PRIORITY);
+            return thread;
+        }
+    });
+
+    SourceParser parser;
+    // lines waiting to be styled, guarded by this.
+    @SuppressWarnings("rawtypes")
+    LinkedHashSet setPending = new LinkedHashSet();
+    boolean scheduled = false;
+    RPGSourceTokenizer.Runs runsLine = new RPGSourceTokenizer.Runs();
+    Logger logger = LoggerFactory.getLogger(RPGSourceHighlighter.class);
 
     public RPGSourceHighlighter() {
     }
 
     public void setTextPane(JTextPane textPane) {
         this.textPane = textPane;
-        styleDocument = (StyledDocument) textPane.getDocument();
+        if (textPane.getEditorKit() instanceof RPGSourceEditorKit) {
+            ((RPGSourceEditorKit) textPane.getEditorKit()).setHighlighter(this);
+        }
+    }
+
+    /**
+     * returns the style tokens of the line at the zero based row, or null if
+     * the line has not been styled yet.
+     *
+     * @param row int
+     * @return int[]
+     */
+    public int[] getTokens(int row) {
+        SourceLine line;
+
+        if (parser == null) {
+            return null;
+        }
+        line = parser.getLineForRow(row + 1);
+        if (line == null) {
+            return null;
+        }
+        return line.getTokens();
     }
 
     /**
@@ -277,185 +351,386 @@ public class RPGSourceHighlighter implements ListenerParser {
     @SuppressWarnings("rawtypes")
     public void parserEvents(ArrayList listEvents) {
         SourceParserEvent event;
+        SourceLine line;
 
         for (int x = 0; x < listEvents.size(); x++) {
             event = (SourceParserEvent) listEvents.get(x);
-            if (event.type != SourceParserEvent.REMOVED) {
-                backgroundAddStyle(event.line);
+            if (event.type == SourceParserEvent.LOADED) {
+                line = event.line;
+                while (line != null) {
+                    pending(line);
+                    if (line == event.lineLast) {
+                        break;
+                    }
+                    line = line.getNext();
+                }
+            } else if (event.type == SourceParserEvent.REMOVED) {
+                pendingBelow(event.line);
+            } else {
+                pending(event.line);
+                if (event.type == SourceParserEvent.ADDED) {
+                    pendingBelow(event.line);
+                }
             }
         }
+        schedule();
     }
 
+    /**
+     * styles all the lines of the source in the background, the lines on the
+     * screen first.
+     *
+     * @param sourceParser SourceParser
+     */
     public void addStyle(SourceParser sourceParser) {
         SourceLine line;
 
         line = sourceParser.first;
         while (line != null) {
-            addStyle(line);
+            pending(line);
             line = line.getNext();
         }
+        schedule();
     }
 
     public void backgroundAddStyle(final SourceLine line) {
-        SwingUtilities.invokeLater(new Runnable() {
-            public void run() {
-                addStyle(line);
-            }
-        });
+        pending(line);
+        schedule();
     }
 
-    public void addStyle(SourceLine line) {
-        StringBuffer source;
-        String keyword; //buffer,
-        char c;
-
-        source = line.parser.getText();
+    /**
+     * styles the lines from first to last in the background.
+     */
+    public void backgroundAddStyle(final SourceLine first, final SourceLine last) {
+        SourceLine line;
 
-        if (line.start + 6 >= source.length()) {
-            return;
+        line = first;
+        while (line != null) {
+            pending(line);
+            if (line == last) {
+                break;
+            }
+            line = line.getNext();
         }
-        // compile time data.
-        if (source.charAt(line.start) == '*'
-                && source.charAt(line.start + 1) == '*') {
+        schedule();
+    }
+
+    /**
+     * styles the line right away, this must be called on the event thread.
+     *
+     * @param line SourceLine
+     */
+    public void addStyle(SourceLine line) {
+        if (line.isInvalid()) {
             return;
         }
+        runsLine.clear();
+        RPGSourceTokenizer.tokenize(line.parser.getText(), line.getStart(), line.length,
+                line.parent == null ? RPGSourceTokenizer.STATE_START : line.parent.getEndState(), runsLine);
+        line.setTokens(runsLine.toTokens(0, runsLine.size()));
+        repaint(line);
+    }
 
-        c = source.charAt(line.start + 6);
-        // is comment?
-        if (c == '*') {
-            styleDocument.setCharacterAttributes(line.start, line.length, attributesComment, true);
-            return;
+    /**
+     * repaints the line in the text pane.
+     */
+    protected void repaint(SourceLine line) {
+        Rectangle rectangle;
+
+        try {
+            rectangle = textPane.modelToView(line.getStart());
+            if (rectangle != null) {
+                textPane.repaint(0, rectangle.y, textPane.getWidth(), rectangle.height);
+            }
+        } catch (BadLocationException e) {
+            textPane.repaint();
         }
-        // is directive?
-        if (c == '/') {
-            styleDocument.setCharacterAttributes(line.start, line.length, attributesDirectives, true);
-            return;
+    }
+
+    @SuppressWarnings("unchecked")
+    protected synchronized void pending(SourceLine line) {
+        parser = line.parser;
+        setPending.add(line);
+    }
+
+    /**
+     * the line below a line that was added or removed starts with another
+     * state, so it has to be tokenized again as well.
+     */
+    protected void pendingBelow(SourceLine line) {
+        line = line.getNext();
+        while (line != null && line.isInvalid()) {
+            line = line.getNext();
         }
-        // is sql?
-        if (c == '+') {
-            styleDocument.setCharacterAttributes(line.start, line.length, attributesSql, true);
-            return;
+        if (line != null) {
+            pending(line);
         }
+    }
 
-        c = source.charAt(line.start + 5);
-        // header?
-        if (c == 'H' || c == 'h') {
-            styleDocument.setCharacterAttributes(line.start, line.length, attributesHeader, true);
+    /**
+     * starts a job if lines are waiting and no job is running. there is only
+     * one job at a time, the next one starts when the styles of the last one
+     * are on the lines, so a job always starts from the states the lines
+     * really have.
+     */
+    protected synchronized void schedule() {
+        if (scheduled || setPending.isEmpty()) {
             return;
         }
-        // is files?
-        if (c == 'F' || c == 'f') {
-            styleDocument.setCharacterAttributes(line.start, line.length, attributesFiles, true);
-            return;
+        scheduled = true;
+        SwingUtilities.invokeLater(new Runnable() {
+            @Override
+            public void run() {
+                start();
+            }
+        });
+    }
+
+    /**
+     * the job is done, the next one can start.
+     */
+    protected void finished() {
+        synchronized (this) {
+            scheduled = false;
         }
-        // is D?
-        if (c == 'D' || c == 'd') {
-            styleDocument.setCharacterAttributes(line.start, line.length, attributesD, true);
+        schedule();
+    }
+
+    /**
+     * runs on the event thread. takes a chunk of the lines that are waiting
+     * and finds their rows in a snapshot of the source, then hands them to the
+     * worker. nothing waits for the event thread.
+     */
+    protected void start() {
+        final Batch batch;
+
+        if (textPane == null || parser == null) {
+            finished();
             return;
         }
-        // is P?
-        if (c == 'P' || c == 'p') {
-            styleDocument.setCharacterAttributes(line.start, line.length, attributesP, true);
+        batch = new Batch(parser.getSnapshot(), takeChunk());
+        if (batch.rows.length == 0) {
+            finished();
             return;
         }
-        // is A?
-        if (c == 'A' || c == 'a') {
-            styleDocument.setCharacterAttributes(line.start, line.length, attributesA, true);
-            if (source.length() <= line.start + 16) {
-                return;
+        worker.execute(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    batch.tokenize();
+                } catch (Exception e) {
+                    logger.error(e.getMessage());
+                }
+                SwingUtilities.invokeLater(batch);
             }
-            c = source.charAt(line.start + 16);
-            if (c == 'R' || c == 'r') {
-                styleDocument.setCharacterAttributes(line.start, line.length, attributesARecord, true);
-            } else {
-                styleDocument.setCharacterAttributes(line.start, line.length, attributesA, true);
+        });
+    }
+
+    /**
+     * takes the next lines to style out of the waiting lines. the lines that
+     * are on the screen go first, so what the user looks at is styled right
+     * away no matter how big the member is, then the rest follow in the order
+     * of the source. this gets called for every chunk, so when the user
+     * scrolls, the lines that come into view are next.
+     */
+    @SuppressWarnings({"rawtypes", "unchecked"})
+    protected synchronized SourceLine[] takeChunk() {
+        ArrayList list;
+        Iterator iterator;
+        Rectangle rectangle;
+        SourceLine line;
+        int top, bottom;
+
+        list = new ArrayList();
+        rectangle = textPane.getVisibleRect();
+        if (rectangle.height > 0 && setPending.isEmpty() == false) {
+            top = parser.getRow(textPane.viewToModel(rectangle.getLocation()));
+            bottom = parser.getRow(textPane.viewToModel(new Point(rectangle.x, rectangle.y + rectangle.height)));
+            for (int row = top; row <= bottom; row++) {
+                line = parser.getLineForRow(row);
+                if (line != null && setPending.remove(line)) {
+                    list.add(line);
+                }
             }
-            return;
         }
-
-        int begin = line.start;
-        int stop = line.start + line.length;
-        // free form comments?
-        if (startsWith(source, begin, stop, "//")) {
-            styleDocument.setCharacterAttributes(line.start, line.length, attributesComment, true);
-            return;
+        iterator = setPending.iterator();
+        while (list.size() < CHUNK_LINES && iterator.hasNext()) {
+            list.add(iterator.next());
+            iterator.remove();
         }
+        return (SourceLine[]) list.toArray(new SourceLine[list.size()]);
+    }
 
-        // unknown
-        styleDocument.setCharacterAttributes(line.start, line.length, attributesUnknown, true);
-
-        // find keywords.
-        // find the start of the first keyword.
-        int end;
-        begin = findNonBlank(source, begin, stop);
-        while (begin > -1) {
-            // find blank.
-            end = findBlank(source, begin, stop);
-            // process keyword.
-            if (source.charAt(begin) == '*') {
-                styleDocument.setCharacterAttributes(begin, end - begin, attributesIndicator, true);
-            } else {
-                if (startsWith(source, begin, stop, "//")) {
-                    styleDocument.setCharacterAttributes(begin, line.length - (begin - line.start), attributesComment, true);
-                    break;
-                }
-                keyword = source.substring(begin, end);
-                keyword = keyword.trim().toLowerCase();
-                if (keyword.endsWith(";")) {
-                    keyword = keyword.substring(0, keyword.length() - 1);
-                }
-                if (RPGSourceHighlighter.setKeywords.contains(keyword)) {
-                    styleDocument.setCharacterAttributes(begin, end - begin, attributesKeyword, true);
-                } else {
+    /**
+     * the line was styled by a job, so it does not have to wait any more.
+     */
+    protected synchronized void done(SourceLine line) {
+        setPending.remove(line);
+    }
+
+    /**
+     * the tokens of a group of lines, worked out from one snapshot. the tokens
+     * are given to the lines on the event thread a few hundred lines at a
+     * time, so the editor stays responsive, then the text pane is repainted.
+     * if the source changed since the snapshot, the lines that are left go
+     * back to waiting.
+     */
+    class Batch implements Runnable {
+
+        SourceSnapshot snapshot;
+        // the rows of the chunk, in order.
+        int[] rows;
+        // the states at the end of the rows from the row above the chunk on,
+        // as the lines had them when the chunk was taken.
+        byte[] applied;
+        int from, to;
+        int count = 0;
+        SourceLine[] lines = new SourceLine[64];
+        int[][] tokens = new int[64][];
+        int[] states = new int[64];
+        // the runs of the line being tokenized.
+        RPGSourceTokenizer.Runs runs = new RPGSourceTokenizer.Runs();
+        // the line to go on with if the states did not settle in this batch.
+        SourceLine lineContinue;
+        int next = 0;
+
+        /**
+         * runs on the event thread, finds the rows of the lines and copies
+         * the states of the lines from the row above the first one to as far
+         * as the tokenizing can go past the last one.
+         */
+        Batch(SourceSnapshot snapshot, SourceLine[] chunk) {
+            SourceLine line;
+            int size;
+
+            this.snapshot = snapshot;
+            rows = new int[chunk.length];
+            size = 0;
+            for (int x = 0; x < chunk.length; x++) {
+                // a line deleted while it was waiting.
+                if (chunk[x].isInvalid() == false) {
+                    rows[size++] = chunk[x].getLineIndex();
                 }
             }
-            // find non blank.
-            begin = findNonBlank(source, end + 1, stop);
+            rows = Arrays.copyOf(rows, size);
+            if (size == 0) {
+                return;
+            }
+            Arrays.sort(rows);
+            from = Math.max(rows[0] - 1, 0);
+            to = Math.min(snapshot.getLineCount(), rows[size - 1] + EXTEND_LINES + 2);
+            applied = new byte[to - from];
+            line = snapshot.getLine(from);
+            for (int x = 0; x < applied.length; x++) {
+                applied[x] = (byte) line.getEndState();
+                line = line.getNext();
+            }
         }
-    }
 
-    @SuppressWarnings("unused")
-    private boolean startsWith(StringBuffer string, int start, int end, String compare) {
-        int length2 = 0, y;
-
-        y = 0;
-        length2 = compare.length();
-        for (int x = start; x < end && x < string.length(); x++) {
-            while (string.charAt(x) == compare.charAt(y)) {
-                y++;
-                if (y == compare.length()) {
-                    return true;
+        /**
+         * runs on the worker, works out the runs of the rows from the
+         * snapshot.
+         *
+         * each line starts with the state at the end of the line above it. if
+         * the state at the end of a line is not the one the line had, the line
+         * below is tokenized as well, and so on until the states are the same
+         * again.
+         */
+        void tokenize() {
+            CharSequence text;
+            int row, rowLast, lineCount, state, stateLast, extended;
+
+            text = snapshot.getText();
+            lineCount = snapshot.getLineCount();
+            rowLast = -1;
+            stateLast = 0;
+            extended = 0;
+            for (int x = 0; x < rows.length; x++) {
+                row = rows[x];
+                // already done as a line below one whose state changed.
+                if (row <= rowLast) {
+                    continue;
+                }
+                if (row == 0) {
+                    state = RPGSourceTokenizer.STATE_START;
+                } else if (row - 1 == rowLast) {
+                    state = stateLast;
+                } else {
+                    state = applied[(row - 1) - from];
+                }
+                while (true) {
+                    runs.clear();
+                    state = RPGSourceTokenizer.tokenize(text, snapshot.getStart(row), snapshot.getLength(row), state, runs);
+                    add(snapshot.getLine(row), state);
+                    rowLast = row;
+                    stateLast = state;
+                    if (row + 1 >= lineCount || state == applied[row - from]) {
+                        break;
+                    }
+                    // the state changed, so the line below changes too.
+                    row++;
+                    extended++;
+                    if (extended > EXTEND_LINES || row >= to) {
+                        // carry on with the next job.
+                        lineContinue = snapshot.getLine(row);
+                        break;
+                    }
                 }
             }
-            y = 0;
         }
-        return false;
-    }
 
-    private int findBlank(StringBuffer line, int x, int stop) {
-        if (stop >= line.length()) {
-            stop = line.length() - 1;
-        }
-        for (; x < stop; x++) {
-            if (line.charAt(x) == ' ') {
-                return x;
+        /**
+         * adds a line, its tokens are made from the runs.
+         */
+        void add(SourceLine line, int state) {
+            if (count == lines.length) {
+                lines = Arrays.copyOf(lines, count * 2);
+                tokens = Arrays.copyOf(tokens, count * 2);
+                states = Arrays.copyOf(states, count * 2);
             }
+            lines[count] = line;
+            tokens[count] = runs.toTokens(0, runs.size());
+            states[count] = state;
+            count++;
         }
-        return stop;
-    }
 
-    private int findNonBlank(StringBuffer line, int x, int stop) {
-        if (x >= stop) {
-            return -1;
-        }
-        if (stop >= line.length()) {
-            stop = line.length() - 1;
-        }
-        for (; x < stop; x++) {
-            if (line.charAt(x) != ' ') {
-                return x;
+        @Override
+        public void run() {
+            int last;
+
+            if (textPane == null) {
+                finished();
+                return;
+            }
+            if (snapshot.isCurrent() == false) {
+                for (int x = next; x < count; x++) {
+                    if (lines[x].isInvalid() == false) {
+                        pending(lines[x]);
+                    }
+                }
+                if (lineContinue != null && lineContinue.isInvalid() == false) {
+                    pending(lineContinue);
+                }
+                finished();
+                return;
+            }
+            last = Math.min(count, next + APPLY_LINES);
+            for (int x = next; x < last; x++) {
+                lines[x].setTokens(tokens[x]);
+                lines[x].setEndState(states[x]);
+                // a line below the chunk may be waiting as well.
+                done(lines[x]);
+            }
+            textPane.repaint();
+            next = last;
+            if (next < count) {
+                SwingUtilities.invokeLater(this);
+                return;
+            }
+            if (lineContinue != null) {
+                pending(lineContinue);
             }
+            finished();
         }
-        return -1;
     }
 }
@@ -0,0 +1,416 @@
+package org.egomez.irpgeditor;
+
+/*
+ * Copyright:    Copyright (c) 2004
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2, or (at your option)
+ * any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this software; see the file COPYING.  If not, write to
+ * the Free Software Foundation, Inc., 59 Temple Place, Suite 330,
+ * Boston, MA 02111-1307 USA
+ */
+import java.util.*;
+
+/**
+ * works out the styles of rpg source lines. the styles are written as runs,
+ * a start, a length and a style, which the highlighter then applies to the
+ * document. nothing here touches swing, so lines can be tokenized on any
+ * thread.
+ *
+ * the tokenizer is a state machine. the state at the end of the line above
+ * goes in, the state at the end of the line comes out, so /FREE and /EXEC SQL
+ * blocks, **FREE members, free form sql statements that go over more than one
+ * line and compile time data are styled in context. when a line changes, only
+ * the lines below it whose state in changes need to be tokenized again.
+ *
+ * @author Derek Van Kooten.
+ */
+public class RPGSourceTokenizer {
+
+    public static final byte STYLE_UNKNOWN = 0;
+    public static final byte STYLE_COMMENT = 1;
+    public static final byte STYLE_HEADER = 2;
+    public static final byte STYLE_DIRECTIVES = 3;
+    public static final byte STYLE_FILES = 4;
+    public static final byte STYLE_D = 5;
+    public static final byte STYLE_P = 6;
+    public static final byte STYLE_A = 7;
+    public static final byte STYLE_A_RECORD = 8;
+    public static final byte STYLE_SQL = 9;
+    public static final byte STYLE_KEYWORD = 10;
+    public static final byte STYLE_INDICATOR = 11;
+    public static final int STYLES = 12;
+
+    /**
+     * fixed form source, the state at the end of most lines.
+     */
+    public static final int STATE_FIXED = 0;
+    /**
+     * inside a /FREE block.
+     */
+    public static final int STATE_FREE = 1;
+    /**
+     * inside a /EXEC SQL block.
+     */
+    public static final int STATE_SQL = 2;
+    /**
+     * inside a free form EXEC SQL statement that has not ended with a ; yet.
+     */
+    public static final int STATE_SQL_STATEMENT = 4;
+    /**
+     * the member started with **FREE, there are no columns.
+     */
+    public static final int STATE_FULLY_FREE = 8;
+    /**
+     * after the ** line that starts the compile time data.
+     */
+    public static final int STATE_DATA = 16;
+    /**
+     * the state to give the first line of a member.
+     */
+    public static final int STATE_START = 32;
+
+    /**
+     * adds the runs for the line that starts at start in the source and
+     * returns the state at the end of the line. a run over the whole line
+     * comes first, the runs for keywords and indicators follow it. nothing is
+     * added for lines that are not styled.
+     *
+     * @param source CharSequence
+     * @param start int
+     * @param length int the length of the line.
+     * @param state int the state at the end of the line above.
+     * @param runs Runs
+     * @return int
+     */
+    public static int tokenize(CharSequence source, int start, int length, int state, Runs runs) {
+        char c;
+        int stop;
+
+        stop = Math.min(start + length, source.length());
+        if ((state & STATE_DATA) != 0) {
+            return state;
+        }
+        if (state == STATE_START) {
+            if (startsWithIgnoreCase(source, start, stop, "**free")) {
+                runs.add(start, length, STYLE_DIRECTIVES);
+                return STATE_FULLY_FREE;
+            }
+            state = STATE_FIXED;
+        }
+        if ((state & STATE_FULLY_FREE) != 0) {
+            return free(source, start, start, stop, length, state, runs);
+        }
+        // compile time data.
+        if (stop - start >= 2 && source.charAt(start) == '*'
+                && source.charAt(start + 1) == '*') {
+            return STATE_DATA;
+        }
+        if (start + 6 >= source.length()) {
+            return state;
+        }
+
+        c = source.charAt(start + 6);
+        // is directive?
+        if (c == '/') {
+            runs.add(start, length, STYLE_DIRECTIVES);
+            if (startsWithIgnoreCase(source, start + 6, stop, "/free")) {
+                return STATE_FREE;
+            }
+            if (startsWithIgnoreCase(source, start + 6, stop, "/end-free")) {
+                return STATE_FIXED;
+            }
+            if (startsWithIgnoreCase(source, start + 6, stop, "/exec")) {
+                return (state & STATE_FREE) | STATE_SQL;
+            }
+            if (startsWithIgnoreCase(source, start + 6, stop, "/end-exec")) {
+                return state & STATE_FREE;
+            }
+            return state;
+        }
+        // is comment?
+        if (c == '*') {
+            runs.add(start, length, STYLE_COMMENT);
+            return state;
+        }
+        // is sql?
+        if (c == '+' || (state & STATE_SQL) != 0) {
+            runs.add(start, length, STYLE_SQL);
+            return state;
+        }
+        if ((state & (STATE_FREE | STATE_SQL_STATEMENT)) != 0) {
+            return free(source, start, start + 6, stop, length, state, runs);
+        }
+
+        c = source.charAt(start + 5);
+        // header?
+        if (c == 'H' || c == 'h') {
+            runs.add(start, length, STYLE_HEADER);
+            return state;
+        }
+        // is files?
+        if (c == 'F' || c == 'f') {
+            runs.add(start, length, STYLE_FILES);
+            return state;
+        }
+        // is D?
+        if (c == 'D' || c == 'd') {
+            runs.add(start, length, STYLE_D);
+            return state;
+        }
+        // is P?
+        if (c == 'P' || c == 'p') {
+            runs.add(start, length, STYLE_P);
+            return state;
+        }
+        // is A?
+        if (c == 'A' || c == 'a') {
+            if (source.length() > start + 16) {
+                c = source.charAt(start + 16);
+                if (c == 'R' || c == 'r') {
+                    runs.add(start, length, STYLE_A_RECORD);
+                    return state;
+                }
+            }
+            runs.add(start, length, STYLE_A);
+            return state;
+        }
+        return free(source, start, start, stop, length, state, runs);
+    }
+
+    /**
+     * styles a line of free form code, the code starts at from.
+     */
+    private static int free(CharSequence source, int start, int from, int stop, int length, int state, Runs runs) {
+        int begin, end, keywordStart, keywordEnd;
+
+        // the rest of a sql statement.
+        if ((state & STATE_SQL_STATEMENT) != 0) {
+            runs.add(start, length, STYLE_SQL);
+            if (indexOf(source, start, stop, ';') != -1) {
+                return state & ~STATE_SQL_STATEMENT;
+            }
+            return state;
+        }
+        begin = findNonBlank(source, from, stop);
+        if (begin == -1) {
+            return state;
+        }
+        // free form comments?
+        if (startsWith(source, begin, stop, "//")) {
+            runs.add(start, length, STYLE_COMMENT);
+            return state;
+        }
+        // directives have no column in a **FREE member.
+        if ((state & STATE_FULLY_FREE) != 0 && source.charAt(begin) == '/') {
+            runs.add(start, length, STYLE_DIRECTIVES);
+            return state;
+        }
+        // embedded sql.
+        if (startsWithIgnoreCase(source, begin, stop, "exec ")
+                && startsWithIgnoreCase(source, findNonBlank(source, begin + 5, stop), stop, "sql")) {
+            runs.add(start, length, STYLE_SQL);
+            if (indexOf(source, begin, stop, ';') == -1) {
+                return state | STATE_SQL_STATEMENT;
+            }
+            return state;
+        }
+
+        // unknown
+        runs.add(start, length, STYLE_UNKNOWN);
+
+        // find keywords.
+        while (begin > -1) {
+            // find blank.
+            end = findBlank(source, begin, stop);
+            // process keyword.
+            if (source.charAt(begin) == '*') {
+                runs.add(begin, end - begin, STYLE_INDICATOR);
+            } else {
+                if (startsWith(source, begin, stop, "//")) {
+                    runs.add(begin, length - (begin - start), STYLE_COMMENT);
+                    break;
+                }
+                // the keyword without blanks and without a ; at the end.
+                keywordStart = begin;
+                keywordEnd = end;
+                while (keywordEnd > keywordStart && source.charAt(keywordEnd - 1) <= ' ') {
+                    keywordEnd--;
+                }
+                if (keywordEnd > keywordStart && source.charAt(keywordEnd - 1) == ';') {
+                    keywordEnd--;
+                }
+                if (RPGSourceHighlighter.keywords.matches(source, keywordStart, keywordEnd)) {
+                    runs.add(begin, end - begin, STYLE_KEYWORD);
+                }
+            }
+            // find non blank.
+            begin = findNonBlank(source, end + 1, stop);
+        }
+        return state;
+    }
+
+    private static int indexOf(CharSequence string, int start, int end, char c) {
+        for (int x = start; x < end; x++) {
+            if (string.charAt(x) == c) {
+                return x;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * returns true if the text at start begins with compare, compare must be
+     * lower case.
+     */
+    private static boolean startsWithIgnoreCase(CharSequence string, int start, int end, String compare) {
+        if (start < 0 || start + compare.length() > end) {
+            return false;
+        }
+        for (int x = 0; x < compare.length(); x++) {
+            if (Character.toLowerCase(string.charAt(start + x)) != compare.charAt(x)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * returns true if the text at start begins with compare.
+     */
+    private static boolean startsWith(CharSequence string, int start, int end, String compare) {
+        if (start + compare.length() > end || start + compare.length() > string.length()) {
+            return false;
+        }
+        for (int x = 0; x < compare.length(); x++) {
+            if (string.charAt(start + x) != compare.charAt(x)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static int findBlank(CharSequence line, int x, int stop) {
+        if (stop >= line.length()) {
+            stop = line.length() - 1;
+        }
+        for (; x < stop; x++) {
+            if (line.charAt(x) == ' ') {
+                return x;
+            }
+        }
+        return stop;
+    }
+
+    private static int findNonBlank(CharSequence line, int x, int stop) {
+        if (x >= stop) {
+            return -1;
+        }
+        if (stop >= line.length()) {
+            stop = line.length() - 1;
+        }
+        for (; x < stop; x++) {
+            if (line.charAt(x) != ' ') {
+                return x;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * a list of style runs kept in arrays.
+     */
+    public static class Runs {
+
+        int count = 0;
+        int[] starts = new int[64];
+        int[] lengths = new int[64];
+        byte[] styles = new byte[64];
+
+        public void add(int start, int length, byte style) {
+            if (count == starts.length) {
+                starts = Arrays.copyOf(starts, count * 2);
+                lengths = Arrays.copyOf(lengths, count * 2);
+                styles = Arrays.copyOf(styles, count * 2);
+            }
+            starts[count] = start;
+            lengths[count] = length;
+            styles[count] = style;
+            count++;
+        }
+
+        public int size() {
+            return count;
+        }
+
+        public int getStart(int index) {
+            return starts[index];
+        }
+
+        public int getLength(int index) {
+            return lengths[index];
+        }
+
+        public byte getStyle(int index) {
+            return styles[index];
+        }
+
+        public void clear() {
+            count = 0;
+        }
+
+        /**
+         * packs the runs from first up to end, which are the runs of one
+         * line, into tokens for the editor to paint. the first run covers the
+         * whole line, the runs after it are laid over it, the tokens do not
+         * overlap. each token is two ints, the offset from the start of the
+         * line, then the length shifted left 8 bits or'ed with the style.
+         *
+         * @param first int
+         * @param end int
+         * @return int[]
+         */
+        public int[] toTokens(int first, int end) {
+            int[] tokens;
+            int count, lineStart, lineEnd, position, start;
+
+            if (first >= end) {
+                return new int[0];
+            }
+            tokens = new int[(end - first) * 4];
+            count = 0;
+            lineStart = starts[first];
+            lineEnd = lineStart + lengths[first];
+            position = lineStart;
+            for (int x = first + 1; x < end; x++) {
+                start = Math.max(starts[x], position);
+                if (start > position) {
+                    count = token(tokens, count, position - lineStart, start - position, styles[first]);
+                }
+                if (starts[x] + lengths[x] > start) {
+                    count = token(tokens, count, start - lineStart, starts[x] + lengths[x] - start, styles[x]);
+                    position = starts[x] + lengths[x];
+                }
+            }
+            if (position < lineEnd) {
+                count = token(tokens, count, position - lineStart, lineEnd - position, styles[first]);
+            }
+            return Arrays.copyOf(tokens, count);
+        }
+
+        private static int token(int[] tokens, int count, int offset, int length, byte style) {
+            tokens[count++] = offset;
+            tokens[count++] = (length << 8) | style;
+            return count;
+        }
+    }
+}
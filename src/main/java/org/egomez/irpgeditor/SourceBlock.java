@@ -20,6 +20,7 @@ package org.egomez.irpgeditor;
  */
 import java.awt.*;
 import java.awt.event.*;
+import java.util.*;
 import javax.swing.*;
 import javax.swing.text.*;
 
@@ -36,6 +37,10 @@ public class SourceBlock extends NodeAbstract {
 
     public SourceBlock parent, child, sibling;
     public SourceBlock original;
+    // the child blocks in order, and where this block is in its parents.
+    @SuppressWarnings("rawtypes")
+    public ArrayList children = new ArrayList();
+    public int index;
     public SourceLine lineStart, lineEnd;
     Logger logger = LoggerFactory.getLogger(SourceBlock.class);
 
@@ -83,14 +88,10 @@ public class SourceBlock extends NodeAbstract {
      */
     @Override
     public Object getChild(int index) {
-        SourceBlock block;
-
-        block = child;
-        while (index > 0 && block != null) {
-            block = block.sibling;
-            index--;
+        if (index < 0 || index >= children.size()) {
+            return null;
         }
-        return block;
+        return children.get(index);
     }
 
     /**
@@ -99,16 +100,7 @@ public class SourceBlock extends NodeAbstract {
      */
     @Override
     public int getChildCount() {
-        SourceBlock block;
-        int count;
-
-        block = child;
-        count = 0;
-        while (block != null) {
-            count++;
-            block = block.sibling;
-        }
-        return count;
+        return children.size();
     }
 
     public int getSiblingCount() {
@@ -129,22 +121,20 @@ public class SourceBlock extends NodeAbstract {
      * @return 
      */
     public int indexOfParent() {
-        SourceBlock block;
-        int index;
-
-        if (parent == null) {
+        if (parent == null || isIn(parent.children) == false) {
             return -1;
         }
-        block = parent.child;
-        index = 0;
-        while (block != null) {
-            if (block == this) {
-                return index;
-            }
-            index++;
-            block = block.sibling;
-        }
-        return -1;
+        return index;
+    }
+
+    /**
+     * returns true if the block is in the list of blocks at its index.
+     * @param list
+     * @return 
+     */
+    @SuppressWarnings("rawtypes")
+    public boolean isIn(ArrayList list) {
+        return index < list.size() && list.get(index) == this;
     }
 
     /**
@@ -286,11 +276,13 @@ public class SourceBlock extends NodeAbstract {
         public void actionPerformed(ActionEvent evt) {
             SourceParser sourceParser;
             Document doc;
+            int start;
 
             sourceParser = lineStart.parser;
             doc = sourceParser.getDocument();
+            start = lineStart.getStart();
             try {
-                doc.remove(lineStart.start, (lineEnd.start + lineEnd.length) - lineStart.start);
+                doc.remove(start, (lineEnd.getStart() + lineEnd.length) - start);
             } catch (BadLocationException e) {
                 //e.printStackTrace();
                 logger.error(e.getMessage());
@@ -310,8 +302,8 @@ public class SourceBlock extends NodeAbstract {
             if (lineStart == null || lineEnd == null) {
                 return;
             }
-            start = lineStart.getNext().start;
-            end = lineEnd.start - 1;
+            start = lineStart.getNext().getStart();
+            end = lineEnd.getStart() - 1;
             if (start >= end) {
                 return;
             }
@@ -319,7 +311,8 @@ public class SourceBlock extends NodeAbstract {
             name = getName();
             text = sourceParser.getText(start, end);
             try {
-                sourceParser.getDocument().remove(lineStart.start, (lineEnd.start + lineEnd.length) - lineStart.start);
+                start = lineStart.getStart();
+                sourceParser.getDocument().remove(start, (lineEnd.getStart() + lineEnd.length) - start);
                 line = sourceParser.getFirst();
                 // find the places to inline it.
                 while (line != null) {
@@ -31,20 +31,21 @@ import org.slf4j.LoggerFactory;
 public class SourceLine {
 
     SourceParser parser;
-    float number = 0;
-    int date = 0;
-    int start, length;
-    int lineIndex;
+    // the slot of the line in the parser's line table, -1 once the line has
+    // been deleted and saved.
+    int slot;
+    int length;
     public SourceBlock block;
     SourceLine parent = null;
     SourceLine next = null;
     // used by RPGLineParser to organize code blocks.
     public int type; // proc, sub, other block type....
     public int position; // start, end of block.
-    // used when saving source to see if line needs to be saved.
-    boolean changed = false;
-    boolean created = false;
-    boolean invalid = false; // is set to true when the line is deleted.
+    // used by SourceLineIndex to keep the lines in a balanced tree.
+    SourceLine left, right, up;
+    int priority, count, total;
+    // the start the line had when it was taken out of the tree.
+    int startRemoved;
 
     public static int POSITION_START = 0;
     public static int POSITION_END = 1;
@@ -54,51 +55,150 @@ public class SourceLine {
     public static int TYPE_SUBROUTINE = 2;
     public static int TYPE_SCREEN = 3;
 
-    Logger logger = LoggerFactory.getLogger(SourceLine.class);
+    static Logger logger = LoggerFactory.getLogger(SourceLine.class);
 
-    public SourceLine(SourceParser parser, int start, int length) {
+    public SourceLine(SourceParser parser, int length) {
         this.parser = parser;
-        this.start = start;
+        this.slot = parser.table.allocate();
         this.length = length;
+        parser.index.insertAfter(null, this);
     }
 
     public SourceLine(SourceLine parent, int length) {
         this.parser = parent.parser;
-        this.start = parent.start + parent.length;
+        this.slot = parser.table.allocate();
         this.length = length;
         this.parent = parent;
         parent.setNext(this);
+        parser.index.insertAfter(parent, this);
     }
 
     public SourceParser getSourceParser() {
         return parser;
     }
 
+    /**
+     * returns true once the line has been deleted.
+     * @return 
+     */
     public boolean isInvalid() {
-        return invalid;
+        return slot == -1 || parser.table.get(slot, SourceLineTable.FLAG_INVALID);
+    }
+
+    void setInvalid(boolean invalid) {
+        parser.table.set(slot, SourceLineTable.FLAG_INVALID, invalid);
     }
 
+    /**
+     * used when saving source to see if line needs to be saved.
+     * @return 
+     */
     public boolean isChanged() {
-        return changed;
+        return slot != -1 && parser.table.get(slot, SourceLineTable.FLAG_CHANGED);
+    }
+
+    void setChanged(boolean changed) {
+        parser.table.set(slot, SourceLineTable.FLAG_CHANGED, changed);
     }
 
     public boolean isCreated() {
-        return created;
+        return slot != -1 && parser.table.get(slot, SourceLineTable.FLAG_CREATED);
     }
 
+    void setCreated(boolean created) {
+        parser.table.set(slot, SourceLineTable.FLAG_CREATED, created);
+    }
+
+    /**
+     * returns the sequence number of the line in the source member.
+     * @return 
+     */
+    public float getNumber() {
+        if (slot == -1) {
+            return 0;
+        }
+        return parser.table.numbers[slot];
+    }
+
+    void setNumber(float number) {
+        parser.table.numbers[slot] = number;
+    }
+
+    /**
+     * returns the state of the tokenizer at the end of this line.
+     * @return 
+     */
+    int getEndState() {
+        if (slot == -1) {
+            return 0;
+        }
+        return parser.table.states[slot];
+    }
+
+    void setEndState(int state) {
+        parser.table.states[slot] = (byte) state;
+    }
+
+    /**
+     * returns the style tokens of this line, or null if it was not styled yet.
+     * @return
+     */
+    int[] getTokens() {
+        if (slot == -1) {
+            return null;
+        }
+        return parser.table.tokens[slot];
+    }
+
+    void setTokens(int[] tokens) {
+        parser.table.tokens[slot] = tokens;
+    }
+
+    /**
+     * gives the slot of the line back to the line table, the line stays
+     * invalid.
+     */
+    void release() {
+        if (slot != -1) {
+            parser.table.release(slot);
+            slot = -1;
+        }
+    }
+
+    /**
+     * returns the zero based row of this line. it is worked out from the
+     * lines before it, so it is always current.
+     * @return 
+     */
     public int getLineIndex() {
-        return lineIndex;
+        return parser.index.indexOf(this);
     }
 
     public int getDate() {
-        return date;
+        if (slot == -1) {
+            return 0;
+        }
+        return parser.table.dates[slot];
+    }
+
+    void setDate(int date) {
+        parser.table.dates[slot] = date;
     }
 
+    /**
+     * returns the position of the first character of this line. it is worked
+     * out from the lengths of the lines before it, so it is always current.
+     * a line that was removed returns the start it had then.
+     * @return 
+     */
     public int getStart() {
-        return start;
+        return parser.index.startOf(this);
     }
 
     public String getText() {
+        int start;
+
+        start = getStart();
         return parser.getText(start, start + length);
     }
 
@@ -109,7 +209,8 @@ public class SourceLine {
         if (start + length > this.length) {
             return "";
         }
-        return parser.getText(this.start + start, this.start + start + length);
+        start += getStart();
+        return parser.getText(start, start + length);
     }
 
     /**
@@ -120,7 +221,7 @@ public class SourceLine {
         if (length < 5) {
             return ' ';
         }
-        return parser.charAt(start + 5);
+        return parser.charAt(getStart() + 5);
     }
 
     public String get(LinePosition linePosition) {
@@ -135,13 +236,16 @@ public class SourceLine {
      * @return String
      */
     public String get(int s, int e) {
+        int start;
+
         if (s > length) {
             return "";
         }
+        start = getStart();
         if (e > length) {
-            return parser.getText(start + s, start + length).trim();
+            return parser.getTextTrimmed(start + s, start + length);
         }
-        return parser.getText(start + s, start + e).trim();
+        return parser.getTextTrimmed(start + s, start + e);
     }
 
     /**
@@ -172,11 +276,23 @@ public class SourceLine {
         return length;
     }
 
+    void setLength(int length) {
+        this.length = length;
+        // the text changed.
+        if (slot != -1) {
+            parser.table.hashes[slot] = 0;
+        }
+        parser.index.resized(this);
+    }
+
     public SourceLine getParent() {
         return parent;
     }
 
     public boolean isComment() {
+        int start;
+
+        start = getStart();
         if (start + 6 >= parser.length()) {
             return false;
         }
@@ -184,6 +300,9 @@ public class SourceLine {
     }
 
     public boolean isDirective() {
+        int start;
+
+        start = getStart();
         if (start + 6 >= parser.length()) {
             return false;
         }
@@ -191,6 +310,9 @@ public class SourceLine {
     }
 
     public boolean isSql() {
+        int start;
+
+        start = getStart();
         if (start + 6 >= parser.length()) {
             return false;
         }
@@ -202,7 +324,7 @@ public class SourceLine {
      */
     public void delete() {
         try {
-            parser.getDocument().remove(start, length);
+            parser.getDocument().remove(getStart(), length);
         } catch (BadLocationException e) {
             //e.printStackTrace();
             logger.error(e.getMessage());
@@ -210,13 +332,19 @@ public class SourceLine {
     }
 
     public char charAt(int index) {
-        return parser.charAt(start + index);
+        return parser.charAt(getStart() + index);
     }
 
     public void setText(String text) {
         Document document;
+        int start;
 
+        if (parser.isEditing()) {
+            parser.setEditText(this, text);
+            return;
+        }
         document = parser.getDocument();
+        start = getStart();
         try {
             document.remove(start, length);
             document.insertString(start, text, null);
@@ -302,12 +430,32 @@ public class SourceLine {
         }
     }
 
+    /**
+     * adds the text before the new line at the end of the line, the last
+     * line of the source may have none, and in an edit the text may be empty,
+     * then it goes at the end.
+     */
     public void appendText(String text) {
         Document document;
-
+        String before;
+        int end;
+
+        if (parser.isEditing()) {
+            before = parser.getEditText(this);
+            end = before.length();
+            if (end > 0 && before.charAt(end - 1) == '\n') {
+                end--;
+            }
+            parser.setEditText(this, before.substring(0, end) + text + before.substring(end));
+            return;
+        }
         document = parser.getDocument();
+        end = getStart() + length;
+        if (length > 0 && parser.charAt(end - 1) == '\n') {
+            end--;
+        }
         try {
-            document.insertString(start + (length - 1), text, null);
+            document.insertString(end, text, null);
         } catch (BadLocationException e) {
             //e.printStackTrace();
             logger.error(e.getMessage());
@@ -329,18 +477,6 @@ public class SourceLine {
         return next;
     }
 
-    public void shuffle() {
-        if (parent != null) {
-            lineIndex = parent.lineIndex + 1;
-            start = parent.start + parent.length;
-        } else {
-            lineIndex = 0;
-        }
-        if (next != null) {
-            next.shuffle();
-        }
-    }
-
     public void requestFocus() {
         parser.fireRequestingFocus(this);
     }
@@ -351,7 +487,10 @@ public class SourceLine {
      * @return 
      */
     public String getProcedureName() {
-        return parser.getText(start + 6, start + 21).trim();
+        int start;
+
+        start = getStart();
+        return parser.getTextTrimmed(start + 6, start + 21);
     }
 
     /**
@@ -360,10 +499,13 @@ public class SourceLine {
      * @return 
      */
     public String getScreenName() {
+        int start;
+
+        start = getStart();
         if (length < 29) {
-            return parser.getText(start + 18, start + length).trim();
+            return parser.getTextTrimmed(start + 18, start + length);
         }
-        return parser.getText(start + 18, start + 29).trim();
+        return parser.getTextTrimmed(start + 18, start + 29);
     }
 
     /**
@@ -456,6 +598,6 @@ public class SourceLine {
 
     @Override
     public String toString() {
-        return "SourceLine: start: " + start + ", length: " + length;
+        return "SourceLine: start: " + getStart() + ", length: " + length;
     }
 }
@@ -0,0 +1,401 @@
+package org.egomez.irpgeditor;
+
+/*
+ * Copyright:    Copyright (c) 2004
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2, or (at your option)
+ * any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this software; see the file COPYING.  If not, write to
+ * the Free Software Foundation, Inc., 59 Temple Place, Suite 330,
+ * Boston, MA 02111-1307 USA
+ */
+
+/**
+ * keeps the lines of a source parser in a balanced tree, in the same order as
+ * the linked list of lines. every line in the tree knows how many lines and
+ * how many characters are below it, so finding the line for a position or a
+ * row, and finding the row of a line, take O(log n) instead of walking the
+ * list from the first line.
+ *
+ * the tree is a treap, the lines are the nodes.
+ *
+ * @author Derek Van Kooten.
+ */
+class SourceLineIndex {
+
+    SourceLine root;
+    private int seed = 0x2545F491;
+    // results of split().
+    private SourceLine splitLeft, splitRight;
+
+    public int size() {
+        return count(root);
+    }
+
+    public int length() {
+        return total(root);
+    }
+
+    public void clear() {
+        root = null;
+    }
+
+    public SourceLine getFirst() {
+        SourceLine node;
+
+        node = root;
+        if (node == null) {
+            return null;
+        }
+        while (node.left != null) {
+            node = node.left;
+        }
+        return node;
+    }
+
+    public SourceLine getLast() {
+        SourceLine node;
+
+        node = root;
+        if (node == null) {
+            return null;
+        }
+        while (node.right != null) {
+            node = node.right;
+        }
+        return node;
+    }
+
+    /**
+     * adds the line to the tree directly after the line specified. if after
+     * is null then the line becomes the first line.
+     *
+     * @param after SourceLine
+     * @param line SourceLine
+     */
+    public void insertAfter(SourceLine after, SourceLine line) {
+        int rank;
+
+        if (after == null) {
+            rank = 0;
+        } else {
+            rank = indexOf(after) + 1;
+        }
+        line.left = null;
+        line.right = null;
+        line.up = null;
+        line.priority = nextPriority();
+        update(line);
+        split(root, rank);
+        root = merge(merge(splitLeft, line), splitRight);
+        root.up = null;
+        splitLeft = null;
+        splitRight = null;
+    }
+
+    /**
+     * removes the line from the tree.
+     *
+     * @param line SourceLine
+     */
+    public void remove(SourceLine line) {
+        SourceLine up, merged;
+
+        if (line.up == null && root != line) {
+            // not in the tree.
+            return;
+        }
+        line.startRemoved = startOf(line);
+        up = line.up;
+        if (line.left != null) {
+            line.left.up = null;
+        }
+        if (line.right != null) {
+            line.right.up = null;
+        }
+        merged = merge(line.left, line.right);
+        if (merged != null) {
+            merged.up = up;
+        }
+        if (up == null) {
+            root = merged;
+        } else if (up.left == line) {
+            up.left = merged;
+        } else {
+            up.right = merged;
+        }
+        while (up != null) {
+            update(up);
+            up = up.up;
+        }
+        line.left = null;
+        line.right = null;
+        line.up = null;
+    }
+
+    /**
+     * call this when the length of a line changes.
+     *
+     * @param line SourceLine
+     */
+    public void resized(SourceLine line) {
+        while (line != null) {
+            line.total = line.length + total(line.left) + total(line.right);
+            line = line.up;
+        }
+    }
+
+    /**
+     * returns the zero based row of the line.
+     *
+     * @param line SourceLine
+     * @return int
+     */
+    public int indexOf(SourceLine line) {
+        int index;
+
+        index = count(line.left);
+        while (line.up != null) {
+            if (line.up.right == line) {
+                index += count(line.up.left) + 1;
+            }
+            line = line.up;
+        }
+        return index;
+    }
+
+    /**
+     * returns the position of the first character of the line.
+     *
+     * @param line SourceLine
+     * @return int
+     */
+    public int startOf(SourceLine line) {
+        int start;
+
+        if (line.up == null && root != line) {
+            // not in the tree anymore.
+            return line.startRemoved;
+        }
+        start = total(line.left);
+        while (line.up != null) {
+            if (line.up.right == line) {
+                start += total(line.up.left) + line.up.length;
+            }
+            line = line.up;
+        }
+        return start;
+    }
+
+    /**
+     * returns the line at the zero based row, or null.
+     *
+     * @param index int
+     * @return SourceLine
+     */
+    public SourceLine get(int index) {
+        SourceLine node;
+        int left;
+
+        if (index < 0) {
+            return null;
+        }
+        node = root;
+        while (node != null) {
+            left = count(node.left);
+            if (index < left) {
+                node = node.left;
+            } else if (index == left) {
+                return node;
+            } else {
+                index -= left + 1;
+                node = node.right;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * returns the line that contains the position, or null if the position is
+     * after all the lines.
+     *
+     * @param position int
+     * @return SourceLine
+     */
+    public SourceLine getLine(int position) {
+        SourceLine node;
+        int left;
+
+        node = root;
+        while (node != null) {
+            left = total(node.left);
+            if (position < left) {
+                node = node.left;
+            } else {
+                position -= left;
+                if (position < node.length) {
+                    return node;
+                }
+                position -= node.length;
+                node = node.right;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * returns the first line that ends at or after the position, or the last
+     * line if there is none.
+     *
+     * @param position int
+     * @return SourceLine
+     */
+    public SourceLine getLineOrEnd(int position) {
+        SourceLine node;
+        int left;
+
+        node = root;
+        while (node != null) {
+            left = total(node.left);
+            if (node.left != null && position <= left) {
+                node = node.left;
+            } else {
+                position -= left;
+                if (position <= node.length) {
+                    return node;
+                }
+                position -= node.length;
+                if (node.right == null) {
+                    return node;
+                }
+                node = node.right;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * returns the zero based row of the line that contains the position. if
+     * the position is after all the lines, then the number of lines is
+     * returned.
+     *
+     * @param position int
+     * @return int
+     */
+    public int getIndex(int position) {
+        SourceLine node;
+        int left, index;
+
+        index = 0;
+        node = root;
+        while (node != null) {
+            left = total(node.left);
+            if (position < left) {
+                node = node.left;
+            } else {
+                position -= left;
+                index += count(node.left);
+                if (position < node.length) {
+                    return index;
+                }
+                position -= node.length;
+                index++;
+                node = node.right;
+            }
+        }
+        return index;
+    }
+
+    /**
+     * splits the tree into the first rank lines, splitLeft, and the rest,
+     * splitRight.
+     */
+    private void split(SourceLine node, int rank) {
+        int left;
+
+        if (node == null) {
+            splitLeft = null;
+            splitRight = null;
+            return;
+        }
+        left = count(node.left);
+        if (left < rank) {
+            split(node.right, rank - left - 1);
+            node.right = splitLeft;
+            if (splitLeft != null) {
+                splitLeft.up = node;
+            }
+            update(node);
+            splitLeft = node;
+        } else {
+            split(node.left, rank);
+            node.left = splitRight;
+            if (splitRight != null) {
+                splitRight.up = node;
+            }
+            update(node);
+            splitRight = node;
+        }
+    }
+
+    /**
+     * joins two trees, all the lines of a come before all the lines of b.
+     */
+    private SourceLine merge(SourceLine a, SourceLine b) {
+        SourceLine merged;
+
+        if (a == null) {
+            return b;
+        }
+        if (b == null) {
+            return a;
+        }
+        if (a.priority > b.priority) {
+            merged = merge(a.right, b);
+            a.right = merged;
+            merged.up = a;
+            update(a);
+            return a;
+        }
+        merged = merge(a, b.left);
+        b.left = merged;
+        merged.up = b;
+        update(b);
+        return b;
+    }
+
+    private int nextPriority() {
+        seed ^= seed << 13;
+        seed ^= seed >>> 17;
+        seed ^= seed << 5;
+        return seed;
+    }
+
+    private static void update(SourceLine node) {
+        node.count = 1 + count(node.left) + count(node.right);
+        node.total = node.length + total(node.left) + total(node.right);
+    }
+
+    private static int count(SourceLine node) {
+        if (node == null) {
+            return 0;
+        }
+        return node.count;
+    }
+
+    private static int total(SourceLine node) {
+        if (node == null) {
+            return 0;
+        }
+        return node.total;
+    }
+}
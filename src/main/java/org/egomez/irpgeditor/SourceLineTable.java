@@ -0,0 +1,105 @@
+package org.egomez.irpgeditor;
+
+/*
+ * Copyright:    Copyright (c) 2004
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2, or (at your option)
+ * any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this software; see the file COPYING.  If not, write to
+ * the Free Software Foundation, Inc., 59 Temple Place, Suite 330,
+ * Boston, MA 02111-1307 USA
+ */
+import java.util.*;
+
+/**
+ * keeps the member information of the lines of a source parser in arrays
+ * instead of in each line. every line gets a slot in the table when it is
+ * created, the sequence number, the date, the flags, the tokenizer state,
+ * the style tokens and the hash of the text of the line are kept at that
+ * slot.
+ *
+ * the slot of a deleted line is given back once the line has been saved, see
+ * SourceParser.clearDeleted(), and then used again for a new line.
+ *
+ * @author Derek Van Kooten.
+ */
+class SourceLineTable {
+
+    static final int FLAG_CHANGED = 0;
+    static final int FLAG_CREATED = 1;
+    static final int FLAG_INVALID = 2;
+    static final int FLAGS = 3;
+
+    float[] numbers = new float[256];
+    int[] dates = new int[256];
+    // the state of the tokenizer at the end of the line.
+    byte[] states = new byte[256];
+    // the style tokens of the line, see RPGSourceTokenizer.Runs.toTokens().
+    int[][] tokens = new int[256][];
+    // the hash of the text of the line, 0 until it is worked out.
+    int[] hashes = new int[256];
+    BitSet flags = new BitSet();
+    // slots that are not in use.
+    private int[] free = new int[16];
+    private int freeCount = 0;
+    private int used = 0;
+
+    /**
+     * returns a slot for a new line, the values in the slot are all cleared.
+     *
+     * @return int
+     */
+    public int allocate() {
+        int slot;
+
+        if (freeCount > 0) {
+            slot = free[--freeCount];
+        } else {
+            slot = used++;
+            if (slot == numbers.length) {
+                numbers = Arrays.copyOf(numbers, slot * 2);
+                dates = Arrays.copyOf(dates, slot * 2);
+                states = Arrays.copyOf(states, slot * 2);
+                tokens = Arrays.copyOf(tokens, slot * 2);
+                hashes = Arrays.copyOf(hashes, slot * 2);
+            }
+        }
+        numbers[slot] = 0;
+        dates[slot] = 0;
+        states[slot] = 0;
+        tokens[slot] = null;
+        hashes[slot] = 0;
+        flags.clear(slot * FLAGS, (slot + 1) * FLAGS);
+        return slot;
+    }
+
+    /**
+     * gives the slot back so it can be used for another line.
+     *
+     * @param slot int
+     */
+    public void release(int slot) {
+        if (freeCount == free.length) {
+            free = Arrays.copyOf(free, freeCount * 2);
+        }
+        free[freeCount++] = slot;
+        tokens[slot] = null;
+    }
+
+    public boolean get(int slot, int flag) {
+        return flags.get(slot * FLAGS + flag);
+    }
+
+    public void set(int slot, int flag, boolean value) {
+        flags.set(slot * FLAGS + flag, value);
+    }
+}
@@ -35,10 +35,12 @@ import org.slf4j.LoggerFactory;
 public class SourceParser implements DocumentListener, SourceLoader {
 
     Document document;
-    private final StringBuffer sourceNew = new StringBuffer();
+    private final SourceText sourceNew = new SourceText();
+    private final Segment segment = new Segment();
     SourceLine first, last;
-    @SuppressWarnings("rawtypes")
-    ArrayList listListeners = new ArrayList();
+    final SourceLineIndex index = new SourceLineIndex();
+    final SourceLineTable table = new SourceLineTable();
+    final SourceParserDispatcher dispatcher = new SourceParserDispatcher();
     @SuppressWarnings("rawtypes")
     ArrayList listListenersFocus = new ArrayList();
     @SuppressWarnings("rawtypes")
@@ -48,18 +50,39 @@ public class SourceParser implements DocumentListener, SourceLoader {
     @SuppressWarnings("rawtypes")
     ArrayList listDeleted = new ArrayList();
     boolean isDirty = false;
+    // goes up by one for every change to the source.
+    private volatile long version = 0;
+    // the last snapshot taken, read by other threads in getSnapshot().
+    private volatile SourceSnapshot snapshot;
+    // the new text of the lines set during a bulk edit, see beginEdit().
+    @SuppressWarnings("rawtypes")
+    IdentityHashMap mapEdits;
+    // the events held back until the bulk edit ends.
+    @SuppressWarnings("rawtypes")
+    ArrayList listBatch;
+    int depthEdit = 0;
     Logger logger = LoggerFactory.getLogger(SourceParser.class);
 
     public SourceParser() {
     }
 
-    @SuppressWarnings("unchecked")
     public void addListener(ListenerParser listener) {
-        listListeners.add(listener);
+        dispatcher.add(listener, SourceParserDispatcher.NOW);
+    }
+
+    /**
+     * adds a listener that gets the events the way given, one of the
+     * SourceParserDispatcher modes.
+     *
+     * @param listener ListenerParser
+     * @param mode int
+     */
+    public void addListener(ListenerParser listener, int mode) {
+        dispatcher.add(listener, mode);
     }
 
     public void removeListener(ListenerParser listener) {
-        listListeners.remove(listener);
+        dispatcher.remove(listener);
     }
 
     @SuppressWarnings("unchecked")
@@ -127,7 +150,9 @@ public class SourceParser implements DocumentListener, SourceLoader {
     public void insertUpdate(DocumentEvent evt) {
         try {
             setDirty(true);
-            sourceNew.insert(evt.getOffset(), document.getText(evt.getOffset(), evt.getLength()));
+            version++;
+            document.getText(evt.getOffset(), evt.getLength(), segment);
+            sourceNew.insert(evt.getOffset(), segment);
             added(evt.getOffset(), evt.getLength());
         } catch (BadLocationException e) {
             // e.printStackTrace();
@@ -144,6 +169,7 @@ public class SourceParser implements DocumentListener, SourceLoader {
     public void removeUpdate(DocumentEvent evt) {
         try {
             setDirty(true);
+            version++;
             sourceNew.delete(evt.getOffset(), evt.getOffset() + evt.getLength());
             removedNew(evt.getOffset(), evt.getLength());
             // removed(evt.getOffset(), evt.getLength());
@@ -169,7 +195,7 @@ public class SourceParser implements DocumentListener, SourceLoader {
     @SuppressWarnings({"rawtypes", "unchecked"})
     protected void added(int start, int length) {
         String string;
-        int begin, end, remainder;
+        int begin, end, remainder, lineStart;
         SourceLine line, lastx, parent;
         ArrayList listEvents;
         String crlf = "\n";
@@ -189,58 +215,50 @@ public class SourceParser implements DocumentListener, SourceLoader {
                 // no line was found because the content was added to the end or
                 // this is the first time content is added.
                 if (first == null) {
-                    line = new SourceLine(this, start, length);
-                    line.created = true;
+                    line = new SourceLine(this, length);
+                    line.setCreated(true);
                     listEvents.add(new SourceParserEvent(SourceParserEvent.ADDED, line));
                     first = line;
                 } else {
-                    parent = first;
-                    while (parent.getNext() != null) {
-                        parent = parent.getNext();
-                    }
+                    parent = index.getLast();
                     // if the last line has a "\n" in it, then a new line must
                     // be created.
                     // otherwise, append the content to the last line.
                     if (!parent.getText().contains(crlf)) {
-                        parent.length += length;
+                        parent.setLength(parent.length + length);
                         listEvents.add(new SourceParserEvent(SourceParserEvent.CHANGED, parent));
-                        parent.changed = true;
-                        // needed to be set for the shuffle() at end of method.
-                        line = parent;
+                        parent.setChanged(true);
                     } else {
                         line = new SourceLine(parent, length);
-                        line.created = true;
+                        line.setCreated(true);
                         listEvents.add(new SourceParserEvent(SourceParserEvent.ADDED, line));
                     }
                 }
             } else {
-                line.length += length;
+                line.setLength(line.length + length);
                 listEvents.add(new SourceParserEvent(SourceParserEvent.CHANGED, line));
-                line.changed = true;
+                line.setChanged(true);
             }
         } else {
             if (line == null) {
                 // no line was found because the content was added to the end,
                 // or there is no content yet..
                 if (first == null) {
-                    line = new SourceLine(this, 0, end + 1);
-                    line.created = true;
+                    line = new SourceLine(this, end + 1);
+                    line.setCreated(true);
                     listEvents.add(new SourceParserEvent(SourceParserEvent.ADDED, line));
                     first = line;
                 } else {
-                    line = first;
-                    while (line.getNext() != null) {
-                        line = line.getNext();
-                    }
+                    line = index.getLast();
                     // if the last line has a "\n" in it, then create a new
                     // line.
                     if (!line.getText().contains(crlf)) {
-                        line.length += (end + 1);
+                        line.setLength(line.length + (end + 1));
                         listEvents.add(new SourceParserEvent(SourceParserEvent.CHANGED, line));
-                        line.changed = true;
+                        line.setChanged(true);
                     } else {
                         line = new SourceLine(line, end + 1);
-                        line.created = true;
+                        line.setCreated(true);
                         listEvents.add(new SourceParserEvent(SourceParserEvent.ADDED, line));
                     }
                 }
@@ -250,7 +268,7 @@ public class SourceParser implements DocumentListener, SourceLoader {
                 // get number of lines inserted.
                 while (end > -1) {
                     line = new SourceLine(parent, (end - begin) + 1);
-                    line.created = true;
+                    line.setCreated(true);
                     listEvents.add(new SourceParserEvent(SourceParserEvent.ADDED, line));
                     parent = line;
                     begin = end + 1;
@@ -259,7 +277,7 @@ public class SourceParser implements DocumentListener, SourceLoader {
                 // any more left after the last \n?
                 if (begin < string.length()) {
                     line = new SourceLine(parent, string.length() - begin);
-                    line.created = true;
+                    line.setCreated(true);
                     listEvents.add(new SourceParserEvent(SourceParserEvent.ADDED, line));
                 }
             } else {
@@ -270,17 +288,18 @@ public class SourceParser implements DocumentListener, SourceLoader {
                 // or an add
                 // event.
                 // if the start is the start of the line, then a line was added.
-                if (start == line.start) {
+                lineStart = line.getStart();
+                if (start == lineStart) {
                     lastx = line;
                     parent = line.parent;
                     if (parent == null) {
-                        line = new SourceLine(this, start, end + 1);
+                        line = new SourceLine(this, end + 1);
                         line.setNext(first);
                         first = line;
                     } else {
                         line = new SourceLine(parent, end + 1);
                     }
-                    line.created = true;
+                    line.setCreated(true);
                     listEvents.add(new SourceParserEvent(SourceParserEvent.ADDED, line));
                     // get number of lines inserted.
                     begin = end + 1;
@@ -288,31 +307,31 @@ public class SourceParser implements DocumentListener, SourceLoader {
                     while (end > -1) {
                         parent = line;
                         line = new SourceLine(parent, (end - begin) + 1);
-                        line.created = true;
+                        line.setCreated(true);
                         listEvents.add(new SourceParserEvent(SourceParserEvent.ADDED, line));
                         begin = end + 1;
                         end = string.indexOf(crlf, begin);
                     }
                     line.setNext(lastx);
                     lastx.parent = line;
-                    lastx.length = (string.length() - begin) + lastx.length;
+                    lastx.setLength((string.length() - begin) + lastx.length);
                     listEvents.add(new SourceParserEvent(SourceParserEvent.CHANGED, lastx));
-                    lastx.changed = true;
+                    lastx.setChanged(true);
                 } else {
                     lastx = line.getNext();
                     // get the length of the line that the new text was added
                     // to.
-                    remainder = (line.start + line.length) - start;
-                    line.length = (start - line.start) + end + 1;
+                    remainder = (lineStart + line.length) - start;
+                    line.setLength((start - lineStart) + end + 1);
                     listEvents.add(new SourceParserEvent(SourceParserEvent.CHANGED, line));
-                    line.changed = true;
+                    line.setChanged(true);
                     // get number of lines inserted.
                     begin = end + 1;
                     end = string.indexOf(crlf, begin);
                     while (end > -1) {
                         parent = line;
                         line = new SourceLine(parent, (end - begin) + 1);
-                        line.created = true;
+                        line.setCreated(true);
                         listEvents.add(new SourceParserEvent(SourceParserEvent.ADDED, line));
                         begin = end + 1;
                         end = string.indexOf(crlf, begin);
@@ -323,15 +342,11 @@ public class SourceParser implements DocumentListener, SourceLoader {
                     if (lastx != null) {
                         lastx.parent = line;
                     }
-                    line.created = true;
+                    line.setCreated(true);
                     listEvents.add(new SourceParserEvent(SourceParserEvent.ADDED, line));
                 }
             }
         }
-        // line.shuffle();
-        if (first != null) {
-            first.shuffle();
-        }
         fireEvents(listEvents);
     }
 
@@ -339,10 +354,14 @@ public class SourceParser implements DocumentListener, SourceLoader {
     protected void removedNew(int start, int length) {
         SourceLine lineStart, lineEnd, line;
         ArrayList listEvents;
+        int startOfStart, endOfEnd;
 
         listEvents = new ArrayList();
         lineStart = getLine(start);
         lineEnd = getLineOrEnd(start + length);
+        // get the positions before any line is taken out of the index.
+        startOfStart = lineStart.getStart();
+        endOfEnd = lineEnd.getStart() + lineEnd.length;
 
         if (lineStart != lineEnd) {
             // remove all the lines inbetween.
@@ -350,7 +369,8 @@ public class SourceParser implements DocumentListener, SourceLoader {
             while (line != lineEnd) {
                 listEvents.add(new SourceParserEvent(SourceParserEvent.REMOVED, line));
                 listDeleted.add(line);
-                line.invalid = true;
+                line.setInvalid(true);
+                index.remove(line);
                 line = line.getNext();
             }
 
@@ -358,20 +378,21 @@ public class SourceParser implements DocumentListener, SourceLoader {
             // combined.
             listEvents.add(new SourceParserEvent(SourceParserEvent.REMOVED, lineEnd));
             listDeleted.add(lineEnd);
-            lineEnd.invalid = true;
+            lineEnd.setInvalid(true);
+            index.remove(lineEnd);
             line = lineEnd.getNext();
 
             // was both lines removed?
-            if (start == lineStart.start && start + length == lineEnd.start + lineEnd.length) {
+            if (start == startOfStart && start + length == endOfEnd) {
                 // both lines were removed.
                 listEvents.add(0, new SourceParserEvent(SourceParserEvent.REMOVED, lineStart));
                 listDeleted.add(lineStart);
-                lineStart.invalid = true;
+                lineStart.setInvalid(true);
+                index.remove(lineStart);
                 if (lineStart.parent == null) {
                     first = line;
-                    lineStart = line;
                     if (line != null) {
-                        line.start = 0;
+                        line.parent = null;
                     }
                 } else {
                     lineStart = lineStart.parent;
@@ -383,17 +404,18 @@ public class SourceParser implements DocumentListener, SourceLoader {
             } else {
                 // start with whats remaining in the end line, if nothing is
                 // remaining, it will be 0.
-                lineStart.length = (lineEnd.start + lineEnd.length) - (start + length);
+                lineStart.setLength(endOfEnd - (start + length));
                 // was the cr lf removed from the end line?
-                if (start + length == lineEnd.start + lineEnd.length) {
+                if (start + length == endOfEnd && line != null) {
                     // the one following the end line has to be combined with
                     // the start line
                     // so it has to be removed as well.
                     listEvents.add(new SourceParserEvent(SourceParserEvent.REMOVED, line));
                     listDeleted.add(line);
-                    line.invalid = true;
+                    line.setInvalid(true);
+                    index.remove(line);
                     // add in the length for this line.
-                    lineStart.length += line.length;
+                    lineStart.setLength(lineStart.length + line.length);
                     line = line.getNext();
                 }
 
@@ -402,272 +424,89 @@ public class SourceParser implements DocumentListener, SourceLoader {
                 if (line != null) {
                     line.parent = lineStart;
                 }
-                lineStart.changed = true;
-                lineStart.length += (start - lineStart.start);
+                lineStart.setChanged(true);
+                lineStart.setLength(lineStart.length + (start - startOfStart));
                 listEvents.add(new SourceParserEvent(SourceParserEvent.CHANGED, lineStart));
             }
         } else { // else line start equals line end.
             // was all of the first line removed?
-            if (start == lineStart.start && length >= lineStart.length) {
+            if (start == startOfStart && length >= lineStart.length) {
                 listEvents.add(0, new SourceParserEvent(SourceParserEvent.REMOVED, lineStart));
                 listDeleted.add(lineStart);
-                lineStart.invalid = true;
+                lineStart.setInvalid(true);
+                index.remove(lineStart);
                 line = lineStart.getNext();
                 if (lineStart.parent == null) {
                     first = line;
                     if (line != null) {
                         line.parent = null;
-                        line.start = 0;
                     }
-                    lineStart = first;
                 } else {
                     lineStart.parent.setNext(line);
                     if (line != null) {
                         line.parent = lineStart.parent;
                     }
-                    lineStart = lineStart.parent;
                 }
             } else {
                 // otherwise the first line was changed.
                 // was the end of line removed from the line?
-                if (start + length == lineStart.start + lineStart.length) {
+                if (start + length == startOfStart + lineStart.length) {
                     // the end of the line was removed.
                     // remove the next line if there is one.
                     line = lineStart.getNext();
                     if (line != null) {
                         // add the length of the next line to the start line.
-                        lineStart.length += line.length;
+                        lineStart.setLength(lineStart.length + line.length);
                         listEvents.add(new SourceParserEvent(SourceParserEvent.REMOVED, line));
                         listDeleted.add(line);
-                        line.invalid = true;
+                        line.setInvalid(true);
+                        index.remove(line);
                         lineStart.setNext(line.getNext(), true);
                     }
                 }
-                lineStart.changed = true;
+                lineStart.setChanged(true);
                 listEvents.add(new SourceParserEvent(SourceParserEvent.CHANGED, lineStart));
-                lineStart.length -= length;
+                lineStart.setLength(lineStart.length - length);
             }
         }
 
-        // if ( lineStart != null ) {
-        // lineStart.shuffle();
-        // }
-        if (first != null) {
-            first.shuffle();
-        }
         fireEvents(listEvents);
     }
 
+    public CharSequence getText() {
+        return sourceNew;
+    }
+
+    public String getText(int start, int end) {
+        return sourceNew.substring(start, end);
+    }
+
     /**
-     * call this when text is removed from the source file.
+     * returns the text between start and end without the blanks at either
+     * end, the same as getText(start, end).trim() without the extra copy.
      * @param start
-     * @param length
+     * @param end
+     * @return 
      */
-    @SuppressWarnings({"rawtypes", "unchecked"})
-    protected void removed(int start, int length) {
-        SourceLine lineStart, lineEnd, line;
-        ArrayList listEvents;
-
-        listEvents = new ArrayList();
-        lineStart = getLine(start);
-        if (length < lineStart.length) {
-            //System.out.println("a");
-            // changed a line.
-            // removed from current line only.
-            // was the \n removed from the line?
-            if (start + length == lineStart.start + lineStart.length) {
-                //System.out.println("b");
-                // the \n was removed from this line.
-                // the next line gets removed, and its content gets appended to
-                // the start line.
-                line = lineStart.getNext();
-                if (line != null) {
-                    //System.out.println("c");
-                    listEvents.add(new SourceParserEvent(SourceParserEvent.REMOVED, line));
-                    listDeleted.add(line);
-                    line.invalid = true;
-                    lineStart.length += line.length;
-                    line = line.getNext();
-                    lineStart.setNext(line);
-                    if (line != null) {
-                        //System.out.println("d");
-                        line.parent = lineStart;
-                    }
-                }
-            }
-            //System.out.println("e");
-            lineStart.length -= length;
-            listEvents.add(new SourceParserEvent(SourceParserEvent.CHANGED, lineStart));
-            lineStart.changed = true;
-        } else if (length > lineStart.length) {
-            //System.out.println("f");
-            lineEnd = getLine(start + length);
-            // was the first one removed completely?
-            if (start == lineStart.start) {
-                //System.out.println("g");
-                // is all the content to the end removed.
-                if (lineEnd == null) {
-                    //System.out.println("h");
-                    if (lineStart.parent == null) {
-                        //System.out.println("i");
-                        first = null;
-                    } else {
-                        //System.out.println("j");
-                        lineStart.parent.setNext(null);
-                    }
-                    // let the listener know which lines were removed.
-                    line = lineStart;
-                    while (line != lineEnd) {
-                        //System.out.println("k");
-                        listEvents.add(new SourceParserEvent(SourceParserEvent.REMOVED, line));
-                        listDeleted.add(line);
-                        line.invalid = true;
-                        line = line.getNext();
-                    }
-                    // set it to null so that a shuffle is not done at the end
-                    // on lines
-                    // that dont exist anymore.
-                    lineStart = null;
-                    //System.out.println("l");
-                } else {
-                    //System.out.println("m");
-                    int newlength = (lineEnd.start + lineEnd.length) - (start + length);
-                    // let the listener know which lines were removed.
-                    line = lineStart;
-                    while (line != lineEnd) {
-                        //System.out.println("n");
-                        listEvents.add(new SourceParserEvent(SourceParserEvent.REMOVED, line));
-                        listDeleted.add(line);
-                        line.invalid = true;
-                        line = line.getNext();
-                    }
-                    lineEnd.parent = lineStart.parent;
-                    if (lineEnd.parent == null) {
-                        //System.out.println("o");
-                        first = lineEnd;
-                        // do this so that the shuffle is correct.
-                        first.start = 0;
-                        lineStart = lineEnd;
-                    } else {
-                        //System.out.println("p");
-                        lineEnd.parent.setNext(lineEnd);
-                        // do this so that the shuffle is correct.
-                        lineStart = lineEnd.parent;
-                    }
-                    // set the new size for the end line.
-                    if (lineEnd.length != newlength) {
-                        //System.out.println("q");
-                        lineEnd.length = newlength;
-                        listEvents.add(new SourceParserEvent(SourceParserEvent.CHANGED, lineEnd));
-                        lineEnd.changed = true;
-                    }
-                }
-            } else {
-                //System.out.println("r");
-                // removed a line plus.
-                // the start line gets appended to always.
-                // the start line gets the rest of the end line.
-                // if all of the end line is removed, then the one
-                // after the end line is used.
-                if (lineEnd == null) {
-                    //System.out.println("s");
-                    line = lineStart.getNext();
-                    lineStart.setNext(null);
-                    lineStart.length = start - lineStart.start;
-                    listEvents.add(new SourceParserEvent(SourceParserEvent.CHANGED, lineStart));
-                    lineStart.changed = true;
-                    // let the listener know which lines were removed.
-                    while (line != null) {
-                        //System.out.println("t");
-                        listEvents.add(new SourceParserEvent(SourceParserEvent.REMOVED, line));
-                        listDeleted.add(line);
-                        line.invalid = true;
-                        line = line.getNext();
-                    }
-                } else {
-                    //System.out.println("u");
-                    if (start + length == lineEnd.start + lineEnd.length) {
-                        //System.out.println("v");
-                        // if the end line is all removed, and is the last line
-                        // then the start line becomes the end line and is
-                        // shorter.
-                        if (lineEnd.getNext() == null) {
-                            //System.out.println("w");
-                            lineStart.setNext(null);
-                            lineStart.length = start - lineStart.length;
-                            listEvents.add(new SourceParserEvent(SourceParserEvent.CHANGED, lineStart));
-                            lineStart.changed = true;
-                            return;
-                        }
-                        // the line after the lineEnd is the lineEnd, since all
-                        // of the
-                        // previous one was removed.
-                        lineEnd = lineEnd.getNext();
-                    }
-                    //System.out.println("x");
-                    // let the listener know which lines were removed.
-                    line = lineStart.getNext();
-                    while (line != lineEnd.getNext()) {
-                        //System.out.println("y");
-                        listEvents.add(new SourceParserEvent(SourceParserEvent.REMOVED, line));
-                        listDeleted.add(line);
-                        line.invalid = true;
-                        line = line.getNext();
-                    }
-                    // append the remaining line end to the line start and
-                    // adjust length.
-                    line = lineEnd.getNext();
-                    lineStart.setNext(line);
-                    if (line != null) {
-                        //System.out.println("z");
-                        line.parent = lineStart;
-                    }
-                    lineStart.length = (start - lineStart.start)
-                            + ((lineEnd.start + lineEnd.length) - (start + length));
-                    listEvents.add(new SourceParserEvent(SourceParserEvent.CHANGED, lineStart));
-                    lineStart.changed = true;
-                }
-            }
-        } else {
-            //System.out.println("aa");
-            // removed a line.
-            // removed from current line only.
-            // get the current line.
-            listEvents.add(new SourceParserEvent(SourceParserEvent.REMOVED, lineStart));
-            listDeleted.add(lineStart);
-            lineStart.invalid = true;
-            line = lineStart.getNext();
-            if (lineStart.parent == null) {
-                //System.out.println("ab");
-                first = line;
-                if (line != null) {
-                    //System.out.println("ac");
-                    line.parent = null;
-                    line.start = 0;
-                }
-            } else {
-                //System.out.println("ad");
-                lineStart.parent.setNext(line);
-                if (line != null) {
-                    //System.out.println("ae");
-                    line.parent = lineStart.parent;
-                }
-                lineStart = lineStart.parent;
-            }
+    public String getTextTrimmed(int start, int end) {
+        while (start < end && sourceNew.charAt(start) <= ' ') {
+            start++;
         }
-        if (lineStart != null) {
-            //System.out.println("af");
-            lineStart.shuffle();
+        while (end > start && sourceNew.charAt(end - 1) <= ' ') {
+            end--;
         }
-        fireEvents(listEvents);
-    }
-
-    public StringBuffer getText() {
-        return sourceNew;
+        return sourceNew.substring(start, end);
     }
 
-    public String getText(int start, int end) {
-        return sourceNew.substring(start, end);
+    /**
+     * returns a view of the text between start and end, no characters are
+     * copied. the view should not be kept past the next change to the source.
+     * @param start
+     * @param end
+     * @return 
+     */
+    public CharSequence subSequence(int start, int end) {
+        return sourceNew.subSequence(start, end);
     }
 
     public char charAt(int index) {
@@ -702,130 +541,387 @@ public class SourceParser implements DocumentListener, SourceLoader {
     @Override
     public void lineLoaded(float number, int date, String line) {
         ArrayList listEvents;
-        int index;
+        int end;
 
         listEvents = new ArrayList();
-        line = "a" + line;
-        line = line.trim() + "\n";
-        line = line.substring(1);
-        sourceNew.append(line);
+        version++;
+        // drop the blanks from the end of the line.
+        end = line.length();
+        while (end > 0 && line.charAt(end - 1) <= ' ') {
+            end--;
+        }
+        sourceNew.append(line, 0, end);
+        sourceNew.append('\n');
         if (first == null) {
-            first = new SourceLine(this, 0, line.length());
-            index = 0;
+            first = new SourceLine(this, end + 1);
             last = first;
         } else {
-            index = last.lineIndex + 1;
-            last = new SourceLine(last, line.length());
+            last = new SourceLine(last, end + 1);
         }
-        last.number = number;
-        last.date = date;
-        last.lineIndex = index;
+        last.setNumber(number);
+        last.setDate(date);
         listEvents.add(new SourceParserEvent(SourceParserEvent.ADDED, last));
         fireEvents(listEvents);
     }
 
-    public Point getPoint(int position) {
-        int row;// , col;
-        SourceLine line, lasty;
+    /**
+     * gets called when a block of lines is loaded from the as400. all the
+     * lines are added in one pass and the listeners get one LOADED event for
+     * the whole block. call it on the event thread if the parser has
+     * listeners that get the events later.
+     */
+    @SuppressWarnings({"rawtypes", "unchecked"})
+    @Override
+    public void linesLoaded(float[] numbers, int[] dates, CharSequence lines) {
+        ArrayList listEvents;
+        SourceLine lineFirst;
+        int begin, end, next, length;
+
+        if (numbers.length == 0) {
+            return;
+        }
+        version++;
+        lineFirst = null;
+        length = lines.length();
+        begin = 0;
+        for (int x = 0; x < numbers.length; x++) {
+            end = begin;
+            while (end < length && lines.charAt(end) != '\n') {
+                end++;
+            }
+            next = end + 1;
+            // drop the blanks from the end of the line.
+            while (end > begin && lines.charAt(end - 1) <= ' ') {
+                end--;
+            }
+            sourceNew.append(lines, begin, end);
+            sourceNew.append('\n');
+            if (first == null) {
+                first = new SourceLine(this, (end - begin) + 1);
+                last = first;
+            } else {
+                last = new SourceLine(last, (end - begin) + 1);
+            }
+            last.setNumber(numbers[x]);
+            last.setDate(dates[x]);
+            if (lineFirst == null) {
+                lineFirst = last;
+            }
+            begin = next;
+        }
+        listEvents = new ArrayList();
+        listEvents.add(new SourceParserEvent(SourceParserEvent.LOADED, lineFirst, last));
+        fireEvents(listEvents);
+    }
 
-        row = 1;
+    public long getVersion() {
+        return version;
+    }
+
+    /**
+     * returns a snapshot of the source as it is now, for reading from a
+     * background thread. the source is only changed on the event thread, so
+     * the snapshot is taken there and handed to the thread that reads it.
+     * other threads never wait for the event thread, they get the last
+     * snapshot that was taken if the source has not changed since, otherwise
+     * null.
+     *
+     * @return SourceSnapshot
+     */
+    public SourceSnapshot getSnapshot() {
+        SourceSnapshot temp;
+
+        if (EventQueue.isDispatchThread()) {
+            return takeSnapshot();
+        }
+        temp = snapshot;
+        if (temp != null && temp.version == version) {
+            return temp;
+        }
+        return null;
+    }
+
+    /**
+     * the snapshot is kept until the next change, so asking again for the
+     * same version costs nothing. the lines and their starts are copied, the
+     * text is shared with the parser, see SourceText.freeze().
+     */
+    protected SourceSnapshot takeSnapshot() {
+        SourceLine[] lines;
+        int[] starts;
+        int[] hashes;
+        SourceLine line;
+        int row;
+
+        if (snapshot != null && snapshot.version == version) {
+            return snapshot;
+        }
+        lines = new SourceLine[index.size()];
+        starts = new int[lines.length + 1];
+        hashes = new int[lines.length];
+        row = 0;
         line = first;
-        lasty = null;
         while (line != null) {
-            if (position < line.start + line.length) {
-                return new Point((position + 1) - line.start, row);
-            }
-            lasty = line;
-            line = line.getNext();
+            lines[row] = line;
+            starts[row + 1] = starts[row] + line.length;
+            hashes[row] = table.hashes[line.slot];
             row++;
+            line = line.getNext();
+        }
+        snapshot = new SourceSnapshot(this, version, sourceNew.freeze(), lines, starts, hashes);
+        return snapshot;
+    }
+
+    /**
+     * keeps the hashes of the lines that were worked out from the snapshot,
+     * so they are not worked out again for the next one. a hash of 0 is
+     * skipped. this must be called on the event thread.
+     *
+     * @param snapshot SourceSnapshot
+     * @param hashes int[] by row of the snapshot.
+     */
+    public void keepHashes(SourceSnapshot snapshot, int[] hashes) {
+        if (snapshot.isCurrent() == false) {
+            return;
+        }
+        for (int row = 0; row < snapshot.lines.length; row++) {
+            if (hashes[row] != 0) {
+                table.hashes[snapshot.lines[row].slot] = hashes[row];
+            }
+        }
+    }
+
+    public Point getPoint(int position) {
+        SourceLine line;
+        int start;
+
+        line = index.getLine(position);
+        if (line != null) {
+            return new Point((position + 1) - line.getStart(), index.indexOf(line) + 1);
         }
         // if this is reached, then the position is after all content.
         // if there is no content, then this is the first row, first position.
-        if (lasty == null) {
-            return new Point(1, row);
+        line = index.getLast();
+        if (line == null) {
+            return new Point(1, 1);
         } else {
             // determine row and position based on if there is a CR LF at end of
             // last line.
-            if (sourceNew.charAt((lasty.start + lasty.length) - 1) == '\n') {
-                return new Point(1, row);
+            start = line.getStart();
+            if (sourceNew.charAt((start + line.length) - 1) == '\n') {
+                return new Point(1, index.size() + 1);
             } else {
-                return new Point((position + 1) - lasty.start, row - 1);
+                return new Point((position + 1) - start, index.size());
             }
         }
     }
 
     public int getRow(int position) {
-        int row;// , col;
-        SourceLine line;
+        return index.getIndex(position) + 1;
+    }
 
-        row = 1;
-        line = first;
-        while (line != null) {
-            if (position < line.start + line.length) {
-                return row;
-            }
-            line = line.getNext();
-            row++;
+    public int getLineCount() {
+        return index.size();
+    }
+
+    public SourceLine getLineForRow(int row) {
+        return index.get(row - 1);
+    }
+
+    public SourceLine getLineOrEnd(int position) {
+        return index.getLineOrEnd(position);
+    }
+
+    public SourceLine getLine(int position) {
+        return index.getLine(position);
+    }
+
+    /**
+     * forgets the deleted lines once they have been saved. the lines stay
+     * invalid, their slots in the line table are used again for new lines.
+     */
+    public void clearDeleted() {
+        for (int x = 0; x < listDeleted.size(); x++) {
+            ((SourceLine) listDeleted.get(x)).release();
         }
-        return row;
+        listDeleted.clear();
     }
 
-    public int getLineCount() {
-        SourceLine line;
-        int count = 0;
+    /**
+     * starts a bulk edit. until endEdit() is called the text set on the lines
+     * with setText() and appendText() is only kept, the lines keep their old
+     * text. the calls can be nested.
+     */
+    @SuppressWarnings("rawtypes")
+    public void beginEdit() {
+        if (depthEdit == 0) {
+            mapEdits = new IdentityHashMap();
+            listBatch = new ArrayList();
+        }
+        depthEdit++;
+    }
 
-        line = first;
-        while (line != null) {
-            count++;
-            line = line.getNext();
+    public boolean isEditing() {
+        return depthEdit > 0;
+    }
+
+    /**
+     * ends a bulk edit. a line that is still one line is changed where it is,
+     * so it stays the same line with its sequence number and is marked
+     * changed. the rest, each run of lines next to each other that was set, is
+     * replaced in the document in one go. the listeners get all the events of
+     * the bulk edit in one list.
+     */
+    @SuppressWarnings("rawtypes")
+    public void endEdit() {
+        IdentityHashMap edits;
+        ArrayList temp;
+
+        if (depthEdit == 0) {
+            return;
+        }
+        depthEdit--;
+        if (depthEdit > 0) {
+            return;
+        }
+        edits = mapEdits;
+        mapEdits = null;
+        try {
+            applyEdits(edits);
+        } finally {
+            temp = listBatch;
+            listBatch = null;
+            fireEvents(temp);
         }
-        return count;
     }
 
-    public SourceLine getLineForRow(int row) {
-        SourceLine line;
+    @SuppressWarnings("unchecked")
+    void setEditText(SourceLine line, String text) {
+        mapEdits.put(line, text);
+    }
 
-        line = first;
-        while (line != null) {
-            if (row == 1) {
-                return line;
+    /**
+     * returns the text a line will have once the bulk edit ends.
+     */
+    String getEditText(SourceLine line) {
+        String text;
+
+        text = (String) mapEdits.get(line);
+        if (text == null) {
+            return line.getText();
+        }
+        return text;
+    }
+
+    /**
+     * replaces the lines from the last one back, so the start of the lines
+     * before stays the same.
+     */
+    @SuppressWarnings("rawtypes")
+    protected void applyEdits(IdentityHashMap edits) {
+        SourceLine[] lines;
+        SourceLine line;
+        StringBuilder buffer;
+        int count, end, start;
+
+        lines = new SourceLine[edits.size()];
+        count = 0;
+        for (Object o : edits.keySet()) {
+            line = (SourceLine) o;
+            if (line.isInvalid() == false) {
+                lines[count++] = line;
             }
-            line = line.getNext();
-            row--;
         }
-        return line;
+        Arrays.sort(lines, 0, count, new Comparator<SourceLine>() {
+            @Override
+            public int compare(SourceLine a, SourceLine b) {
+                return Integer.compare(a.getStart(), b.getStart());
+            }
+        });
+        end = count - 1;
+        while (end >= 0) {
+            if (isLine(lines[end], (String) edits.get(lines[end]))) {
+                change(lines[end], (String) edits.get(lines[end]));
+                end--;
+                continue;
+            }
+            start = end;
+            while (start > 0 && lines[start - 1].getNext() == lines[start]
+                    && isLine(lines[start - 1], (String) edits.get(lines[start - 1])) == false) {
+                start--;
+            }
+            buffer = new StringBuilder();
+            for (int x = start; x <= end; x++) {
+                buffer.append((String) edits.get(lines[x]));
+            }
+            replace(lines[start].getStart(), (lines[end].getStart() + lines[end].length) - lines[start].getStart(), buffer.toString());
+            end = start - 1;
+        }
     }
 
-    @SuppressWarnings("unused")
-    public SourceLine getLineOrEnd(int position) {
-        SourceLine line, lastx;
+    /**
+     * returns true if the text can take the place of the text of the line and
+     * leave it one line, it ends in a new line only if the line does.
+     */
+    protected boolean isLine(SourceLine line, String text) {
+        int index;
 
-        line = first;
-        lastx = first;
-        while (line != null) {
-            if (position <= line.start + line.length) {
-                return line;
-            }
-            lastx = line;
-            line = line.getNext();
+        if (line.length == 0 || text.length() == 0) {
+            return false;
         }
-        if (line == null) {
-            return lastx;
+        index = text.indexOf('\n');
+        if (charAt(line.getStart() + line.length - 1) == '\n') {
+            return index == text.length() - 1;
         }
-        return line;
+        return index == -1;
     }
 
-    public SourceLine getLine(int position) {
-        SourceLine line;
+    /**
+     * changes the text of the line to the text, only the part in between
+     * what they start and end with is replaced.
+     */
+    protected void change(SourceLine line, String text) {
+        int start, length, prefix, suffix;
+
+        start = line.getStart();
+        length = line.length;
+        prefix = 0;
+        while (prefix < length && prefix < text.length() && charAt(start + prefix) == text.charAt(prefix)) {
+            prefix++;
+        }
+        suffix = 0;
+        while (suffix < length - prefix && suffix < text.length() - prefix
+                && charAt((start + length) - (suffix + 1)) == text.charAt(text.length() - (suffix + 1))) {
+            suffix++;
+        }
+        if (prefix + suffix == length && prefix + suffix == text.length()) {
+            return;
+        }
+        if (prefix + suffix == 0) {
+            // the last line with all of its text replaced, removing all of it
+            // first would remove the line.
+            try {
+                document.insertString(start, text, null);
+                document.remove(start + text.length(), length);
+            } catch (BadLocationException e) {
+                logger.error(e.getMessage());
+            }
+            return;
+        }
+        replace(start + prefix, length - (prefix + suffix), text.substring(prefix, text.length() - suffix));
+    }
 
-        line = first;
-        while (line != null) {
-            if (position < line.start + line.length) {
-                return line;
+    protected void replace(int start, int length, String text) {
+        try {
+            if (document instanceof AbstractDocument) {
+                ((AbstractDocument) document).replace(start, length, text, null);
+            } else {
+                document.remove(start, length);
+                document.insertString(start, text, null);
             }
-            line = line.getNext();
+        } catch (BadLocationException e) {
+            logger.error(e.getMessage());
         }
-        return line;
     }
 
     public SourceLine getFirst() {
@@ -833,29 +929,16 @@ public class SourceParser implements DocumentListener, SourceLoader {
     }
 
     public SourceLine getLast() {
-        SourceLine line;
-
-        line = first;
-        if (line == null) {
-            return null;
-        }
-        while (line.next != null) {
-            line = line.next;
-        }
-        return line;
+        return index.getLast();
     }
 
-    @SuppressWarnings("rawtypes")
+    @SuppressWarnings({"rawtypes", "unchecked"})
     protected void fireEvents(ArrayList listEvents) {
-        ArrayList temp;
-
-        if (listEvents.isEmpty()) {
+        if (listBatch != null) {
+            listBatch.addAll(listEvents);
             return;
         }
-        temp = (ArrayList) listListeners.clone();
-        for (int x = 0; x < temp.size(); x++) {
-            ((ListenerParser) temp.get(x)).parserEvents(listEvents);
-        }
+        dispatcher.fire(listEvents);
     }
 
     @SuppressWarnings("unchecked")
@@ -884,8 +967,8 @@ public class SourceParser implements DocumentListener, SourceLoader {
     protected void fireRequestingFlowChart(SourceBlock sourceBlock) {
         ListenerParserFlowChart[] temp;
 
-        temp = (ListenerParserFlowChart[]) listListenersFocus
-                .toArray(new ListenerParserFlowChart[listListenersFlowChart.size()]);
+        temp = (ListenerParserFlowChart[]) listListenersFlowChart
+                .toArray(ListenerParserFlowChart[]::new);
         for (ListenerParserFlowChart temp1 : temp) {
             temp1.requestingFlowChart(sourceBlock);
         }
@@ -0,0 +1,237 @@
+package org.egomez.irpgeditor;
+
+/*
+ * Copyright:    Copyright (c) 2004
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2, or (at your option)
+ * any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this software; see the file COPYING.  If not, write to
+ * the Free Software Foundation, Inc., 59 Temple Place, Suite 330,
+ * Boston, MA 02111-1307 USA
+ */
+import java.util.*;
+import java.util.concurrent.*;
+import javax.swing.*;
+
+import org.egomez.irpgeditor.event.*;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * hands the events of a parser to its listeners. the listeners are kept in an
+ * array that is copied when one is added or removed, so firing does not copy
+ * anything.
+ *
+ * the events are cleaned up before a listener gets them, a line that changed
+ * more than once is only sent once and a line that was added is not sent as
+ * changed too. a listener gets them in one of three ways:
+ *
+ * NOW, right away on the thread that changed the source.
+ * LATER, on the event thread after the current event. all the events up to
+ * then are sent in one list, so a line added and removed in between is not
+ * sent at all.
+ * WORKER, like LATER but on a worker thread. the lines can change while the
+ * listener runs, so it should only look at a snapshot of the source.
+ *
+ * the parser is not safe to use from more than one thread, a LATER listener
+ * reads it on the event thread. so a parser with LATER or WORKER listeners
+ * must only be changed on the event thread, that includes loading it.
+ *
+ * @author Derek Van Kooten.
+ */
+public class SourceParserDispatcher {
+
+    public static final int NOW = 0;
+    public static final int LATER = 1;
+    public static final int WORKER = 2;
+
+    // sends the events of the WORKER listeners, one list at a time.
+    static final ExecutorService worker = Executors.newSingleThreadExecutor(new ThreadFactory() {
+        @Override
+        public Thread newThread(Runnable runnable) {
+            Thread thread;
+
+            thread = new Thread(runnable, "parser events");
+            thread.setDaemon(true);
+            thread.setPriority(Thread.MIN_PRIORITY);
+            return thread;
+        }
+    });
+
+    volatile Delivery[] deliveries = new Delivery[0];
+    Logger logger = LoggerFactory.getLogger(SourceParserDispatcher.class);
+
+    public synchronized void add(ListenerParser listener, int mode) {
+        Delivery[] temp;
+
+        temp = Arrays.copyOf(deliveries, deliveries.length + 1);
+        temp[deliveries.length] = new Delivery(listener, mode);
+        deliveries = temp;
+    }
+
+    public synchronized void remove(ListenerParser listener) {
+        Delivery[] temp;
+
+        for (int x = 0; x < deliveries.length; x++) {
+            if (deliveries[x].listener == listener) {
+                deliveries[x].removed = true;
+                temp = new Delivery[deliveries.length - 1];
+                System.arraycopy(deliveries, 0, temp, 0, x);
+                System.arraycopy(deliveries, x + 1, temp, x, temp.length - x);
+                deliveries = temp;
+                return;
+            }
+        }
+    }
+
+    /**
+     * sends a list of events to the listeners.
+     *
+     * @param listEvents ArrayList
+     */
+    @SuppressWarnings("rawtypes")
+    public void fire(ArrayList listEvents) {
+        Delivery[] temp;
+        ArrayList listNow;
+        Events events;
+
+        if (listEvents.isEmpty()) {
+            return;
+        }
+        temp = deliveries;
+        listNow = null;
+        for (Delivery delivery : temp) {
+            if (delivery.mode == NOW) {
+                if (listNow == null) {
+                    events = new Events();
+                    events.addAll(listEvents);
+                    listNow = events.take();
+                }
+                delivery.listener.parserEvents(listNow);
+            } else {
+                delivery.queue(listEvents);
+            }
+        }
+    }
+
+    /**
+     * the events for a listener that have not been sent yet.
+     */
+    static class Events {
+
+        @SuppressWarnings("rawtypes")
+        ArrayList listEvents = new ArrayList();
+        // where the event of a line that was added or changed is in the list.
+        @SuppressWarnings("rawtypes")
+        IdentityHashMap mapLines = new IdentityHashMap();
+
+        @SuppressWarnings("rawtypes")
+        void addAll(ArrayList list) {
+            for (int x = 0; x < list.size(); x++) {
+                add((SourceParserEvent) list.get(x));
+            }
+        }
+
+        @SuppressWarnings("unchecked")
+        void add(SourceParserEvent event) {
+            Integer index;
+            SourceParserEvent eventBefore;
+
+            if (event.type == SourceParserEvent.ADDED) {
+                mapLines.put(event.line, listEvents.size());
+            } else if (event.type == SourceParserEvent.CHANGED) {
+                if (mapLines.containsKey(event.line)) {
+                    return;
+                }
+                mapLines.put(event.line, listEvents.size());
+            } else if (event.type == SourceParserEvent.REMOVED) {
+                index = (Integer) mapLines.remove(event.line);
+                if (index != null) {
+                    eventBefore = (SourceParserEvent) listEvents.set(index, null);
+                    // the listener never heard of the line.
+                    if (eventBefore.type == SourceParserEvent.ADDED) {
+                        return;
+                    }
+                }
+            }
+            listEvents.add(event);
+        }
+
+        /**
+         * returns the events and starts a new list.
+         */
+        @SuppressWarnings({"rawtypes", "unchecked"})
+        ArrayList take() {
+            ArrayList list;
+
+            list = new ArrayList(listEvents.size());
+            for (int x = 0; x < listEvents.size(); x++) {
+                if (listEvents.get(x) != null) {
+                    list.add(listEvents.get(x));
+                }
+            }
+            listEvents.clear();
+            mapLines.clear();
+            return list;
+        }
+    }
+
+    /**
+     * a listener and the events waiting for it.
+     */
+    class Delivery implements Runnable {
+
+        ListenerParser listener;
+        int mode;
+        Events events = new Events();
+        boolean scheduled = false;
+        volatile boolean removed = false;
+
+        Delivery(ListenerParser listener, int mode) {
+            this.listener = listener;
+            this.mode = mode;
+        }
+
+        @SuppressWarnings("rawtypes")
+        synchronized void queue(ArrayList listEvents) {
+            events.addAll(listEvents);
+            if (scheduled) {
+                return;
+            }
+            scheduled = true;
+            if (mode == LATER) {
+                SwingUtilities.invokeLater(this);
+            } else {
+                worker.execute(this);
+            }
+        }
+
+        @SuppressWarnings("rawtypes")
+        @Override
+        public void run() {
+            ArrayList listEvents;
+
+            synchronized (this) {
+                listEvents = events.take();
+                scheduled = false;
+            }
+            if (removed || listEvents.isEmpty()) {
+                return;
+            }
+            try {
+                listener.parserEvents(listEvents);
+            } catch (Exception e) {
+                logger.error(e.getMessage());
+            }
+        }
+    }
+}
@@ -43,13 +43,25 @@ public class SourceParserEvent {
      * a line was changed in the editor.
      */
     public static int CHANGED = 2;
+    /**
+     * a block of lines was loaded from the as400. the lines go from getLine()
+     * to getLastLine().
+     */
+    public static int LOADED = 3;
 
     int type;
-    SourceLine line;
+    SourceLine line, lineLast;
 
     public SourceParserEvent(int type, SourceLine line) {
         this.type = type;
         this.line = line;
+        this.lineLast = line;
+    }
+
+    public SourceParserEvent(int type, SourceLine line, SourceLine lineLast) {
+        this.type = type;
+        this.line = line;
+        this.lineLast = lineLast;
     }
 
     public int getType() {
@@ -59,4 +71,14 @@ public class SourceParserEvent {
     public SourceLine getLine() {
         return line;
     }
+
+    /**
+     * returns the last line of a LOADED event, for the other events this is
+     * the same as getLine().
+     *
+     * @return SourceLine
+     */
+    public SourceLine getLastLine() {
+        return lineLast;
+    }
 }
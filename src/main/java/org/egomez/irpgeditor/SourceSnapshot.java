@@ -0,0 +1,234 @@
+package org.egomez.irpgeditor;
+
+/*
+ * Copyright:    Copyright (c) 2004
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2, or (at your option)
+ * any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this software; see the file COPYING.  If not, write to
+ * the Free Software Foundation, Inc., 59 Temple Place, Suite 330,
+ * Boston, MA 02111-1307 USA
+ */
+
+/**
+ * the source of a parser as it was at one version. nothing in a snapshot
+ * changes after it is taken, so it can be read from a background thread
+ * while the source is being edited. the snapshot is taken on the event thread
+ * and handed to the thread that reads it, see SourceParser.getSnapshot().
+ *
+ * the lines are addressed by their zero based row. getLine(row) returns the
+ * line object, it can be used to find the line in the editor later, but its
+ * text and position are the current ones and not the ones of the snapshot.
+ *
+ * @author Derek Van Kooten.
+ */
+public class SourceSnapshot {
+
+    final SourceParser parser;
+    final long version;
+    final CharSequence text;
+    final SourceLine[] lines;
+    // the start of every line, plus the length of the text at the end.
+    final int[] starts;
+    // the hash of every line the parser kept when the snapshot was taken, 0
+    // if it had none.
+    final int[] hashes;
+
+    SourceSnapshot(SourceParser parser, long version, CharSequence text, SourceLine[] lines, int[] starts, int[] hashes) {
+        this.parser = parser;
+        this.version = version;
+        this.text = text;
+        this.lines = lines;
+        this.starts = starts;
+        this.hashes = hashes;
+    }
+
+    public long getVersion() {
+        return version;
+    }
+
+    /**
+     * returns true if the source has not changed since the snapshot was
+     * taken. results worked out from an old snapshot should be thrown away.
+     *
+     * @return boolean
+     */
+    public boolean isCurrent() {
+        return parser.getVersion() == version;
+    }
+
+    public CharSequence getText() {
+        return text;
+    }
+
+    public String getText(int start, int end) {
+        return text.subSequence(start, end).toString();
+    }
+
+    public int getLineCount() {
+        return lines.length;
+    }
+
+    public SourceLine getLine(int row) {
+        return lines[row];
+    }
+
+    public int getStart(int row) {
+        return starts[row];
+    }
+
+    public int getLength(int row) {
+        return starts[row + 1] - starts[row];
+    }
+
+    /**
+     * returns a hash of the text of the line that ignores case, lines that
+     * are the same by isSame() have the same hash. the hash is never 0. the
+     * hashes the parser kept are used, the others are worked out each time
+     * they are asked for, nothing in the snapshot is changed. a reader that
+     * wants them kept hands them to SourceParser.keepHashes().
+     *
+     * @param row int
+     * @return int
+     */
+    public int getHash(int row) {
+        if (hashes[row] != 0) {
+            return hashes[row];
+        }
+        return hash(text, starts[row], starts[row + 1]);
+    }
+
+    /**
+     * returns the hash of the text from start to end that getHash() uses for
+     * a line, so lines that are not in a parser can be compared too.
+     *
+     * @param text CharSequence
+     * @param start int
+     * @param end int
+     * @return int
+     */
+    public static int hash(CharSequence text, int start, int end) {
+        int hash;
+
+        hash = 0;
+        for (int x = start; x < end; x++) {
+            hash = 31 * hash + Character.toLowerCase(Character.toUpperCase(text.charAt(x)));
+        }
+        hash ^= end - start;
+        // spread the bits.
+        hash ^= hash >>> 16;
+        hash *= 0x85ebca6b;
+        hash ^= hash >>> 13;
+        hash *= 0xc2b2ae35;
+        hash ^= hash >>> 16;
+        if (hash == 0) {
+            hash = 1;
+        }
+        return hash;
+    }
+
+    /**
+     * returns the text of the line, with the new line character.
+     *
+     * @param row int
+     * @return String
+     */
+    public String getLineText(int row) {
+        return getText(starts[row], starts[row + 1]);
+    }
+
+    public char charAt(int row, int index) {
+        return text.charAt(starts[row] + index);
+    }
+
+    public char getSpec(int row) {
+        if (getLength(row) < 5) {
+            return ' ';
+        }
+        return text.charAt(starts[row] + 5);
+    }
+
+    public boolean isComment(int row) {
+        return column6(row) == '*';
+    }
+
+    public boolean isDirective(int row) {
+        return column6(row) == '/';
+    }
+
+    public boolean isSql(int row) {
+        return column6(row) == '+';
+    }
+
+    private char column6(int row) {
+        if (starts[row] + 6 >= text.length()) {
+            return ' ';
+        }
+        return text.charAt(starts[row] + 6);
+    }
+
+    /**
+     * gets the trimmed part of the line that the position represents.
+     *
+     * @param row int
+     * @param linePosition LinePosition
+     * @return String
+     */
+    public String get(int row, LinePosition linePosition) {
+        int s, e, length;
+
+        s = linePosition.start - 1;
+        e = linePosition.end;
+        length = getLength(row);
+        if (s > length) {
+            return "";
+        }
+        if (e > length) {
+            e = length;
+        }
+        return getText(starts[row] + s, starts[row] + e).trim();
+    }
+
+    /**
+     * returns true if the two lines have the same text, ignoring case.
+     *
+     * @param rowA int
+     * @param rowB int
+     * @return boolean
+     */
+    public boolean isSame(int rowA, int rowB) {
+        return isSame(text, starts[rowA], starts[rowA + 1], text, starts[rowB], starts[rowB + 1]);
+    }
+
+    /**
+     * returns true if the two pieces of text are the same, ignoring case, the
+     * way isSame() compares lines.
+     */
+    public static boolean isSame(CharSequence textA, int startA, int endA, CharSequence textB, int startB, int endB) {
+        int length;
+        char ca, cb;
+
+        length = endA - startA;
+        if (length != endB - startB) {
+            return false;
+        }
+        for (int x = 0; x < length; x++) {
+            ca = textA.charAt(startA + x);
+            cb = textB.charAt(startB + x);
+            if (ca != cb && Character.toUpperCase(ca) != Character.toUpperCase(cb)
+                    && Character.toLowerCase(ca) != Character.toLowerCase(cb)) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
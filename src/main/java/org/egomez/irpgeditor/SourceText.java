@@ -0,0 +1,576 @@
+package org.egomez.irpgeditor;
+
+/*
+ * Copyright:    Copyright (c) 2004
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2, or (at your option)
+ * any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this software; see the file COPYING.  If not, write to
+ * the Free Software Foundation, Inc., 59 Temple Place, Suite 330,
+ * Boston, MA 02111-1307 USA
+ */
+
+/**
+ * the text of a source member, kept as a piece table.
+ *
+ * every character ever added is appended to one buffer and never moved or
+ * overwritten. the text is the list of pieces of that buffer, kept in a
+ * balanced tree ordered by position, so inserting or removing text only
+ * splits a piece or two and takes O(log n), instead of moving the rest of
+ * the member like a StringBuffer does.
+ *
+ * subSequence returns a view of the text, no characters are copied. the view
+ * shows the text as it is when it is read, so it should not be kept past the
+ * next change.
+ *
+ * @author Derek Van Kooten.
+ */
+public class SourceText implements CharSequence {
+
+    char[] buffer = new char[4096];
+    int used = 0;
+    Piece root;
+    private int seed = 0x6C8E9CF5;
+    // results of split().
+    private Piece splitLeft, splitRight;
+    // the piece that was last inserted, so typing can grow it.
+    private Piece lastPiece;
+    private int lastEnd = -1;
+    // the piece that was last read by charAt.
+    private int cursorStart, cursorLength, cursorOffset;
+
+    public SourceText() {
+    }
+
+    @Override
+    public int length() {
+        return total(root);
+    }
+
+    @Override
+    public char charAt(int index) {
+        Piece node;
+        int position, left;
+
+        if (index < cursorStart || index >= cursorStart + cursorLength) {
+            if (index < 0) {
+                throw new StringIndexOutOfBoundsException(index);
+            }
+            position = index;
+            node = root;
+            while (node != null) {
+                left = total(node.left);
+                if (position < left) {
+                    node = node.left;
+                } else {
+                    position -= left;
+                    if (position < node.length) {
+                        break;
+                    }
+                    position -= node.length;
+                    node = node.right;
+                }
+            }
+            if (node == null) {
+                throw new StringIndexOutOfBoundsException(index);
+            }
+            cursorStart = index - position;
+            cursorLength = node.length;
+            cursorOffset = node.offset;
+        }
+        return buffer[cursorOffset + (index - cursorStart)];
+    }
+
+    @Override
+    public CharSequence subSequence(int start, int end) {
+        check(start, end);
+        return new Slice(this, start, end);
+    }
+
+    /**
+     * returns a copy of part of the text.
+     *
+     * @param start int
+     * @param end int
+     * @return String
+     */
+    public String substring(int start, int end) {
+        char[] chars;
+
+        check(start, end);
+        if (start == end) {
+            return "";
+        }
+        chars = new char[end - start];
+        copy(root, 0, start, end, chars, 0);
+        return new String(chars);
+    }
+
+    /**
+     * copies the characters from start to end into dst.
+     *
+     * @param start int
+     * @param end int
+     * @param dst char[]
+     * @param dstBegin int
+     */
+    public void getChars(int start, int end, char[] dst, int dstBegin) {
+        check(start, end);
+        copy(root, 0, start, end, dst, dstBegin);
+    }
+
+    @Override
+    public String toString() {
+        return substring(0, length());
+    }
+
+    /**
+     * returns a copy of the text that does not change when the text changes.
+     * only the list of pieces is copied, the characters are shared with this
+     * text because they are never moved or overwritten, so the copy is cheap
+     * and can be read by any thread.
+     *
+     * @return CharSequence
+     */
+    public CharSequence freeze() {
+        Frozen frozen;
+        int count;
+
+        count = count(root);
+        frozen = new Frozen(buffer, new int[count + 1], new int[count]);
+        fill(root, frozen, 0);
+        frozen.starts[count] = length();
+        return frozen;
+    }
+
+    private int fill(Piece node, Frozen frozen, int index) {
+        if (node == null) {
+            return index;
+        }
+        index = fill(node.left, frozen, index);
+        frozen.offsets[index] = node.offset;
+        frozen.starts[index + 1] = frozen.starts[index] + node.length;
+        return fill(node.right, frozen, index + 1);
+    }
+
+    private static int count(Piece node) {
+        if (node == null) {
+            return 0;
+        }
+        return 1 + count(node.left) + count(node.right);
+    }
+
+    public void append(char c) {
+        int offset;
+
+        offset = store(c);
+        add(length(), offset, 1);
+    }
+
+    public void append(CharSequence text, int start, int end) {
+        int offset;
+
+        if (start == end) {
+            return;
+        }
+        offset = store(text, start, end);
+        add(length(), offset, end - start);
+    }
+
+    public void insert(int position, CharSequence text) {
+        int offset;
+
+        if (position < 0 || position > length()) {
+            throw new StringIndexOutOfBoundsException(position);
+        }
+        if (text.length() == 0) {
+            return;
+        }
+        offset = store(text, 0, text.length());
+        add(position, offset, text.length());
+    }
+
+    public void delete(int start, int end) {
+        Piece left;
+
+        check(start, end);
+        if (start == end) {
+            return;
+        }
+        split(root, start);
+        left = splitLeft;
+        split(splitRight, end - start);
+        root = merge(left, splitRight);
+        splitLeft = null;
+        splitRight = null;
+        lastPiece = null;
+        lastEnd = -1;
+        cursorLength = 0;
+    }
+
+    /**
+     * puts the characters added at offset in the buffer at the position in
+     * the text.
+     */
+    private void add(int position, int offset, int length) {
+        Piece piece, left;
+
+        cursorLength = 0;
+        // text typed right after the text that was added last is stored
+        // right after it in the buffer as well, so the piece can just grow.
+        if (position == lastEnd && lastPiece.offset + lastPiece.length == offset
+                && find(position - 1) == lastPiece) {
+            grow(position - 1, length);
+            lastEnd += length;
+            return;
+        }
+        piece = new Piece(offset, length, nextPriority());
+        split(root, position);
+        left = splitLeft;
+        root = merge(merge(left, piece), splitRight);
+        splitLeft = null;
+        splitRight = null;
+        lastPiece = piece;
+        lastEnd = position + length;
+    }
+
+    private int store(char c) {
+        ensureCapacity(used + 1);
+        buffer[used] = c;
+        return used++;
+    }
+
+    private int store(CharSequence text, int start, int end) {
+        int offset;
+
+        ensureCapacity(used + (end - start));
+        offset = used;
+        if (text instanceof String) {
+            ((String) text).getChars(start, end, buffer, used);
+            used += end - start;
+        } else {
+            for (int x = start; x < end; x++) {
+                buffer[used++] = text.charAt(x);
+            }
+        }
+        return offset;
+    }
+
+    private void ensureCapacity(int capacity) {
+        char[] temp;
+        int size;
+
+        if (capacity <= buffer.length) {
+            return;
+        }
+        size = buffer.length * 2;
+        if (size < capacity) {
+            size = capacity;
+        }
+        // a new array is used, the old one is left as it is in case anything
+        // is still reading it.
+        temp = new char[size];
+        System.arraycopy(buffer, 0, temp, 0, used);
+        buffer = temp;
+    }
+
+    /**
+     * returns the piece that holds the character at the position.
+     */
+    private Piece find(int position) {
+        Piece node;
+        int left;
+
+        node = root;
+        while (node != null) {
+            left = total(node.left);
+            if (position < left) {
+                node = node.left;
+            } else {
+                position -= left;
+                if (position < node.length) {
+                    return node;
+                }
+                position -= node.length;
+                node = node.right;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * makes the piece that holds the character at the position longer.
+     */
+    private void grow(int position, int length) {
+        Piece node;
+        int left;
+
+        node = root;
+        while (node != null) {
+            node.total += length;
+            left = total(node.left);
+            if (position < left) {
+                node = node.left;
+            } else {
+                position -= left;
+                if (position < node.length) {
+                    node.length += length;
+                    return;
+                }
+                position -= node.length;
+                node = node.right;
+            }
+        }
+    }
+
+    private void copy(Piece node, int base, int start, int end, char[] dst, int dstBegin) {
+        int pieceStart, pieceEnd, s, e;
+
+        if (node == null || start >= end) {
+            return;
+        }
+        pieceStart = base + total(node.left);
+        pieceEnd = pieceStart + node.length;
+        if (start < pieceStart) {
+            copy(node.left, base, start, Math.min(end, pieceStart), dst, dstBegin);
+        }
+        s = Math.max(start, pieceStart);
+        e = Math.min(end, pieceEnd);
+        if (s < e) {
+            System.arraycopy(buffer, node.offset + (s - pieceStart), dst, dstBegin + (s - start), e - s);
+        }
+        if (end > pieceEnd) {
+            s = Math.max(start, pieceEnd);
+            copy(node.right, pieceEnd, s, end, dst, dstBegin + (s - start));
+        }
+    }
+
+    /**
+     * splits the tree into the text before the position, splitLeft, and the
+     * text after it, splitRight. a piece that spans the position is cut in
+     * two.
+     */
+    private void split(Piece node, int position) {
+        Piece rest, right;
+        int left;
+
+        if (node == null) {
+            splitLeft = null;
+            splitRight = null;
+            return;
+        }
+        left = total(node.left);
+        if (position <= left) {
+            split(node.left, position);
+            node.left = splitRight;
+            update(node);
+            splitRight = node;
+        } else if (position >= left + node.length) {
+            split(node.right, position - left - node.length);
+            node.right = splitLeft;
+            update(node);
+            splitLeft = node;
+        } else {
+            position -= left;
+            // the rest of the piece becomes a piece of its own on the right.
+            rest = new Piece(node.offset + position, node.length - position, nextPriority());
+            right = node.right;
+            node.length = position;
+            node.right = null;
+            update(node);
+            splitLeft = node;
+            splitRight = merge(rest, right);
+        }
+    }
+
+    private Piece merge(Piece a, Piece b) {
+        if (a == null) {
+            return b;
+        }
+        if (b == null) {
+            return a;
+        }
+        if (a.priority > b.priority) {
+            a.right = merge(a.right, b);
+            update(a);
+            return a;
+        }
+        b.left = merge(a, b.left);
+        update(b);
+        return b;
+    }
+
+    private void check(int start, int end) {
+        if (start < 0 || end > length() || start > end) {
+            throw new StringIndexOutOfBoundsException("start " + start + ", end " + end + ", length " + length());
+        }
+    }
+
+    private int nextPriority() {
+        seed ^= seed << 13;
+        seed ^= seed >>> 17;
+        seed ^= seed << 5;
+        return seed;
+    }
+
+    private static void update(Piece node) {
+        node.total = node.length + total(node.left) + total(node.right);
+    }
+
+    private static int total(Piece node) {
+        if (node == null) {
+            return 0;
+        }
+        return node.total;
+    }
+
+    /**
+     * part of the buffer.
+     */
+    static class Piece {
+
+        int offset, length, total;
+        int priority;
+        Piece left, right;
+
+        Piece(int offset, int length, int priority) {
+            this.offset = offset;
+            this.length = length;
+            this.total = length;
+            this.priority = priority;
+        }
+    }
+
+    /**
+     * the text as it was when freeze() was called. starts holds the position
+     * of every piece plus the length of the text at the end.
+     */
+    static class Frozen implements CharSequence {
+
+        final char[] buffer;
+        final int[] starts, offsets;
+
+        Frozen(char[] buffer, int[] starts, int[] offsets) {
+            this.buffer = buffer;
+            this.starts = starts;
+            this.offsets = offsets;
+        }
+
+        @Override
+        public int length() {
+            return starts[starts.length - 1];
+        }
+
+        @Override
+        public char charAt(int index) {
+            int piece;
+
+            if (index < 0 || index >= length()) {
+                throw new StringIndexOutOfBoundsException(index);
+            }
+            piece = find(index);
+            return buffer[offsets[piece] + (index - starts[piece])];
+        }
+
+        @Override
+        public CharSequence subSequence(int start, int end) {
+            return toString(start, end);
+        }
+
+        public String toString(int start, int end) {
+            char[] chars;
+            int piece, s, e;
+
+            if (start < 0 || end > length() || start > end) {
+                throw new StringIndexOutOfBoundsException("start " + start + ", end " + end + ", length " + length());
+            }
+            if (start == end) {
+                return "";
+            }
+            chars = new char[end - start];
+            piece = find(start);
+            s = start;
+            while (s < end) {
+                e = Math.min(end, starts[piece + 1]);
+                System.arraycopy(buffer, offsets[piece] + (s - starts[piece]), chars, s - start, e - s);
+                s = e;
+                piece++;
+            }
+            return new String(chars);
+        }
+
+        @Override
+        public String toString() {
+            return toString(0, length());
+        }
+
+        /**
+         * returns the piece that holds the character at the position.
+         */
+        private int find(int index) {
+            int low, high, middle;
+
+            low = 0;
+            high = offsets.length - 1;
+            while (low < high) {
+                middle = (low + high + 1) >>> 1;
+                if (starts[middle] <= index) {
+                    low = middle;
+                } else {
+                    high = middle - 1;
+                }
+            }
+            return low;
+        }
+    }
+
+    /**
+     * a view of part of the text.
+     */
+    static class Slice implements CharSequence {
+
+        SourceText text;
+        int start, end;
+
+        Slice(SourceText text, int start, int end) {
+            this.text = text;
+            this.start = start;
+            this.end = end;
+        }
+
+        @Override
+        public int length() {
+            return end - start;
+        }
+
+        @Override
+        public char charAt(int index) {
+            if (index < 0 || index >= end - start) {
+                throw new StringIndexOutOfBoundsException(index);
+            }
+            return text.charAt(start + index);
+        }
+
+        @Override
+        public CharSequence subSequence(int s, int e) {
+            if (s < 0 || e > end - start || s > e) {
+                throw new StringIndexOutOfBoundsException("start " + s + ", end " + e + ", length " + (end - start));
+            }
+            return new Slice(text, start + s, start + e);
+        }
+
+        @Override
+        public String toString() {
+            return text.substring(start, end);
+        }
+    }
+}
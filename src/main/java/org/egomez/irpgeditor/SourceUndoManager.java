@@ -0,0 +1,338 @@
+package org.egomez.irpgeditor;
+
+/*
+ * Copyright:    Copyright (c) 2004
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2, or (at your option)
+ * any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this software; see the file COPYING.  If not, write to
+ * the Free Software Foundation, Inc., 59 Temple Place, Suite 330,
+ * Boston, MA 02111-1307 USA
+ */
+import java.awt.*;
+import javax.swing.event.*;
+import javax.swing.text.*;
+import javax.swing.undo.*;
+
+/**
+ * the undo history of a source member. typing is put together into one edit
+ * per word, a new line or a change of direction starts another one. all the
+ * edits made while one event is handled, like a paste that replaces the
+ * selection, are one edit too. a caller can also put a run of edits together
+ * with beginCompound() and endCompound().
+ *
+ * the history is kept under a number of bytes, the oldest edits are dropped
+ * to stay under it. the size is worked out from the text of the edits.
+ *
+ * @author Derek Van Kooten.
+ */
+@SuppressWarnings("serial")
+public class SourceUndoManager extends UndoManager {
+
+    public static final long BUDGET = 8 * 1024 * 1024;
+    // what an edit costs apart from its text.
+    static final int OVERHEAD = 128;
+
+    long budget;
+    long size = 0;
+    // the edit that is being added to, or null.
+    Group group;
+    int depth = 0;
+
+    public SourceUndoManager() {
+        this(BUDGET);
+    }
+
+    public SourceUndoManager(long budget) {
+        this.budget = budget;
+        setLimit(Integer.MAX_VALUE / 2);
+    }
+
+    /**
+     * returns about how many bytes the history takes.
+     *
+     * @return long
+     */
+    public synchronized long getSize() {
+        return size;
+    }
+
+    public synchronized long getBudget() {
+        return budget;
+    }
+
+    public synchronized void setBudget(long budget) {
+        this.budget = budget;
+        trimForBudget();
+    }
+
+    /**
+     * starts an edit that all the edits up to endCompound() go into, so they
+     * are undone in one go. the calls can be nested.
+     *
+     * @param name String shown in the undo menu.
+     */
+    public synchronized void beginCompound(String name) {
+        if (depth == 0) {
+            closeGroup();
+            group = new Group(name, null);
+            super.addEdit(group);
+        }
+        depth++;
+    }
+
+    public synchronized void endCompound() {
+        if (depth == 0) {
+            return;
+        }
+        depth--;
+        if (depth == 0) {
+            closeGroup();
+            trimForBudget();
+        }
+    }
+
+    @Override
+    public synchronized boolean addEdit(UndoableEdit edit) {
+        int bytes;
+
+        bytes = sizeOf(edit);
+        if (group == null || (depth == 0 && group.takes(edit) == false)) {
+            closeGroup();
+            group = new Group(null, EventQueue.getCurrentEvent());
+            if (super.addEdit(group) == false) {
+                group = null;
+                return false;
+            }
+        }
+        group.addEdit(edit);
+        group.last(edit);
+        group.bytes += bytes;
+        size += bytes;
+        if (depth == 0) {
+            trimForBudget();
+        }
+        return true;
+    }
+
+    @Override
+    public synchronized void undo() throws CannotUndoException {
+        closeGroup();
+        super.undo();
+    }
+
+    @Override
+    public synchronized void redo() throws CannotRedoException {
+        closeGroup();
+        super.redo();
+    }
+
+    @Override
+    public synchronized void undoOrRedo() throws CannotRedoException, CannotUndoException {
+        closeGroup();
+        super.undoOrRedo();
+    }
+
+    @Override
+    public synchronized void discardAllEdits() {
+        closeGroup();
+        depth = 0;
+        super.discardAllEdits();
+        size = 0;
+    }
+
+    @Override
+    protected void trimEdits(int from, int to) {
+        for (int x = from; x <= to && x < edits.size(); x++) {
+            if (edits.get(x) instanceof Group) {
+                size -= ((Group) edits.get(x)).bytes;
+            }
+        }
+        super.trimEdits(from, to);
+    }
+
+    protected void closeGroup() {
+        if (group != null && depth == 0) {
+            group.end();
+            group = null;
+        }
+    }
+
+    /**
+     * drops the oldest edits until the history fits, the newest edit is
+     * always kept.
+     */
+    protected void trimForBudget() {
+        int count;
+        long bytes;
+
+        count = 0;
+        bytes = size;
+        while (bytes > budget && count < edits.size() - 1) {
+            if (edits.get(count) instanceof Group) {
+                bytes -= ((Group) edits.get(count)).bytes;
+            }
+            count++;
+        }
+        if (count > 0) {
+            trimEdits(0, count - 1);
+        }
+    }
+
+    /**
+     * about how many bytes an edit keeps alive, the text it added or removed
+     * and the edit itself.
+     */
+    protected int sizeOf(UndoableEdit edit) {
+        if (edit instanceof DocumentEvent) {
+            return (((DocumentEvent) edit).getLength() * 2) + OVERHEAD;
+        }
+        return OVERHEAD;
+    }
+
+    /**
+     * the edits that are undone together.
+     */
+    class Group extends CompoundEdit {
+
+        String name;
+        // the event the edits were made in.
+        AWTEvent event;
+        DocumentEvent.EventType type;
+        // the text the group covers, for typing.
+        int start, end;
+        boolean typing = true;
+        boolean space = false;
+        int bytes = 0;
+
+        Group(String name, AWTEvent event) {
+            this.name = name;
+            this.event = event;
+        }
+
+        /**
+         * returns true if the edit can be added to the group, it was made
+         * in the same event or it carries on the typing.
+         */
+        boolean takes(UndoableEdit edit) {
+            DocumentEvent documentEvent;
+            char c;
+
+            if (event != null && event == EventQueue.getCurrentEvent()) {
+                return true;
+            }
+            if (typing == false || edit instanceof DocumentEvent == false) {
+                return false;
+            }
+            documentEvent = (DocumentEvent) edit;
+            if (documentEvent.getType() != type || documentEvent.getLength() != 1) {
+                return false;
+            }
+            if (type == DocumentEvent.EventType.INSERT) {
+                if (documentEvent.getOffset() != end) {
+                    return false;
+                }
+                c = charAt(documentEvent);
+                // a new line, or a word after a space, starts again.
+                return c != '\n' && (space == false || Character.isWhitespace(c));
+            }
+            if (type == DocumentEvent.EventType.REMOVE) {
+                // backspace or delete next to the text removed so far.
+                return documentEvent.getOffset() + 1 == start || documentEvent.getOffset() == start;
+            }
+            return false;
+        }
+
+        /**
+         * remembers where the edit was, so typing can carry on from it.
+         */
+        void last(UndoableEdit edit) {
+            DocumentEvent documentEvent;
+
+            if (edit instanceof DocumentEvent == false) {
+                typing = false;
+                return;
+            }
+            documentEvent = (DocumentEvent) edit;
+            if (edits.size() == 1) {
+                type = documentEvent.getType();
+                start = documentEvent.getOffset();
+                end = start;
+                typing = documentEvent.getLength() == 1;
+            } else if (type != documentEvent.getType()) {
+                typing = false;
+            }
+            if (type == DocumentEvent.EventType.INSERT) {
+                end = documentEvent.getOffset() + documentEvent.getLength();
+                space = Character.isWhitespace(charAt(documentEvent));
+            } else if (type == DocumentEvent.EventType.REMOVE) {
+                start = documentEvent.getOffset();
+            }
+        }
+
+        char charAt(DocumentEvent documentEvent) {
+            try {
+                return documentEvent.getDocument().getText(documentEvent.getOffset(), 1).charAt(0);
+            } catch (BadLocationException e) {
+                return '\n';
+            }
+        }
+
+        /**
+         * the group can be undone while it is still taking edits.
+         */
+        @Override
+        public boolean canUndo() {
+            if (isInProgress()) {
+                return edits.isEmpty() == false;
+            }
+            return super.canUndo();
+        }
+
+        @Override
+        public void undo() throws CannotUndoException {
+            if (isInProgress()) {
+                end();
+            }
+            super.undo();
+        }
+
+        @Override
+        public String getPresentationName() {
+            if (name != null) {
+                return name;
+            }
+            return super.getPresentationName();
+        }
+
+        @Override
+        public String getUndoPresentationName() {
+            if (name != null) {
+                return "Undo " + name;
+            }
+            return super.getUndoPresentationName();
+        }
+
+        @Override
+        public String getRedoPresentationName() {
+            if (name != null) {
+                return "Redo " + name;
+            }
+            return super.getRedoPresentationName();
+        }
+
+        @Override
+        public boolean isSignificant() {
+            return edits.isEmpty() == false;
+        }
+    }
+}
@@ -33,4 +33,13 @@ public interface SourceLoader {
    * @param line String The actual source code of the line.
    */
   public void lineLoaded(float number, int date, String line);
+
+  /**
+   * Gets called for a block of lines that are loaded from the source member.
+   * 
+   * @param numbers float[] The numbers of the lines in the source member.
+   * @param dates int[] The last changed dates of the lines in the source member.
+   * @param lines CharSequence The source code of the lines, each line ends with a '\n'.
+   */
+  public void linesLoaded(float[] numbers, int[] dates, CharSequence lines);
 }
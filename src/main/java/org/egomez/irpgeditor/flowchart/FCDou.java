@@ -76,7 +76,16 @@ public class FCDou extends FCShape {
     public void draw(Graphics graphics, int center, int y) {
         int bottom;
 
+        if (isBelow(graphics, y)) {
+            return;
+        }
         bottom = y + getHeight(graphics);
+        if (isAbove(graphics, y)) {
+            if (next != null) {
+                next.draw(graphics, center, bottom);
+            }
+            return;
+        }
 
         // draw connection line.
         graphics.setColor(COLOR_BORDER_LIGHT);
@@ -106,6 +106,15 @@ public void draw(Graphics graphics, int center, int y) {
     Shape clip;
     Area area;
     
+    if ( isBelow(graphics, y) ) {
+      return;
+    }
+    if ( isAbove(graphics, y) ) {
+      if ( next != null ) {
+        next.draw(graphics, center, y + getHeight(graphics));
+      }
+      return;
+    }
     fm = graphics.getFontMetrics();
     height = (fm.getHeight() * 4) + (2 * DEFAULT_TEXT_VERTICAL_SPACING);
     middle = y + (height / 2);
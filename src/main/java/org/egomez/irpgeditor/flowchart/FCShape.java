@@ -2,7 +2,6 @@ package org.egomez.irpgeditor.flowchart;
 
 import java.util.*;
 import java.awt.*;
-import java.awt.geom.*;
 
 import org.egomez.irpgeditor.*;
 
@@ -31,6 +30,8 @@ protected ArrayList listOps = new ArrayList();
   // of the series as well as the center needs to be none.
   protected int seriesWidth = 0;
   protected int seriesCenter = 0;
+  // the height of this shape and the ones after it, worked out once.
+  protected int totalHeight = 0;
   
   @SuppressWarnings("unchecked")
 public FCShape(FCOp op, FCShape previous, FCShape container) {
@@ -108,14 +109,40 @@ public FCShape appendOp(FCOp op) {
     FCShape shape;
     int h = 0;
     
+    if ( totalHeight != 0 ) {
+      return totalHeight;
+    }
     shape = this;
     while ( shape != null ) {
       h += shape.getHeight(graphics);
       shape = shape.next;
     }
+    totalHeight = h;
     return h;
   }
   
+  /**
+   * returns true if the shape starting at y is above the area being
+   * painted, so only the shapes after it need to be drawn.
+   */
+  protected boolean isAbove(Graphics graphics, int y) {
+    Rectangle bounds;
+    
+    bounds = graphics.getClipBounds();
+    return bounds != null && y + getHeight(graphics) < bounds.y;
+  }
+  
+  /**
+   * returns true if the shape starting at y is below the area being
+   * painted, then neither it or the shapes after it need to be drawn.
+   */
+  protected boolean isBelow(Graphics graphics, int y) {
+    Rectangle bounds;
+    
+    bounds = graphics.getClipBounds();
+    return bounds != null && y > bounds.y + bounds.height;
+  }
+  
   /**
    * if there is a series of shapes in a container, the container
    * may call this method on the first shape to determine which shape is
@@ -173,33 +200,45 @@ public FCShape appendOp(FCOp op) {
   }
   
   public void draw(Graphics graphics, int center, int y) {
-    int x, currenty;
+    int x, currenty, top, bottom;
     int height, width;
     FCOp op;
     FontMetrics fm;
     Shape clip;
-    Area area;
+    Rectangle bounds;
     
+    if ( isBelow(graphics, y) ) {
+      return;
+    }
+    if ( isAbove(graphics, y) ) {
+      if ( next != null ) {
+        next.draw(graphics, center, y + getHeight(graphics) + DEFAULT_VERTICAL_SPACING);
+      }
+      return;
+    }
     fm = graphics.getFontMetrics();
     x = center - (getWidth(graphics) / 2);
     height = getHeight(graphics);
     width = getWidth(graphics);
     
     clip = graphics.getClip();
-    area = new Area(clip);
-    area.intersect(new Area(new Rectangle(x, y, width, height)));
-    graphics.setClip(area);
+    graphics.clipRect(x, y, width, height);
     
     // background.
     graphics.setColor(COLOR_BACKGROUND);
     graphics.fillRect(x, y, width, height);
     
-    // draw text.
+    // draw text, only the lines that can be seen.
+    bounds = graphics.getClipBounds();
+    top = bounds == null ? Integer.MIN_VALUE : bounds.y;
+    bottom = bounds == null ? Integer.MAX_VALUE : bounds.y + bounds.height + fm.getHeight();
     currenty = y + fm.getAscent() + DEFAULT_TEXT_VERTICAL_SPACING;
     graphics.setColor(COLOR_TEXT);
-    for ( int j = 0; j < listOps.size(); j++ ) {
-      op = (FCOp)listOps.get(j);
-      graphics.drawString(op.getText(), x + DEFAULT_TEXT_HORIZONTAL_SPACING, currenty);
+    for ( int j = 0; j < listOps.size() && currenty - fm.getAscent() < bottom; j++ ) {
+      if ( currenty + fm.getDescent() >= top ) {
+        op = (FCOp)listOps.get(j);
+        graphics.drawString(op.getText(), x + DEFAULT_TEXT_HORIZONTAL_SPACING, currenty);
+      }
       currenty += fm.getHeight();
     }
     
@@ -252,6 +291,47 @@ public FCShape appendOp(FCOp op) {
     }
   }
   
+  /**
+   * builds the shapes from the lines of a block, the text of each line is
+   * read on its own instead of the text of the whole block.
+   * 
+   * @param lineStart SourceLine the first line.
+   * @param lineEnd SourceLine the last line.
+   * @return FCShape
+   */
+  public static FCShape process(SourceLine lineStart, SourceLine lineEnd) {
+    FCShape first, current;
+    SourceLine line;
+    String text, op;
+    int end;
+    
+    first = null;
+    current = null;
+    line = lineStart;
+    while ( line != null ) {
+      text = line.getText();
+      end = text.length();
+      if ( end > 0 && text.charAt(end - 1) == '\n' ) {
+        end--;
+      }
+      op = getOp(text, 0, end);
+      if ( op != null ) {
+        if ( first == null ) {
+          first = construct(new FCOp(op, text, 0, end), null, null);
+          current = first;
+        }
+        else {
+          current = current.appendOp(new FCOp(op, text, 0, end));
+        }
+      }
+      if ( line == lineEnd ) {
+        break;
+      }
+      line = line.getNext();
+    }
+    return first;
+  }
+  
   public static FCShape process(String text, int start, int end) {
     FCShape first, current;
     int lineStart, lineEnd;
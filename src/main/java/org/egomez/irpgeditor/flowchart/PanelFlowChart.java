@@ -1,17 +1,34 @@
 package org.egomez.irpgeditor.flowchart;
 
 import java.awt.*;
+import java.util.*;
 import javax.swing.*;
 
+import org.egomez.irpgeditor.*;
+import org.egomez.irpgeditor.event.*;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
 /**
+ * shows the flowchart of a block. the shapes are built again only when a line
+ * of the block changes, and only the shapes that can be seen are painted.
+ *
  * @author not attributable
  */
-public class PanelFlowChart extends JPanel {
+public class PanelFlowChart extends JPanel implements ListenerParser {
 	/**
 	 * 
 	 */
 	private static final long serialVersionUID = 3411118854467078588L;
 	FCShape shape;
+	// the size of the shapes, worked out once for each flowchart.
+	Dimension size;
+	SourceParser parser;
+	SourceBlock block;
+	// the lines the flowchart was built from.
+	@SuppressWarnings("rawtypes")
+	IdentityHashMap mapLines = new IdentityHashMap();
+	transient Logger logger = LoggerFactory.getLogger(PanelFlowChart.class);
 
 	public PanelFlowChart() {
 		super();
@@ -28,6 +45,7 @@ public class PanelFlowChart extends JPanel {
 
 	public void setFCShape(FCShape shape) {
 		this.shape = shape;
+		size = null;
 		repaint();
 		// this.invalidate();
 		// this.doLayout();
@@ -35,18 +53,109 @@ public class PanelFlowChart extends JPanel {
 		this.validate();
 	}
 
+	/**
+	 * shows the flowchart of a block and keeps it up to date with the
+	 * changes to the lines of the block.
+	 *
+	 * @param parser SourceParser
+	 * @param block SourceBlock
+	 */
+	public void setBlock(SourceParser parser, SourceBlock block) {
+		if (this.parser != parser) {
+			if (this.parser != null) {
+				this.parser.removeListener(this);
+			}
+			this.parser = parser;
+			parser.addListener(this, SourceParserDispatcher.LATER);
+		}
+		this.block = block;
+		build();
+	}
+
+	@SuppressWarnings("unchecked")
+	protected void build() {
+		SourceLine line, lineStart;
+
+		mapLines.clear();
+		lineStart = block.lineStart == null ? block.lineEnd : block.lineStart;
+		line = lineStart;
+		while (line != null) {
+			mapLines.put(line, line);
+			if (line == block.lineEnd) {
+				break;
+			}
+			line = line.getNext();
+		}
+		try {
+			setFCShape(FCShape.process(lineStart, block.lineEnd));
+		} catch (RuntimeException e) {
+			// the block is being edited, keep the flowchart from before.
+			logger.error(e.getMessage());
+		}
+	}
+
+	/**
+	 * builds the flowchart again if one of the lines changed is in the block.
+	 */
+	@SuppressWarnings("rawtypes")
+	@Override
+	public void parserEvents(ArrayList listEvents) {
+		SourceParserEvent event;
+		SourceLine line, lineStart;
+		int start;
+
+		if (block == null) {
+			return;
+		}
+		lineStart = block.lineStart == null ? block.lineEnd : block.lineStart;
+		if (lineStart == null || lineStart.isInvalid() || block.lineEnd.isInvalid()) {
+			// the block is gone, the last flowchart stays.
+			block = null;
+			return;
+		}
+		for (int x = 0; x < listEvents.size(); x++) {
+			event = (SourceParserEvent) listEvents.get(x);
+			line = event.getLine();
+			if (mapLines.containsKey(line)) {
+				build();
+				return;
+			}
+			if (event.getType() == SourceParserEvent.ADDED && line.isInvalid() == false) {
+				start = line.getStart();
+				if (start > lineStart.getStart() && start < block.lineEnd.getStart()) {
+					build();
+					return;
+				}
+			}
+		}
+	}
+
+	protected Dimension getShapeSize() {
+		Graphics graphics;
+
+		if (size == null) {
+			graphics = getGraphics();
+			if (graphics == null) {
+				return null;
+			}
+			size = new Dimension(shape.getSeriesWidth(graphics), shape.getTotalHeight(graphics));
+			graphics.dispose();
+		}
+		return size;
+	}
+
 	public int getWidth() {
-		if (shape == null) {
+		if (shape == null || getShapeSize() == null) {
 			return super.getWidth();
 		}
-		return shape.getSeriesWidth(getGraphics());
+		return getShapeSize().width;
 	}
 
 	public int getHeight() {
-		if (shape == null) {
+		if (shape == null || getShapeSize() == null) {
 			return super.getHeight();
 		}
-		return shape.getTotalHeight(getGraphics());
+		return getShapeSize().height;
 	}
 
 	public Dimension getPreferredSize() {
@@ -0,0 +1,207 @@
+package org.egomez.irpgeditor.refactor;
+
+/*
+ * Copyright:    Copyright (c) 2004
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2, or (at your option)
+ * any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this software; see the file COPYING.  If not, write to
+ * the Free Software Foundation, Inc., 59 Temple Place, Suite 330,
+ * Boston, MA 02111-1307 USA
+ */
+import java.io.*;
+import java.util.*;
+import java.util.concurrent.*;
+import javax.swing.text.*;
+
+import org.egomez.irpgeditor.*;
+import org.egomez.irpgeditor.event.*;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * converts whole members to free form without an editor. the members are
+ * loaded, converted and written on a pool of threads, each one in its own
+ * parser. the converted source is written to a directory, or back to the
+ * member when no directory is set. the members of one system are written
+ * back one at a time, the upload goes through the same file in qtemp.
+ *
+ * @author Derek Van Kooten.
+ */
+public class BatchFreeForm {
+
+    int threads;
+    File directory;
+    Logger logger = LoggerFactory.getLogger(BatchFreeForm.class);
+
+    public BatchFreeForm(int threads) {
+        this.threads = Math.max(1, threads);
+    }
+
+    /**
+     * sets the directory the converted members are written to, null writes
+     * them back to the members.
+     *
+     * @param directory File
+     */
+    public void setDirectory(File directory) {
+        this.directory = directory;
+    }
+
+    /**
+     * converts the members and waits for them all to finish.
+     *
+     * @param listMembers ArrayList of Member.
+     * @return ArrayList of Result, in the same order as the members.
+     */
+    @SuppressWarnings({"rawtypes", "unchecked"})
+    public ArrayList convert(ArrayList listMembers) throws InterruptedException {
+        ExecutorService pool;
+        ArrayList listTasks, listResults;
+        Result result;
+
+        pool = Executors.newFixedThreadPool(Math.min(threads, Math.max(1, listMembers.size())), new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable runnable) {
+                Thread thread;
+
+                thread = new Thread(runnable, "free form");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        listTasks = new ArrayList();
+        for (int x = 0; x < listMembers.size(); x++) {
+            final Member member = (Member) listMembers.get(x);
+            listTasks.add(new Callable() {
+                @Override
+                public Object call() {
+                    return convert(member);
+                }
+            });
+        }
+        listResults = new ArrayList();
+        try {
+            for (Object o : pool.invokeAll(listTasks)) {
+                try {
+                    result = (Result) ((Future) o).get();
+                } catch (ExecutionException e) {
+                    result = new Result((Member) listMembers.get(listResults.size()));
+                    result.error = e.getCause().toString();
+                }
+                listResults.add(result);
+            }
+        } finally {
+            pool.shutdownNow();
+        }
+        return listResults;
+    }
+
+    /**
+     * converts one member, anything that goes wrong is kept in the result.
+     *
+     * @param member Member
+     * @return Result
+     */
+    public Result convert(Member member) {
+        SourceParser parser;
+        PlainDocument document;
+        Result result;
+        long time;
+
+        result = new Result(member);
+        try {
+            time = System.nanoTime();
+            parser = new SourceParser();
+            member.getSource(parser);
+            document = new PlainDocument();
+            document.insertString(0, parser.getText().toString(), null);
+            parser.watch(document);
+            document.addDocumentListener(parser);
+            result.lines = parser.getLineCount();
+            result.load = (System.nanoTime() - time) / 1000000;
+
+            time = System.nanoTime();
+            if (document.getLength() > 0) {
+                new RefactorFreeForm().refactor(parser, 0, document.getLength() - 1);
+            }
+            result.convert = (System.nanoTime() - time) / 1000000;
+
+            time = System.nanoTime();
+            write(member, parser, result);
+            result.write = (System.nanoTime() - time) / 1000000;
+        } catch (Exception e) {
+            result.error = e.toString();
+        }
+        if (result.error == null) {
+            logger.info(result.toString());
+        } else {
+            logger.error(result.toString());
+        }
+        return result;
+    }
+
+    protected void write(Member member, SourceParser parser, final Result result) throws Exception {
+        if (directory != null) {
+            member.saveBackupLocal(parser, new File(directory, member.getName() + "." + member.getSourceType()).getPath());
+            return;
+        }
+        synchronized (member.getSystem()) {
+            // the converted source has new lines everywhere, it is uploaded
+            // whole and not as changes.
+            member.saveFull(parser, new ListenerSave() {
+                @Override
+                public void lineSaved(int count) {
+                }
+
+                @Override
+                public void saveComplete(int count, boolean status, String errorMessage) {
+                    if (status == false) {
+                        result.error = errorMessage;
+                    }
+                }
+            });
+        }
+    }
+
+    /**
+     * how the conversion of one member went, the times are in milliseconds.
+     */
+    public static class Result {
+
+        public Member member;
+        public int lines;
+        public long load, convert, write;
+        // null if the member was converted.
+        public String error;
+
+        Result(Member member) {
+            this.member = member;
+        }
+
+        public boolean isOk() {
+            return error == null;
+        }
+
+        @Override
+        public String toString() {
+            String text;
+
+            text = member.getLibrary() + "/" + member.getFile() + "(" + member.getName() + ") " + lines + " lines, load "
+                    + load + " ms, convert " + convert + " ms, write " + write + " ms";
+            if (error != null) {
+                text += ", failed: " + error;
+            }
+            return text;
+        }
+    }
+}
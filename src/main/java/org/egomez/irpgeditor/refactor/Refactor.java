@@ -44,21 +44,30 @@ public class Refactor {
         refactor();
     }
 
+    /**
+     * the lines are changed in one bulk edit of the parser, so the document
+     * and the listeners only see the change once.
+     */
     public void refactor() {
         SourceLine line;
 
-        start();
-        line = lineStart;
-        while (line != null && line.equals(lineEnd) == false) {
-            process(line);
-            line = line.getNext();
+        sourceParser.beginEdit();
+        try {
+            start();
+            line = lineStart;
+            while (line != null && line.equals(lineEnd) == false) {
+                process(line);
+                line = line.getNext();
+            }
+            // the last line wont have been processed, check to see if it needs to
+            // be processed.
+            if (lineStart.equals(lineEnd) == false && line != null) {
+                process(line);
+            }
+            end();
+        } finally {
+            sourceParser.endEdit();
         }
-        // the last line wont have been processed, check to see if it needs to
-        // be processed.
-        if (lineStart.equals(lineEnd) == false && line != null) {
-            process(line);
-        }
-        end();
     }
 
     public void process(SourceLine line) {
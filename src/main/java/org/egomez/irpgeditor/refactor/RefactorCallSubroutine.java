@@ -35,18 +35,28 @@ public class RefactorCallSubroutine extends Refactor {
     public void start() {
         String subName;
         Document doc;
+        int start;
         final Logger logger = LoggerFactory.getLogger(RefactorCallSubroutine.class);
-        subName = JOptionPane.showInputDialog(null, "Call Subroutine Name?");
+        subName = askName();
         if (subName == null) {
             return;
         }
         doc = sourceParser.getDocument();
         try {
-            doc.remove(lineStart.getStart(), (lineEnd.getStart() + lineEnd.getLength()) - lineStart.getStart());
-            doc.insertString(lineStart.getStart(), "     C                   exsr      " + subName + "\n", null);
+            // the start of the line before it is removed.
+            start = lineStart.getStart();
+            doc.remove(start, (lineEnd.getStart() + lineEnd.getLength()) - start);
+            doc.insertString(start, "     C                   exsr      " + subName + "\n", null);
         } catch (BadLocationException e) {
             //e.printStackTrace();
             logger.error(e.getMessage());
         }
     }
+
+    /**
+     * asks for the name of the subroutine, null if cancelled.
+     */
+    protected String askName() {
+        return JOptionPane.showInputDialog(null, "Call Subroutine Name?");
+    }
 }
@@ -55,6 +55,7 @@ public class RefactorNewSubroutine extends Refactor {
         SourceLine sourceLine, nextLine;
         String subName;
         Document doc;
+        int start;
 
         // find the last C line and append text to it.
         sourceLine = sourceParser.getFirst();
@@ -69,7 +70,7 @@ public class RefactorNewSubroutine extends Refactor {
             sourceLine = nextLine;
             nextLine = nextLine.getNext();
         }
-        subName = JOptionPane.showInputDialog(null, "New Subroutine Name?");
+        subName = askName();
         if (subName == null) {
             return;
         }
@@ -82,11 +83,20 @@ public class RefactorNewSubroutine extends Refactor {
         doc = sourceParser.getDocument();
         try {
             doc.insertString(sourceLine.getStart() + sourceLine.getLength(), buffer.toString(), null);
-            doc.remove(lineStart.getStart(), (lineEnd.getStart() + lineEnd.getLength()) - lineStart.getStart());
-            doc.insertString(lineStart.getStart(), "     C                   exsr      " + subName + "\n", null);
+            // the start of the line before it is removed.
+            start = lineStart.getStart();
+            doc.remove(start, (lineEnd.getStart() + lineEnd.getLength()) - start);
+            doc.insertString(start, "     C                   exsr      " + subName + "\n", null);
         } catch (BadLocationException e) {
             logger.error(e.getMessage());
             
         }
     }
+
+    /**
+     * asks for the name of the subroutine, null if cancelled.
+     */
+    protected String askName() {
+        return JOptionPane.showInputDialog(null, "New Subroutine Name?");
+    }
 }
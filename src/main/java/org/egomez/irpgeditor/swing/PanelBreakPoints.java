@@ -25,6 +25,8 @@ public class PanelBreakPoints extends JPanel implements ChangeListener {
     int fontHeight;
     FontMetrics fm;
     JScrollPane scrollPane;
+    // the text of the line numbers painted so far.
+    String[] labels = new String[0];
 
     public PanelBreakPoints() {
         super();
@@ -86,10 +88,20 @@ public class PanelBreakPoints extends JPanel implements ChangeListener {
         }
         g.setColor(Color.black);
         while (start <= end) {
-            buffer = Integer.toString(start + 1);
+            buffer = getLabel(start + 1);
             g.drawString(buffer, (width - fm.stringWidth(buffer)) - 2, y - 2);
             y += fontHeight;
             start++;
         }
     }
+
+    protected String getLabel(int number) {
+        if (number >= labels.length) {
+            labels = Arrays.copyOf(labels, Math.max(number + 1, labels.length * 2));
+        }
+        if (labels[number] == null) {
+            labels[number] = Integer.toString(number);
+        }
+        return labels[number];
+    }
 }
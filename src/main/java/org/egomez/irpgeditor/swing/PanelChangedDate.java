@@ -1,5 +1,6 @@
 package org.egomez.irpgeditor.swing;
 
+import java.util.*;
 import java.awt.*;
 import javax.swing.*;
 import javax.swing.event.*;
@@ -26,6 +27,9 @@ public class PanelChangedDate extends JPanel implements ChangeListener {
 	FontMetrics fm;
 	int width;
 	JScrollPane scrollPane;
+	// the text of each date painted so far, most lines share a few dates.
+	@SuppressWarnings("rawtypes")
+	HashMap mapLabels = new HashMap();
 
 	public PanelChangedDate() {
 		super();
@@ -62,10 +66,15 @@ public class PanelChangedDate extends JPanel implements ChangeListener {
 		repaint();
 	}
 
+	/**
+	 * paints the dates of the rows in the viewport. the first row is looked up
+	 * in the index of the parser, so the time it takes does not depend on how
+	 * far down the source is scrolled.
+	 */
 	public void paintComponent(Graphics g) {
 		String buffer;
 		SourceLine line;
-		int y, start, index, end;
+		int y, start, end;
 
 		super.paintComponent(g);
 		if (parser == null) {
@@ -78,28 +87,37 @@ public class PanelChangedDate extends JPanel implements ChangeListener {
 		}
 		end += start;
 		end += 1;
+		if (start >= parser.getLineCount()) {
+			return;
+		}
 		y = fontHeight * start;
 		y += fontHeight;
-		index = 0;
-		line = parser.getFirst();
-		while (line != null) {
-			if (index > end) {
-				return;
-			}
-			if (index >= start) {
-				buffer = Integer.toString(line.getDate());
-				if (line.isCreated()) {
-					g.setColor(Color.green);
-				} else if (line.isChanged()) {
-					g.setColor(Color.blue);
-				} else {
-					g.setColor(Color.black);
-				}
-				g.drawString(buffer, (width - fm.stringWidth(buffer)) + 2, y - 2);
-				y += fontHeight;
+		line = parser.getLineForRow(start + 1);
+		while (line != null && start <= end) {
+			buffer = getLabel(line.getDate());
+			if (line.isCreated()) {
+				g.setColor(Color.green);
+			} else if (line.isChanged()) {
+				g.setColor(Color.blue);
+			} else {
+				g.setColor(Color.black);
 			}
+			g.drawString(buffer, (width - fm.stringWidth(buffer)) + 2, y - 2);
+			y += fontHeight;
 			line = line.getNext();
-			index++;
+			start++;
+		}
+	}
+
+	@SuppressWarnings("unchecked")
+	protected String getLabel(int date) {
+		String label;
+
+		label = (String) mapLabels.get(date);
+		if (label == null) {
+			label = Integer.toString(date);
+			mapLabels.put(date, label);
 		}
+		return label;
 	}
 }
@@ -1,8 +1,11 @@
 package org.egomez.irpgeditor.swing;
 
 import java.util.*;
+import java.util.concurrent.*;
 import java.awt.*;
+import java.awt.event.*;
 import javax.swing.*;
+import javax.swing.Timer;
 import javax.swing.event.*;
 
 import org.egomez.irpgeditor.*;
@@ -15,19 +18,39 @@ import org.slf4j.LoggerFactory;
  *
  * @author Derek Van Kooten.
  */
-@SuppressWarnings("unchecked")
-public class PanelLines extends JPanel implements Runnable, DocumentListener {
+public class PanelLines extends JPanel implements DocumentListener {
 
     /**
      *
      */
     private static final long serialVersionUID = 8350288023940606465L;
+    // how long the source has to be left alone before it is parsed again.
+    static final int DELAY = 500;
+
+    // parses the source of every panel, one parse at a time.
+    static final ExecutorService worker = Executors.newSingleThreadExecutor(new ThreadFactory() {
+        @Override
+        public Thread newThread(Runnable runnable) {
+            Thread thread;
+
+            thread = new Thread(runnable, "lines");
+            thread.setDaemon(true);
+            thread.setPriority(Thread.MIN_PRIORITY);
+            return thread;
+        }
+    });
+
     SourceParser parser;
-    Block first;
-    Thread threadScan, threadScanWait;
-    long lastModified = 0;
+    volatile Block first;
+    // the first row changed since the blocks in first were parsed.
+    volatile int rowChanged = 0;
+    // the op of every line parsed so far, only used by the worker.
+    @SuppressWarnings("rawtypes")
+    IdentityHashMap mapMarks = new IdentityHashMap();
+    Timer timer;
     FontMetrics fm;
     int fontHeight;
+    int charWidth;
     Color green = new Color(0, 125, 0);
     Color brown = new Color(125, 125, 0);
     Color purple = new Color(125, 0, 125);
@@ -71,13 +94,30 @@ public class PanelLines extends JPanel implements Runnable, DocumentListener {
         setStop.add("endmon");
     }
 
+    public PanelLines() {
+        timer = new Timer(DELAY, new ActionListener() {
+            @Override
+            public void actionPerformed(ActionEvent e) {
+                submitParse();
+            }
+        });
+        timer.setRepeats(false);
+    }
+
     public void setParser(SourceParser sourceParser) {
         this.parser = sourceParser;
     }
 
+    /**
+     * the source font is monospaced, so the x of a line is worked out from
+     * its column and the blocks do not have to be parsed again when the font
+     * changes.
+     */
     public void setSourceFont(Font font) {
         fm = getFontMetrics(font);
         fontHeight = fm.getMaxAscent() + fm.getDescent();
+        charWidth = fm.charWidth('m');
+        repaint();
     }
 
     @Override
@@ -93,23 +133,25 @@ public class PanelLines extends JPanel implements Runnable, DocumentListener {
         int yStart, yEnd, x, nextx;
 
         if (b.child != null) {
-            // the child blocks will set the level.
             x = drawBlock(g, b.child) - 10;
-            if ((b.xmax - 10) < x) {
-                x = b.xmax - 10;
+            if ((getX(b.xmax) - 10) < x) {
+                x = getX(b.xmax) - 10;
             }
-        } else {
+            // one more than the deepest child. the level is not set through
+            // the parent, a kept block is a copy the children do not point to.
             b.level = 0;
-            x = b.xmax - 10;
-        }
-        // update the parents level.
-        if (b.parent != null) {
-            if (b.level + 1 > b.parent.level) {
-                b.parent.level = b.level + 1;
+            for (Block c = b.child; c != null; c = c.next) {
+                if (c.level + 1 > b.level) {
+                    b.level = c.level + 1;
+                }
             }
+        } else {
+            b.level = 0;
+            x = getX(b.xmax) - 10;
         }
-        // draw this one
-        if (b.lineEnd != null) {
+        // draw this one, unless one of its lines was removed since it was
+        // parsed.
+        if (b.lineEnd != null && b.lineStart.isInvalid() == false && b.lineEnd.isInvalid() == false) {
             yStart = getY(b.lineStart.getLineIndex());
             yEnd = getY(b.lineEnd.getLineIndex());
             if (b.startType != b.endType && b.endType != 6) {
@@ -125,8 +167,8 @@ public class PanelLines extends JPanel implements Runnable, DocumentListener {
             } else {
                 g.setColor(Color.BLUE);
             }
-            g.drawLine(b.xstart, yStart, x, yStart);
-            g.drawLine(b.xend, yEnd, x, yEnd);
+            g.drawLine(getX(b.xstart), yStart, x, yStart);
+            g.drawLine(getX(b.xend), yEnd, x, yEnd);
             g.drawLine(x, yStart, x, yEnd);
         }
 
@@ -140,166 +182,273 @@ public class PanelLines extends JPanel implements Runnable, DocumentListener {
         return x;
     }
 
+    protected int getX(int column) {
+        return column * charWidth;
+    }
+
     protected int getY(int line) {
         return (fontHeight * line) + (fontHeight / 2) + 3;
     }
 
     @Override
     public void insertUpdate(DocumentEvent e) {
-        changed();
+        changed(e.getOffset());
     }
 
     @Override
     public void removeUpdate(DocumentEvent e) {
-        changed();
+        changed(e.getOffset());
     }
 
     @Override
     public void changedUpdate(DocumentEvent e) {
     }
 
-    public void changed() {
-        first = null;
-        repaint();
-        if (threadScan != null) {
-            threadScan.interrupt();
-        }
-        lastModified = System.currentTimeMillis();
-        if (threadScanWait == null) {
-            threadScanWait = new Thread(this);
-            threadScanWait.start();
-        }
-    }
+    /**
+     * remembers the first row that changed and waits for the typing to stop
+     * before parsing again. the old blocks are shown until then.
+     */
+    public void changed(int position) {
+        int row;
 
-    @SuppressWarnings("static-access")
-    @Override
-    public void run() {
-        Thread.currentThread().setPriority(Thread.MIN_PRIORITY);
-        while (true) {
+        row = 0;
+        if (parser != null) {
             try {
-                Thread.currentThread().sleep(3000);
-            } catch (InterruptedException e) {
-            }
-            if (System.currentTimeMillis() >= (lastModified + 3000)) {
-                threadScanWait = null;
-                lastModified = 0;
-                startParse();
-                return;
+                row = Math.max(parser.getRow(position) - 1, 0);
+            } catch (Exception e) {
+                logger.error(e.getMessage());
             }
         }
+        if (row < rowChanged) {
+            rowChanged = row;
+        }
+        timer.restart();
+    }
+
+    public void changed() {
+        rowChanged = 0;
+        timer.restart();
     }
 
     public void startParse() {
-        threadScan = new Thread() {
+        timer.stop();
+        rowChanged = 0;
+        submitParse();
+    }
+
+    /**
+     * takes a snapshot of the source on the event thread and parses it on the
+     * worker.
+     */
+    protected void submitParse() {
+        final SourceSnapshot snapshot;
+
+        if (parser == null) {
+            return;
+        }
+        snapshot = parser.getSnapshot();
+        if (snapshot == null) {
+            return;
+        }
+        worker.execute(new Runnable() {
             @Override
             public void run() {
-                Thread.currentThread().setPriority(Thread.MIN_PRIORITY);
                 try {
-                    parse();
+                    parse(snapshot);
                 } catch (Exception e) {
                     //e.printStackTrace();
                     logger.error(e.getMessage());
                 }
-                threadScan = null;
             }
-        };
-        threadScan.start();
+        });
     }
 
-    public void parse() {
+    /**
+     * works out the blocks from a snapshot of the source, so the source can
+     * be changed while this runs. if it did change, the blocks are thrown
+     * away, the change starts another parse.
+     *
+     * the top level blocks that end above the first changed row are kept as
+     * they are, the parse starts again below the last of them. the op of a
+     * line is only looked for again if the text of the line changed.
+     *
+     * the blocks being shown are never changed here, the kept ones are copied
+     * into a new chain and only the head of it is swapped in on the event
+     * thread.
+     */
+    @SuppressWarnings("unchecked")
+    public void parse(SourceSnapshot snapshot) {
         SourceLine line;
-        Block start, temp;
-        String op, text;
-        char spec;
-        int x, index;
+        Block start, temp, kept, last, copy;
+        Mark mark;
+        String op;
+        int[] hashes;
+        int x, count, row, hash;
 
-        x = 0;
+        count = snapshot.getLineCount();
+        // the hashes worked out here, they are kept with the lines.
+        hashes = new int[count];
+        // the blocks of removed lines are only dropped by a parse from the
+        // top.
+        if (mapMarks.size() > count * 2) {
+            mapMarks.clear();
+        }
+        kept = null;
+        last = null;
+        row = 0;
+        if (rowChanged > 0) {
+            for (Block b = first; b != null && b.lineEnd != null && b.rowEnd < rowChanged; b = b.next) {
+                copy = b.copy();
+                if (last == null) {
+                    kept = copy;
+                } else {
+                    last.next = copy;
+                }
+                last = copy;
+                row = b.rowEnd + 1;
+            }
+        }
+        // below the kept blocks the parse carries on as it does from the top,
+        // a start op adds the next top level block.
         start = null;
         temp = null;
-        line = parser.getFirst();
-        while (line != null) {
-            if (line.isComment() == false && line.isInvalid() == false && line.isDirective() == false
-                    && line.isSql() == false) {
-                spec = line.getSpec();
-                switch (spec) {
-                    case 'C':
-                    case 'c':
-                        op = line.get(LinePosition.C_OPERATION);
-                        text = line.getText();
-                        index = text.indexOf(op);
-                        try {
-                            x = fm.stringWidth(text.substring(0, index));
-                        } catch (Exception e) {
-                            //System.out.println(op);
-                            //System.out.println(text);
-                            logger.info(op);
-                            logger.info(text);
-                            //e.printStackTrace();
-                            logger.error(e.getMessage());
-                        }
-                        break;
-                    case ' ':
-                        op = line.getFreeFormFirst();
-                        text = line.getText();
-                        index = text.indexOf(op);
-                        x = fm.stringWidth(text.substring(0, index));
-                        break;
-                    default:
-                        op = "";
-                        // continue;
-                        break;
-                }
-                if (op == null) {
-                    return;
+        for (; row < count; row++) {
+            if ((row & 1023) == 0 && snapshot.isCurrent() == false) {
+                return;
+            }
+            if (snapshot.isComment(row) || snapshot.isDirective(row) || snapshot.isSql(row)) {
+                continue;
+            }
+            line = snapshot.getLine(row);
+            mark = (Mark) mapMarks.get(line);
+            hash = snapshot.getHash(row);
+            hashes[row] = hash;
+            if (mark == null || mark.hash != hash) {
+                mark = mark(snapshot, row, hash);
+                mapMarks.put(line, mark);
+            }
+            op = mark.op;
+            x = mark.column;
+            if (setStart.contains(op)) {
+                if (temp == null) {
+                    temp = new Block(op, line, null);
+                    start = temp;
+                } else if (temp.lineEnd == null) {
+                    temp.child = new Block(op, line, temp);
+                    temp = temp.child;
+                } else {
+                    temp.next = new Block(op, line, temp.parent);
+                    temp = temp.next;
                 }
-                op = op.trim().toLowerCase();
-                if (setStart.contains(op)) {
-                    if (temp == null) {
-                        temp = new Block(op, line, null);
-                        start = temp;
-                    } else if (temp.lineEnd == null) {
-                        temp.child = new Block(op, line, temp);
-                        temp = temp.child;
-                    } else {
-                        temp.next = new Block(op, line, temp.parent);
-                        temp = temp.next;
-                    }
-                    temp.xstart = x;
-                    temp.xmax = x;
-                } else if (setStop.contains(op) && temp != null) {
-                    if (temp.lineEnd != null) {
-                        if (temp.parent != null) {
-                            temp = temp.parent;
-                            temp.lineEnd = line;
-                            temp.endType = temp.determineEndType(op);
-                            temp.xend = x;
-                            if (x < temp.xmax) {
-                                temp.xmax = x;
-                            }
-                        }
-                    } else {
+                temp.xstart = x;
+                temp.xmax = x;
+            } else if (setStop.contains(op) && temp != null) {
+                if (temp.lineEnd != null) {
+                    if (temp.parent != null) {
+                        temp = temp.parent;
                         temp.lineEnd = line;
+                        temp.rowEnd = row;
                         temp.endType = temp.determineEndType(op);
                         temp.xend = x;
                         if (x < temp.xmax) {
                             temp.xmax = x;
                         }
                     }
+                } else {
+                    temp.lineEnd = line;
+                    temp.rowEnd = row;
+                    temp.endType = temp.determineEndType(op);
+                    temp.xend = x;
+                    if (x < temp.xmax) {
+                        temp.xmax = x;
+                    }
                 }
             }
-            line = line.getNext();
         }
-        first = start;
-        repaint();
+        if (last == null) {
+            kept = start;
+        } else {
+            last.next = start;
+        }
+        publish(snapshot, hashes, kept);
+    }
+
+    /**
+     * looks for the op of a line and the column it is in.
+     */
+    protected Mark mark(SourceSnapshot snapshot, int row, int hash) {
+        Mark mark;
+        String op, text;
+        int column;
+
+        mark = new Mark();
+        mark.hash = hash;
+        switch (snapshot.getSpec(row)) {
+            case 'C':
+            case 'c':
+                op = snapshot.get(row, LinePosition.C_OPERATION);
+                column = LinePosition.C_OPERATION.start - 1;
+                while (column < snapshot.getLength(row) && snapshot.charAt(row, column) == ' ') {
+                    column++;
+                }
+                break;
+            case ' ':
+                text = snapshot.getLineText(row);
+                op = SourceLine.getFreeFormFirst(text, 0, text.length());
+                column = 0;
+                while (column < text.length() && Character.isWhitespace(text.charAt(column))) {
+                    column++;
+                }
+                break;
+            default:
+                op = "";
+                column = 0;
+                break;
+        }
+        if (op == null) {
+            op = "";
+        }
+        mark.op = op.trim().toLowerCase();
+        mark.column = column;
+        return mark;
+    }
+
+    /**
+     * shows the blocks on the event thread, unless the source changed since
+     * the snapshot they came from.
+     */
+    protected void publish(final SourceSnapshot snapshot, final int[] hashes, final Block blocks) {
+        SwingUtilities.invokeLater(new Runnable() {
+            @Override
+            public void run() {
+                if (snapshot.isCurrent()) {
+                    parser.keepHashes(snapshot, hashes);
+                    first = blocks;
+                    rowChanged = Integer.MAX_VALUE;
+                    repaint();
+                }
+            }
+        });
+    }
+
+    /**
+     * the op of a line, for the hash of the text it was found in.
+     */
+    static final class Mark {
+
+        int hash;
+        String op;
+        int column;
     }
 
     final class Block {
 
         int startType, endType; // 0 = IF, 1 = SELECT, 2 = BEGSR, 3 = DO, 4 =
         // MONITOR, 5 = FOR, 6 = END
-        int xmax; // max x value that a line can be drawn for this block.
+        int xmax; // max column that a line can be drawn for this block.
         int xstart;
         int xend;
+        int rowEnd; // the row of lineEnd in the snapshot that was parsed.
         SourceLine lineStart, lineEnd;
         Block parent, next, child;
         int level = 0;
@@ -310,6 +459,25 @@ public class PanelLines extends JPanel implements Runnable, DocumentListener {
             this.startType = determineStartType(op);
         }
 
+        /**
+         * a copy of a top level block without the next one. the child blocks
+         * are shared, they are not changed once parsed.
+         */
+        Block copy() {
+            Block b;
+
+            b = new Block("", lineStart, parent);
+            b.startType = startType;
+            b.endType = endType;
+            b.xmax = xmax;
+            b.xstart = xstart;
+            b.xend = xend;
+            b.rowEnd = rowEnd;
+            b.lineEnd = lineEnd;
+            b.child = child;
+            return b;
+        }
+
         public int determineStartType(String op) {
             if (op.startsWith("if")) {
                 return 0;
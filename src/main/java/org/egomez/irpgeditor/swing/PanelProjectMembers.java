@@ -2,6 +2,8 @@ package org.egomez.irpgeditor.swing;
 
 import java.awt.*;
 import java.awt.event.*;
+import java.io.File;
+import java.util.ArrayList;
 import javax.swing.*;
 import javax.swing.tree.*;
 import javax.swing.event.*;
@@ -10,6 +12,7 @@ import org.egomez.irpgeditor.*;
 import org.egomez.irpgeditor.env.*;
 import org.egomez.irpgeditor.event.*;
 import org.egomez.irpgeditor.icons.*;
+import org.egomez.irpgeditor.refactor.*;
 import org.egomez.irpgeditor.tree.*;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -31,6 +34,7 @@ public class PanelProjectMembers extends PanelTool {
 
     transient ActionMemberRemove actionMemberRemove = new ActionMemberRemove();
     transient ActionMemberRefactorRPG4 actionMemberRefactorRPG4 = new ActionMemberRefactorRPG4();
+    transient ActionMemberFreeForm actionMemberFreeForm = new ActionMemberFreeForm();
     transient ActionMemberRefreshInfo actionMemberRefreshInfo = new ActionMemberRefreshInfo();
     transient ActionMemberRename actionMemberRename = new ActionMemberRename();
     transient ActionMemberDelete actionMemberDelete = new ActionMemberDelete();
@@ -116,6 +120,7 @@ public class PanelProjectMembers extends PanelTool {
             JMenuItem menuOpen = new JMenuItem();
             JMenuItem menuRefresh = new JMenuItem();
             JMenuItem menuRefactor = new JMenuItem();
+            JMenuItem menuFreeForm = new JMenuItem();
 
             menuRemove.setText("Remove");
             menuRename.setText("Rename");
@@ -124,6 +129,7 @@ public class PanelProjectMembers extends PanelTool {
             menuOpen.setText("Open");
             menuRefresh.setText("Refresh");
             menuRefactor.setText("Refactor to RPGIV");
+            menuFreeForm.setText("Convert to Free Form...");
 
             // if more than one node is selected then rename is not valid.
             if (treeMembers.getSelectionCount() > 1) {
@@ -133,6 +139,9 @@ public class PanelProjectMembers extends PanelTool {
             if (!allRPG()) {
                 menuRefactor.setEnabled(false);
             }
+            if (!allILE()) {
+                menuFreeForm.setEnabled(false);
+            }
 
             popupMenu.add(menuOpen);
             popupMenu.add(menuRemove);
@@ -141,6 +150,7 @@ public class PanelProjectMembers extends PanelTool {
             popupMenu.add(menuDelete);
             popupMenu.add(menuRefresh);
             popupMenu.add(menuRefactor);
+            popupMenu.add(menuFreeForm);
 
             menuRemove.addActionListener(actionMemberRemove);
             menuRename.addActionListener(actionMemberRename);
@@ -149,6 +159,7 @@ public class PanelProjectMembers extends PanelTool {
             menuOpen.addActionListener(actionMemberOpen);
             menuRefresh.addActionListener(actionMemberRefreshInfo);
             menuRefactor.addActionListener(actionMemberRefactorRPG4);
+            menuFreeForm.addActionListener(actionMemberFreeForm);
 
             popupMenu.show(source, x, y);
             return true;
@@ -175,6 +186,31 @@ public class PanelProjectMembers extends PanelTool {
             }
             return true;
         }
+
+        /**
+         * returns true if all the selected members are rpg iv.
+         */
+        public boolean allILE() {
+            TreePath[] paths;
+            Object object;
+            String sourceType;
+
+            paths = treeMembers.getSelectionPaths();
+            if (paths == null || paths.length == 0) {
+                return false;
+            }
+            for (TreePath path : paths) {
+                object = path.getLastPathComponent();
+                if (object instanceof ProjectMember == false) {
+                    return false;
+                }
+                sourceType = ((ProjectMember) object).getMember().getSourceType();
+                if (sourceType.equals(Member.SOURCE_TYPE_RPGLE) == false && sourceType.equals(Member.SOURCE_TYPE_SQLRPGLE) == false) {
+                    return false;
+                }
+            }
+            return true;
+        }
     }
 
     class ActionMemberRename implements ActionListener {
@@ -366,6 +402,97 @@ public class PanelProjectMembers extends PanelTool {
         }
     }
 
+    /**
+     * converts the selected members to free form, into a directory or back
+     * into the members. the members open in an editor are not written back,
+     * the editor would save over them.
+     */
+    class ActionMemberFreeForm implements ActionListener {
+
+        @SuppressWarnings({"rawtypes", "unchecked"})
+        @Override
+        public void actionPerformed(ActionEvent evt) {
+            TreePath[] treePaths;
+            Object object;
+            ProjectMember projectMember;
+            final ArrayList listMembers;
+            final ArrayList listSkipped;
+            final BatchFreeForm batch;
+            JFileChooser chooser;
+            Object[] options;
+            int option;
+
+            treePaths = treeMembers.getSelectionPaths();
+            if (treePaths == null || treePaths.length == 0) {
+                return;
+            }
+            options = new Object[]{"Directory...", "Members", "Cancel"};
+            option = JOptionPane.showOptionDialog(null, "Write the converted source to a directory or back to the members?",
+                    "Convert to Free Form", JOptionPane.YES_NO_CANCEL_OPTION, JOptionPane.QUESTION_MESSAGE, null, options, options[0]);
+            if (option != 0 && option != 1) {
+                return;
+            }
+            batch = new BatchFreeForm(Runtime.getRuntime().availableProcessors());
+            if (option == 0) {
+                chooser = new JFileChooser();
+                chooser.setFileSelectionMode(JFileChooser.DIRECTORIES_ONLY);
+                if (chooser.showSaveDialog(null) != JFileChooser.APPROVE_OPTION) {
+                    return;
+                }
+                batch.setDirectory(chooser.getSelectedFile());
+            }
+            listMembers = new ArrayList();
+            listSkipped = new ArrayList();
+            for (TreePath treePath : treePaths) {
+                object = treePath.getLastPathComponent();
+                if ((object instanceof ProjectMember) == false) {
+                    continue;
+                }
+                projectMember = (ProjectMember) object;
+                if (option == 1 && Environment.members.isCached(projectMember)) {
+                    listSkipped.add(projectMember.getMember().getName());
+                    continue;
+                }
+                listMembers.add(projectMember.getMember());
+            }
+            new Thread("free form") {
+                @Override
+                public void run() {
+                    final StringBuilder buffer;
+                    ArrayList listResults;
+                    BatchFreeForm.Result result;
+                    int failed;
+
+                    buffer = new StringBuilder();
+                    try {
+                        listResults = batch.convert(listMembers);
+                    } catch (InterruptedException e) {
+                        logger.error(e.getMessage());
+                        return;
+                    }
+                    failed = 0;
+                    for (Object o : listResults) {
+                        result = (BatchFreeForm.Result) o;
+                        if (result.isOk() == false) {
+                            failed++;
+                            buffer.append("\n").append(result.toString());
+                        }
+                    }
+                    buffer.insert(0, (listResults.size() - failed) + " converted, " + failed + " failed.");
+                    for (Object o : listSkipped) {
+                        buffer.append("\n").append(o).append(" is open in an editor, close it first.");
+                    }
+                    SwingUtilities.invokeLater(new Runnable() {
+                        @Override
+                        public void run() {
+                            JOptionPane.showMessageDialog(null, buffer.toString(), "Convert to Free Form", JOptionPane.INFORMATION_MESSAGE);
+                        }
+                    });
+                }
+            }.start();
+        }
+    }
+
     class ActionMemberRefreshInfo implements ActionListener {
 
         @Override
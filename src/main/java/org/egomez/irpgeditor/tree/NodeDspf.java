@@ -201,30 +201,32 @@ public class NodeDspf extends NodeSourceBlocks {
      * @return
      */
     public boolean isRecord(SourceLine line) {
-        StringBuffer source;
+        CharSequence source;
         char c;
+        int start;
 
         source = line.getSourceParser().getText();
+        start = line.getStart();
 
-        if (line.getStart() + 6 >= source.length()) {
+        if (start + 6 >= source.length()) {
             return false;
         }
-        if (source.charAt(line.getStart()) == '*'
-                && source.charAt(line.getStart() + 1) == '*') {
+        if (source.charAt(start) == '*'
+                && source.charAt(start + 1) == '*') {
             return false;
         }
-        c = source.charAt(line.getStart() + 6);
+        c = source.charAt(start + 6);
         // is comment, directive, sql?
         if (c == '/' || c == '+') {
             return false;
         }
 
-        c = source.charAt(line.getStart() + 5);
+        c = source.charAt(start + 5);
         if (c == 'A' || c == 'a') {
-            if (source.length() <= line.getStart() + 16) {
+            if (source.length() <= start + 16) {
                 return false;
             }
-            c = source.charAt(line.getStart() + 16);
+            c = source.charAt(start + 16);
             if (c == 'R' || c == 'r') {
                 return true;
             }
@@ -17,16 +17,23 @@ import org.slf4j.LoggerFactory;
 public class NodeDuplicateCode extends NodeDefault implements Runnable, DocumentListener {
 
     static int minMatches = 5;
+    ProjectMember projectMember;
     SourceParser sourceParser;
     TreeModelSourceStructure treeModel;
     Thread threadScan, threadScanWait;
     @SuppressWarnings("rawtypes")
     ArrayList listTemp;
+    // the rows that are already part of a duplicate found by the scan.
+    BitSet covered;
+    // the hashes of the lines and the sorted runs of the last scan.
+    int[] lastHashes;
+    long[] lastWindows;
     long lastModified = 0;
     Logger logger = LoggerFactory.getLogger(NodeDuplicateCode.class);
 
     public NodeDuplicateCode(ProjectMember projectMember, SourceParser sourceParser,
             TreeModelSourceStructure treeModel) {
+        this.projectMember = projectMember;
         this.sourceParser = sourceParser;
         this.treeModel = treeModel;
     }
@@ -38,13 +45,23 @@ public class NodeDuplicateCode extends NodeDefault implements Runnable, Document
         }
     }
 
+    /**
+     * starts a scan of the source as it is now, this must be called on the
+     * event thread, where the snapshot of the source is taken.
+     */
     public void startScan() {
+        final SourceSnapshot snapshot;
+
+        snapshot = sourceParser.getSnapshot();
+        if (snapshot == null) {
+            return;
+        }
         threadScan = new Thread() {
             @Override
             public void run() {
                 Thread.currentThread().setPriority(Thread.MIN_PRIORITY);
                 try {
-                    scan();
+                    scan(snapshot);
                 } catch (Exception e) {
                     //e.printStackTrace();
                     logger.error(e.getMessage());
@@ -56,151 +73,290 @@ public class NodeDuplicateCode extends NodeDefault implements Runnable, Document
     }
 
     /**
-     * start scanning for duplicate code.
+     * start scanning for duplicate code. the scan reads a snapshot of the
+     * source, if the source changed by the time it is done, the result is
+     * thrown away.
+     *
+     * every run of minMatches lines gets a hash worked out from the hashes of
+     * its lines, rolling down the source a line at a time. the runs are then
+     * sorted by their hash, so the places a run of lines could be repeated are
+     * next to each other and only those are compared. the hashes of the lines
+     * are kept with the lines, so after an edit only the changed lines are
+     * hashed again, and only the runs over them are rolled and sorted again,
+     * the rest of the sorted runs are kept from the last scan. the sorted runs
+     * are still walked from the top to find the duplicates.
+     *
+     * then the project is asked which of the runs are in other members.
      */
-    @SuppressWarnings("rawtypes")
-    protected void scan() {
-        SourceLine line;
+    @SuppressWarnings({"rawtypes", "unchecked"})
+    protected void scan(final SourceSnapshot snapshot) {
+        final ArrayList listFound;
+        final int[] hashes;
+        long[] windows;
+        int[] positions;
+        int row, count;
+        NodeClones nodeClones;
 
         listTemp = new ArrayList();
-        line = sourceParser.getFirst();
-        while (line != null) {
+        count = snapshot.getLineCount();
+        covered = new BitSet(count);
+        hashes = new int[count];
+        for (row = 0; row < count; row++) {
+            hashes[row] = snapshot.getHash(row);
+        }
+        windows = update(hashes);
+        // where each run is in the sorted runs.
+        positions = new int[windows.length];
+        for (int x = 0; x < windows.length; x++) {
+            positions[(int) windows[x]] = x;
+        }
+        row = 0;
+        while (row < windows.length) {
+            if (Thread.currentThread().isInterrupted()) {
+                return;
+            }
             // look for duplicates
-            if (isPartOfDuplicate(line)) {
-                line = line.getNext();
+            if (isPartOfDuplicate(row)) {
+                row++;
             } else {
-                line = findDuplicates(line);
+                row = findDuplicates(snapshot, windows, positions[row], row);
             }
         }
-        list = listTemp;
-        if (!list.isEmpty()) {
-            treeModel.fireStructureChanged(new TreeModelEvent(treeModel, new Object[]{treeModel.getRoot(), this}));
+        nodeClones = findClones(snapshot, hashes);
+        if (nodeClones != null) {
+            listTemp.add(nodeClones);
+        }
+        listFound = listTemp;
+        SwingUtilities.invokeLater(new Runnable() {
+            @Override
+            public void run() {
+                sourceParser.keepHashes(snapshot, hashes);
+                if (snapshot.isCurrent() == false) {
+                    return;
+                }
+                list = listFound;
+                if (!list.isEmpty()) {
+                    treeModel.fireStructureChanged(new TreeModelEvent(treeModel, new Object[]{treeModel.getRoot(), NodeDuplicateCode.this}));
+                }
+            }
+        });
+    }
+
+    /**
+     * returns the sorted runs of the lines, see windows(). the lines that are
+     * the same at the top and at the bottom as in the last scan are found, the
+     * runs that are all in those keep their place in the sorted runs of the
+     * last scan, the ones at the bottom move by the number of lines added.
+     * only the runs in between are worked out and sorted again, then merged
+     * in.
+     */
+    protected synchronized long[] update(int[] hashes) {
+        long[] windows, kept, changed;
+        int[] old;
+        int count, countOld, runs, top, bottom, from, to, delta, x, y, k;
+        long window;
+
+        old = lastHashes;
+        count = hashes.length;
+        runs = Math.max(count - minMatches + 1, 0);
+        lastHashes = hashes;
+        if (old == null || lastWindows == null) {
+            lastWindows = windows(CloneIndex.windows(hashes, count, minMatches));
+            return lastWindows;
+        }
+        countOld = old.length;
+        top = 0;
+        while (top < count && top < countOld && hashes[top] == old[top]) {
+            top++;
+        }
+        bottom = 0;
+        while (bottom < Math.min(count, countOld) - top
+                && hashes[count - 1 - bottom] == old[countOld - 1 - bottom]) {
+            bottom++;
+        }
+        // the runs from, up to to, have a changed line in them.
+        from = Math.max(top - minMatches + 1, 0);
+        to = Math.max(Math.min(runs, count - bottom), from);
+        delta = count - countOld;
+        changed = new long[to - from];
+        if (changed.length > 0) {
+            changed = windows(CloneIndex.windows(Arrays.copyOfRange(hashes, from, to + minMatches - 1),
+                    to - from + minMatches - 1, minMatches));
+            for (x = 0; x < changed.length; x++) {
+                changed[x] += from;
+            }
+        }
+        // the old runs that are kept, still sorted, the moved ones stay
+        // below the changed ones.
+        kept = new long[runs - changed.length];
+        k = 0;
+        for (x = 0; x < lastWindows.length; x++) {
+            window = lastWindows[x];
+            if ((int) window < from) {
+                kept[k++] = window;
+            } else if ((int) window >= countOld - bottom) {
+                kept[k++] = window + delta;
+            }
+        }
+        windows = new long[runs];
+        x = 0;
+        y = 0;
+        for (k = 0; k < runs; k++) {
+            if (y >= changed.length || (x < kept.length && kept[x] < changed[y])) {
+                windows[k] = kept[x++];
+            } else {
+                windows[k] = changed[y++];
+            }
+        }
+        lastWindows = windows;
+        return windows;
+    }
+
+    /**
+     * returns the runs sorted. the hash of the run is in the high 32 bits, the
+     * row the run starts at is in the low 32 bits, so the runs with the same
+     * hash are together and in the order of the source.
+     */
+    protected static long[] windows(int[] runs) {
+        long[] windows;
+
+        windows = new long[runs.length];
+        for (int row = 0; row < runs.length; row++) {
+            windows[row] = ((long) runs[row] << 32) | row;
+        }
+        Arrays.sort(windows);
+        return windows;
+    }
+
+    /**
+     * looks for the code of this member in the other members of the project,
+     * returns null if none is found.
+     */
+    @SuppressWarnings("rawtypes")
+    protected NodeClones findClones(SourceSnapshot snapshot, int[] hashes) {
+        CloneIndex cloneIndex;
+        NodeClones nodeClones;
+        CloneIndex.Clone clone;
+        ArrayList list;
+
+        if (projectMember == null || projectMember.getProject() == null) {
+            return null;
+        }
+        cloneIndex = projectMember.getProject().getCloneIndex();
+        cloneIndex.refresh((ArrayList) projectMember.getProject().getMembers().clone());
+        list = cloneIndex.find(CloneIndex.getFileName(projectMember.getMember()),
+                CloneIndex.windows(hashes, hashes.length, CloneIndex.MIN_LINES), snapshot);
+        if (list.isEmpty()) {
+            return null;
+        }
+        nodeClones = new NodeClones(this);
+        for (int x = 0; x < list.size(); x++) {
+            clone = (CloneIndex.Clone) list.get(x);
+            nodeClones.add(new NodeClone(nodeClones, snapshot.getLine(clone.row),
+                    snapshot.getLine(clone.row + clone.count - 1), clone.name, clone.rowOther, clone.count));
         }
+        return nodeClones;
     }
 
-    protected SourceLine findDuplicates(SourceLine line) {
-        SourceLine lineNext;
+    /**
+     * compares the lines at row with the later runs of lines that have the
+     * same hash.
+     */
+    protected int findDuplicates(SourceSnapshot snapshot, long[] windows, int position, int row) {
         NodeDuplicates node = null;
+        int rowNext;
 
-        lineNext = line.getNext();
-        while (lineNext != null) {
-            if (lineNext.isSame(line)) {
+        for (int x = position + 1; x < windows.length && (windows[x] >> 32) == (windows[position] >> 32); x++) {
+            rowNext = (int) windows[x];
+            if (snapshot.isSame(rowNext, row)) {
                 // if node == null, then a match of 2 or more lines hasnt been
                 // found yet
                 // for this line, but, a single has just been found to match, so
                 // see if there are multiple lines that match.
                 if (node == null) {
                     // how many lines are duplicate
-                    node = foundDuplicateLines(line, lineNext);
+                    node = foundDuplicateLines(snapshot, row, rowNext);
                 } else {
-                    foundDuplicateLines(node, lineNext);
+                    foundDuplicateLines(snapshot, node, rowNext);
                 }
             }
-            lineNext = lineNext.getNext();
         }
         if (node == null) {
-            return line.getNext();
+            return row + 1;
         }
-        return node.getFirst().lineEnd.getNext();
+        return node.getFirst().rowEnd + 1;
     }
 
-    protected void foundDuplicateLines(NodeDuplicates node, SourceLine lineStart) {
+    protected void foundDuplicateLines(SourceSnapshot snapshot, NodeDuplicates node, int rowStart) {
         NodeDuplicate nodeFirst;
-        SourceLine line, lineNext;
+        int row, rowNext;
 
-        // the variable line will loop through the existing duplicate code.
+        // the variable row will loop through the existing duplicate code.
         nodeFirst = node.getFirst();
-        line = nodeFirst.lineStart.getNext();
-        // the variable lineNext will loop through the newly found duplicate
+        row = nodeFirst.rowStart + 1;
+        // the variable rowNext will loop through the newly found duplicate
         // code.
-        lineNext = lineStart.getNext();
-        while (true) {
-            if (line.isSame(lineNext) == false) {
+        rowNext = rowStart + 1;
+        while (rowNext < snapshot.getLineCount()) {
+            if (snapshot.isSame(row, rowNext) == false) {
                 return;
             }
-            if (line == nodeFirst.lineEnd) {
+            if (row == nodeFirst.rowEnd) {
                 // if this point is reached, then all the lines are equal, make
                 // another duplicate node.
-                node.add(new NodeDuplicate(node, lineStart, lineNext));
+                node.add(new NodeDuplicate(node, snapshot, rowStart, rowNext));
+                covered.set(rowStart, rowNext + 1);
                 return;
             }
-            line = line.getNext();
-            lineNext = lineNext.getNext();
+            row++;
+            rowNext++;
         }
     }
 
-    protected NodeDuplicates foundDuplicateLines(SourceLine lineAStart, SourceLine lineBStart) {
-        SourceLine lineANext, lineBNext, lineAEnd, lineBEnd;
+    protected NodeDuplicates foundDuplicateLines(SourceSnapshot snapshot, int rowAStart, int rowBStart) {
+        int rowANext, rowBNext, rowAEnd, rowBEnd;
         int count;
 
         // see if there are at least minMatches or more lines that match.
-        lineAEnd = null;
-        lineBEnd = null;
-        lineANext = lineAStart.getNext();
-        lineBNext = lineBStart.getNext();
+        rowAEnd = -1;
+        rowBEnd = -1;
+        rowANext = rowAStart + 1;
+        rowBNext = rowBStart + 1;
         count = 1;
         while (true) {
-            if (lineANext == null || lineBNext == null || lineANext == lineBStart
-                    || lineANext.isSame(lineBNext) == false) {
+            if (rowBNext >= snapshot.getLineCount() || rowANext == rowBStart
+                    || snapshot.isSame(rowANext, rowBNext) == false) {
                 if (count >= minMatches) {
-                    return add(lineAStart, lineAEnd, lineBStart, lineBEnd);
+                    return add(snapshot, rowAStart, rowAEnd, rowBStart, rowBEnd);
                 }
                 return null;
             }
             count++;
-            lineAEnd = lineANext;
-            lineBEnd = lineBNext;
-            lineANext = lineANext.getNext();
-            lineBNext = lineBNext.getNext();
+            rowAEnd = rowANext;
+            rowBEnd = rowBNext;
+            rowANext++;
+            rowBNext++;
         }
     }
 
     @SuppressWarnings("unchecked")
-    protected NodeDuplicates add(SourceLine lineAStart, SourceLine lineAEnd, SourceLine lineBStart,
-            SourceLine lineBEnd) {
-        NodeDuplicates nodeDuplicates = null;
+    protected NodeDuplicates add(SourceSnapshot snapshot, int rowAStart, int rowAEnd, int rowBStart, int rowBEnd) {
+        NodeDuplicates nodeDuplicates;
         NodeDuplicate nodeA, nodeB;
 
-        nodeA = new NodeDuplicate(nodeDuplicates, lineAStart, lineAEnd);
-        // does this node already exist in the tree?
-        if (exists(nodeA)) {
-            return null;
-        }
         nodeDuplicates = new NodeDuplicates(this);
-        nodeB = new NodeDuplicate(nodeDuplicates, lineBStart, lineBEnd);
-        nodeA.parent = nodeDuplicates;
+        nodeA = new NodeDuplicate(nodeDuplicates, snapshot, rowAStart, rowAEnd);
+        nodeB = new NodeDuplicate(nodeDuplicates, snapshot, rowBStart, rowBEnd);
         nodeDuplicates.add(nodeA);
         nodeDuplicates.add(nodeB);
+        covered.set(rowAStart, rowAEnd + 1);
+        covered.set(rowBStart, rowBEnd + 1);
         listTemp.add(nodeDuplicates);
         return nodeDuplicates;
     }
 
-    protected boolean exists(NodeDuplicate node) {
-        NodeDuplicates nodeDuplicates;
-
-        for (int x = 0; x < listTemp.size(); x++) {
-            nodeDuplicates = (NodeDuplicates) listTemp.get(x);
-            if (nodeDuplicates.list.contains(node)) {
-                return true;
-            }
-        }
-        return false;
-    }
-
-    protected boolean isPartOfDuplicate(SourceLine line) {
-        NodeDuplicates nodeDuplicates;
-        NodeDuplicate node;
-
-        for (int x = 0; x < listTemp.size(); x++) {
-            nodeDuplicates = (NodeDuplicates) listTemp.get(x);
-            for (int y = 0; y < nodeDuplicates.list.size(); y++) {
-                node = (NodeDuplicate) nodeDuplicates.getChild(y);
-                if (line.isBetween(node.lineStart, node.lineEnd, true)) {
-                    return true;
-                }
-            }
-        }
-        return false;
+    protected boolean isPartOfDuplicate(int row) {
+        return covered.get(row);
     }
 
     @Override
@@ -254,7 +410,12 @@ public class NodeDuplicateCode extends NodeDefault implements Runnable, Document
             if (System.currentTimeMillis() >= (lastModified + 5000)) {
                 threadScanWait = null;
                 lastModified = 0;
-                startScan();
+                SwingUtilities.invokeLater(new Runnable() {
+                    @Override
+                    public void run() {
+                        startScan();
+                    }
+                });
                 return;
             }
         }
@@ -323,10 +484,67 @@ class NodeDuplicates extends NodeDefault {
     }
 }
 
+/**
+ * the code of the member that is also in other members of the project.
+ */
+class NodeClones extends NodeDefault {
+
+    public NodeClones(NodeDuplicateCode parent) {
+        super(parent, "Other Members");
+    }
+}
+
+/**
+ * lines of the member that are also in another member.
+ */
+class NodeClone extends NodeAbstract {
+
+    NodeClones parent;
+    SourceLine lineStart, lineEnd;
+    // the copy of the other member, and the first row there.
+    String name;
+    int rowOther;
+    int count;
+
+    public NodeClone(NodeClones parent, SourceLine lineStart, SourceLine lineEnd, String name, int rowOther, int count) {
+        this.parent = parent;
+        this.lineStart = lineStart;
+        this.lineEnd = lineEnd;
+        this.name = name;
+        this.rowOther = rowOther;
+        this.count = count;
+    }
+
+    @Override
+    public String getText() {
+        SourceParser parser;
+
+        parser = lineStart.getSourceParser();
+        return "Lines: " + count + ", Location: " + parser.getPoint(lineStart.getStart()).y + " to "
+                + parser.getPoint(lineEnd.getStart()).y + ", " + name + ": " + (rowOther + 1) + " to " + (rowOther + count);
+    }
+
+    @Override
+    public Node getParent() {
+        return parent;
+    }
+
+    @Override
+    public void selected() {
+        lineStart.requestFocus();
+    }
+
+    @Override
+    public void rightClick(Component invoker, int x, int y) {
+    }
+}
+
 class NodeDuplicate extends NodeAbstract {
 
     NodeDuplicates parent;
     SourceLine lineStart, lineEnd;
+    // the rows in the snapshot the duplicate was found in.
+    int rowStart, rowEnd;
     Logger logger = LoggerFactory.getLogger(NodeDuplicate.class);
 
     public NodeDuplicate(NodeDuplicates parent, SourceLine lineStart, SourceLine lineEnd) {
@@ -335,6 +553,12 @@ class NodeDuplicate extends NodeAbstract {
         this.lineEnd = lineEnd;
     }
 
+    public NodeDuplicate(NodeDuplicates parent, SourceSnapshot snapshot, int rowStart, int rowEnd) {
+        this(parent, snapshot.getLine(rowStart), snapshot.getLine(rowEnd));
+        this.rowStart = rowStart;
+        this.rowEnd = rowEnd;
+    }
+
     public String getAllText() {
         StringBuffer buffer;
         SourceLine line;
@@ -39,25 +39,47 @@ import org.egomez.irpgeditor.tree.*;
 public class NodeFiles extends NodeAbstract implements ListenerParser {
 
     FileLine first = null;
+    FileLine last = null;
     int count = 0;
+    // the file line of each source line that is one.
+    @SuppressWarnings("rawtypes")
+    IdentityHashMap mapLines = new IdentityHashMap();
+    // the file lines in order, worked out again after a change.
+    FileLine[] index;
+    // the event for the changes of one batch of parser events, and how many
+    // changes there were.
+    TreeModelEvent eventPending;
+    int typePending;
+    int changes;
     TreeModelSourceStructure treeModel;
 
+    static final int INSERTED = 0;
+    static final int REMOVED = 1;
+    static final int CHANGED = 2;
+
     public NodeFiles(TreeModelSourceStructure treeModel) {
         this.treeModel = treeModel;
     }
 
+    /**
+     * the events are taken after the current event, so a paste or a load is
+     * one change to the tree.
+     */
     public void setSourceParser(SourceParser parser) {
-        parser.addListener(this);
+        parser.addListener(this, SourceParserDispatcher.LATER);
     }
 
     /**
-     * handles events that occur in the source.
+     * handles events that occur in the source. a single change fires its own
+     * event, more than one fire one structure change.
      */
     @SuppressWarnings("rawtypes")
     @Override
     public void parserEvents(ArrayList listEvents) {
         SourceParserEvent event;
 
+        changes = 0;
+        eventPending = null;
         for (int x = 0; x < listEvents.size(); x++) {
             event = (SourceParserEvent) listEvents.get(x);
             if (event.getType() == SourceParserEvent.CHANGED) {
@@ -66,63 +88,97 @@ public class NodeFiles extends NodeAbstract implements ListenerParser {
                 added(event.getLine());
             } else if (event.getType() == SourceParserEvent.REMOVED) {
                 removed(event.getLine());
+            } else if (event.getType() == SourceParserEvent.LOADED) {
+                loaded(event.getLine(), event.getLastLine());
+            }
+        }
+        if (changes == 1) {
+            if (typePending == INSERTED) {
+                treeModel.fireInserted(eventPending);
+            } else if (typePending == REMOVED) {
+                treeModel.fireRemoved(eventPending);
+            } else {
+                treeModel.fireChanged(eventPending);
+            }
+        } else if (changes > 1) {
+            treeModel.fireStructureChanged(new TreeModelEvent(treeModel, new Object[]{treeModel.getRoot(), this}));
+        }
+        changes = 0;
+        eventPending = null;
+    }
+
+    protected void fire(int type, FileLine fileLine, int index) {
+        changes++;
+        typePending = type;
+        eventPending = new TreeModelEvent(treeModel, new Object[]{treeModel.getRoot(), this}, new int[]{index}, new Object[]{fileLine});
+    }
+
+    /**
+     * adds the file lines of a block of loaded lines to the end of the list.
+     */
+    public void loaded(SourceLine line, SourceLine lineLast) {
+        while (line != null) {
+            if (line.isInvalid() == false && isFileLine(line)) {
+                append(line);
+                fire(INSERTED, last, count - 1);
+            }
+            if (line == lineLast) {
+                break;
             }
+            line = line.getNext();
         }
     }
 
     public void added(SourceLine line) {
-        if (isFileLine(line) == false) {
+        if (mapLines.containsKey(line) || isFileLine(line) == false) {
             return;
         }
         // create a file line and add it to the list.
-        if (first == null) {
-            first = new FileLine(this, line);
-            count++;
-            // fire event here.
-            treeModel.fireInserted(new TreeModelEvent(treeModel, new Object[]{treeModel.getRoot(), this}, new int[]{count - 1}, new Object[]{first}));
-            return;
-        }
-        FileLine fileLine = first;
-        while (fileLine.next != null) {
-            fileLine = fileLine.next;
+        append(line);
+        fire(INSERTED, last, count - 1);
+    }
+
+    @SuppressWarnings("unchecked")
+    protected void append(SourceLine line) {
+        FileLine fileLine;
+
+        fileLine = new FileLine(this, line);
+        if (last == null) {
+            first = fileLine;
+        } else {
+            last.next = fileLine;
+            fileLine.previous = last;
         }
-        fileLine.next = new FileLine(this, line);
+        last = fileLine;
+        mapLines.put(line, fileLine);
         count++;
-        fileLine.next.previous = fileLine;
-        // fire event here.
-        treeModel.fireInserted(new TreeModelEvent(treeModel, new Object[]{treeModel.getRoot(), this}, new int[]{count - 1}, new Object[]{fileLine.next}));
+        index = null;
     }
 
     public void removed(SourceLine line) {
         FileLine fileLine;
+        int indexLine;
 
-        fileLine = first;
-        while (fileLine != null) {
-            if (fileLine.line == line) {
-                // remove this line.
-                if (fileLine.previous == null) {
-                    // this is the first item in the list.
-                    if (fileLine.next == null) {
-                        first = null;
-                    } else {
-                        first = fileLine.next;
-                        first.previous = null;
-                    }
-                    count--;
-                    treeModel.fireRemoved(new TreeModelEvent(treeModel, new Object[]{treeModel.getRoot(), this}, new int[]{count}, new Object[]{fileLine}));
-                    // fire event here.
-                    return;
-                }
-                fileLine.previous.next = fileLine.next;
-                if (fileLine.next != null) {
-                    fileLine.next.previous = fileLine.previous;
-                }
-                count--;
-                treeModel.fireRemoved(new TreeModelEvent(treeModel, new Object[]{treeModel.getRoot(), this}, new int[]{count}, new Object[]{fileLine}));
-                return;
-            }
-            fileLine = fileLine.next;
+        fileLine = (FileLine) mapLines.remove(line);
+        if (fileLine == null) {
+            return;
+        }
+        // after the first change of a batch the whole list is sent again, so
+        // the index is not needed.
+        indexLine = changes == 0 ? getIndex(fileLine) : -1;
+        if (fileLine.previous == null) {
+            first = fileLine.next;
+        } else {
+            fileLine.previous.next = fileLine.next;
         }
+        if (fileLine.next == null) {
+            last = fileLine.previous;
+        } else {
+            fileLine.next.previous = fileLine.previous;
+        }
+        count--;
+        index = null;
+        fire(REMOVED, fileLine, indexLine);
     }
 
     public void changed(SourceLine line) {
@@ -141,40 +197,47 @@ public class NodeFiles extends NodeAbstract implements ListenerParser {
             if (isFileLine(line) == false) {
                 removed(line);
             } else {
-                treeModel.fireStructureChanged(new TreeModelEvent(treeModel, new Object[]{treeModel.getRoot(), this}, new int[]{getIndex(fileLine)}, new Object[]{fileLine}));
+                fire(CHANGED, fileLine, changes == 0 ? getIndex(fileLine) : -1);
             }
         }
     }
 
-    protected int getIndex(FileLine fileLine) {
-        int index = 0;
-        FileLine line = first;
-        while (line != null) {
-            if (line == fileLine) {
-                return index;
+    /**
+     * returns the file lines in order, the array is only made again after
+     * the list changed.
+     */
+    protected FileLine[] getIndex() {
+        FileLine[] lines;
+        FileLine fileLine;
+
+        lines = index;
+        if (lines == null) {
+            lines = new FileLine[count];
+            fileLine = first;
+            for (int x = 0; fileLine != null; x++) {
+                fileLine.index = x;
+                lines[x] = fileLine;
+                fileLine = fileLine.next;
             }
-            line = line.next;
-            index++;
+            index = lines;
         }
-        return index;
+        return lines;
+    }
+
+    protected int getIndex(FileLine fileLine) {
+        getIndex();
+        return fileLine.index;
     }
 
     protected FileLine getFileLine(SourceLine line) {
-        FileLine fileLine = first;
-        while (fileLine != null) {
-            if (fileLine.line == line) {
-                return fileLine;
-            }
-            fileLine = fileLine.next;
-        }
-        return null;
+        return (FileLine) mapLines.get(line);
     }
 
     /**
      * returns true if the block type changed. otherwise false.
      */
     protected boolean isFileLine(SourceLine line) {
-        StringBuffer source;
+        CharSequence source;
         //String buffer;
         char c;
         int start;
@@ -208,14 +271,13 @@ public class NodeFiles extends NodeAbstract implements ListenerParser {
      */
     @Override
     public Object getChild(int index) {
-        FileLine fileLine;
+        FileLine[] lines;
 
-        fileLine = first;
-        while (index > 0 && fileLine != null) {
-            fileLine = fileLine.next;
-            index--;
+        lines = getIndex();
+        if (index < 0 || index >= lines.length) {
+            return null;
         }
-        return fileLine;
+        return lines[index];
     }
 
     /**
@@ -225,16 +287,7 @@ public class NodeFiles extends NodeAbstract implements ListenerParser {
      */
     @Override
     public int getChildCount() {
-        FileLine fileLine;
-        int countX;
-
-        fileLine = first;
-        countX = 0;
-        while (fileLine != null) {
-            countX++;
-            fileLine = fileLine.next;
-        }
-        return countX;
+        return count;
     }
 
     /**
@@ -245,22 +298,15 @@ public class NodeFiles extends NodeAbstract implements ListenerParser {
      */
     @Override
     public int getIndexOfChild(Object child) {
+        FileLine[] lines;
         FileLine fileLine;
-        int index;
 
-        fileLine = first;
-        if (fileLine == null) {
-            return -1;
-        }
-        index = 0;
-        while (fileLine != child) {
-            fileLine = fileLine.next;
-            if (fileLine == null) {
-                return -1;
-            }
-            index++;
+        lines = getIndex();
+        fileLine = (FileLine) child;
+        if (fileLine.index < lines.length && lines[fileLine.index] == fileLine) {
+            return fileLine.index;
         }
-        return index;
+        return -1;
     }
 
     /**
@@ -297,6 +343,7 @@ class FileLine extends NodeAbstract {
     NodeFiles nodeFiles;
     SourceLine line;
     FileLine previous, next;
+    int index;
 
     public FileLine(NodeFiles nodeFiles, SourceLine line) {
         this.nodeFiles = nodeFiles;
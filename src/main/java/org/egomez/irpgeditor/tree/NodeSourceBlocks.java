@@ -36,6 +36,9 @@ abstract public class NodeSourceBlocks extends NodeAbstract implements ListenerP
 
     protected SourceParser parser;
     protected SourceBlock first;
+    // the top level blocks in order.
+    @SuppressWarnings("rawtypes")
+    protected ArrayList children = new ArrayList();
     @SuppressWarnings("rawtypes")
     protected ArrayList listListeners = new ArrayList();
     protected boolean changed;
@@ -69,31 +72,59 @@ abstract public class NodeSourceBlocks extends NodeAbstract implements ListenerP
     }
 
     /**
-     * handles events that occur in the source.
+     * handles events that occur in the source. the blocks are only put in
+     * order again when one of them changed, then the lists of children before
+     * and after are compared to fire an event for each list that changed.
      */
-    @SuppressWarnings("rawtypes")
+    @SuppressWarnings({"rawtypes", "unchecked"})
     @Override
     public void parserEvents(ArrayList listEvents) {
         SourceParserEvent event;
-        SourceBlock blockClone;
+        SourceLine line;
+        IdentityHashMap mapChildren, mapSiblings;
+        ArrayList listRenamed, childrenBefore;
+        SourceBlock block;
 
         changed = false;
-        blockClone = clone(first, null);
+        listRenamed = new ArrayList();
         for (int x = 0; x < listEvents.size(); x++) {
             event = (SourceParserEvent) listEvents.get(x);
             if (event.getType() == SourceParserEvent.CHANGED) {
                 changed(event.getLine());
+                // the name of the block might have changed.
+                block = event.getLine().block;
+                if (block != null && block.lineStart == event.getLine() && listRenamed.contains(block) == false) {
+                    listRenamed.add(block);
+                }
             } else if (event.getType() == SourceParserEvent.ADDED) {
                 added(event.getLine());
             } else if (event.getType() == SourceParserEvent.REMOVED) {
                 removed(event.getLine());
+            } else if (event.getType() == SourceParserEvent.LOADED) {
+                line = event.getLine();
+                while (line != null) {
+                    added(line);
+                    if (line == event.getLastLine()) {
+                        break;
+                    }
+                    line = line.getNext();
+                }
             }
         }
-        shuffle();
         if (changed) {
-            // compare differences and fire change events.
-            //fireStructureChanged();
-            compareChanged(blockClone, first, null);
+            // remember the lists the blocks were in.
+            mapChildren = new IdentityHashMap();
+            mapSiblings = new IdentityHashMap();
+            keep(children, mapChildren, mapSiblings);
+            childrenBefore = children;
+            shuffle();
+            compareChanged(childrenBefore, children, null, mapChildren, mapSiblings);
+        }
+        for (int x = 0; x < listRenamed.size(); x++) {
+            block = (SourceBlock) listRenamed.get(x);
+            if (isInTree(block)) {
+                treeModel.fireChanged(getTreeModelEvent(buildPath(block.parent, true), block.index, block));
+            }
         }
     }
 
@@ -103,52 +134,86 @@ abstract public class NodeSourceBlocks extends NodeAbstract implements ListenerP
 
     abstract public void changed(SourceLine line);
 
-    protected void compareChanged(SourceBlock blockBeforeFirst, SourceBlock blockAfter, SourceBlock blockAfterParent) {
-        SourceBlock blockFound, blockSearch, block, blockAdd, blockBefore;
-        int index = 0;
-
-        blockBefore = blockBeforeFirst;
-        blockSearch = blockAfter;
-        while (blockBefore != null) {
-            // try to find this block in the new tree.
-            blockFound = null;
-            block = blockSearch;
-            searchloop:
-            while (block != null) {
-                if (blockBefore.original == block) {
-                    blockFound = block;
-                    // block was found, are there any blocks added inbetween
-                    // this block and the previous found block?
-                    blockAdd = blockSearch;
-                    while (blockAdd != blockFound) {
-                        treeModel.fireInserted(getTreeModelEvent(buildPath(blockAdd, false), index, blockAdd));
-                        index++;
-                        blockAdd = blockAdd.sibling;
-                    }
-                    blockSearch = blockFound.sibling;
-                    // since blockBefore and block have not changed, its safe to check if any of their
-                    // children have changed.
-                    compareChanged(blockBefore.child, block.child, block);
-                    break searchloop;
+    @SuppressWarnings({"rawtypes", "unchecked"})
+    protected void keep(ArrayList list, IdentityHashMap mapChildren, IdentityHashMap mapSiblings) {
+        SourceBlock block;
+
+        for (int x = 0; x < list.size(); x++) {
+            block = (SourceBlock) list.get(x);
+            mapSiblings.put(block, list);
+            mapChildren.put(block, block.children);
+            keep(block.children, mapChildren, mapSiblings);
+        }
+    }
+
+    /**
+     * fires one event for the blocks removed from a list and one for the
+     * blocks added to it, then compares the children of the blocks that are
+     * in both.
+     */
+    @SuppressWarnings("rawtypes")
+    protected void compareChanged(ArrayList before, ArrayList after, SourceBlock parent, IdentityHashMap mapChildren, IdentityHashMap mapSiblings) {
+        SourceBlock block;
+        int[] indexes;
+        Object[] blocks;
+        int count;
+
+        count = 0;
+        for (int x = 0; x < before.size(); x++) {
+            if (((SourceBlock) before.get(x)).isIn(after) == false) {
+                count++;
+            }
+        }
+        if (count > 0) {
+            indexes = new int[count];
+            blocks = new Object[count];
+            count = 0;
+            for (int x = 0; x < before.size(); x++) {
+                block = (SourceBlock) before.get(x);
+                if (block.isIn(after) == false) {
+                    indexes[count] = x;
+                    blocks[count] = block;
+                    count++;
                 }
-                block = block.sibling;
             }
-            // was a match not found?
-            if (blockFound == null) {
-                // then this block was removed.
-                treeModel.fireRemoved(getTreeModelEvent(buildPath(blockAfterParent, true), index, blockBefore));
-                index--;
+            treeModel.fireRemoved(new TreeModelEvent(treeModel, buildPath(parent, true), indexes, blocks));
+        }
+        count = 0;
+        for (int x = 0; x < after.size(); x++) {
+            if (mapSiblings.get(after.get(x)) != before) {
+                count++;
             }
-            blockBefore = blockBefore.sibling;
-            index++;
         }
-        // check for more in blockAfter after the end of blockBefore 
-        while (blockSearch != null) {
-            // each one of these blocks is new and added.
-            treeModel.fireInserted(getTreeModelEvent(buildPath(blockSearch, false), index, blockSearch));
-            index++;
-            blockSearch = blockSearch.sibling;
+        if (count > 0) {
+            indexes = new int[count];
+            blocks = new Object[count];
+            count = 0;
+            for (int x = 0; x < after.size(); x++) {
+                block = (SourceBlock) after.get(x);
+                if (mapSiblings.get(block) != before) {
+                    indexes[count] = x;
+                    blocks[count] = block;
+                    count++;
+                }
+            }
+            treeModel.fireInserted(new TreeModelEvent(treeModel, buildPath(parent, true), indexes, blocks));
+        }
+        for (int x = 0; x < after.size(); x++) {
+            block = (SourceBlock) after.get(x);
+            if (mapSiblings.get(block) == before) {
+                compareChanged((ArrayList) mapChildren.get(block), block.children, block, mapChildren, mapSiblings);
+            }
+        }
+    }
+
+    /**
+     * returns true if the block is shown in the tree.
+     */
+    protected boolean isInTree(SourceBlock block) {
+        if (block.parent == null) {
+            return block.isIn(children);
         }
+        return block.isIn(block.parent.children) && isInTree(block.parent);
     }
 
     protected TreeModelEvent getTreeModelEvent(Object[] path, int index, SourceBlock block) {
@@ -196,8 +261,11 @@ abstract public class NodeSourceBlocks extends NodeAbstract implements ListenerP
     }
 
     /**
-     * sets up the parent, child, sibling links in the blocks.
+     * sets up the parent, child, sibling links in the blocks and the lists of
+     * children. the lists are new ones, so the ones from before can still be
+     * compared with them.
      */
+    @SuppressWarnings("rawtypes")
     protected void shuffle() {
         SourceLine line;
         SourceBlock current, previous, block;
@@ -206,6 +274,7 @@ abstract public class NodeSourceBlocks extends NodeAbstract implements ListenerP
         current = null;
         previous = null;
         first = null;
+        children = new ArrayList();
         line = parser.getFirst();
         while (line != null && first == null) {
             if (line.block != null) {
@@ -213,6 +282,7 @@ abstract public class NodeSourceBlocks extends NodeAbstract implements ListenerP
                 line.block.child = null;
                 line.block.sibling = null;
                 first = line.block;
+                add(children, first);
                 // is this the end or the start of the block?
                 if (line.position == SourceLine.POSITION_START) {
                     current = first;
@@ -237,11 +307,18 @@ abstract public class NodeSourceBlocks extends NodeAbstract implements ListenerP
                     }
                     block = block.parent;
                 }
+                // the end of a block that is not open here, like a subroutine
+                // that ends after the end of the procedure it starts in, the
+                // block stays where it started.
+                if (foundEnd == false && line.position == SourceLine.POSITION_END && line.block.lineStart != null) {
+                    foundEnd = true;
+                }
                 if (foundEnd == false) {
                     // this is the start of a new block.
                     line.block.parent = current;
                     line.block.child = null;
                     line.block.sibling = null;
+                    add(current == null ? children : current.children, line.block);
 
                     // siblings?
                     if (previous == null) {
@@ -267,27 +344,11 @@ abstract public class NodeSourceBlocks extends NodeAbstract implements ListenerP
         }
     }
 
-    protected SourceBlock clone(SourceBlock blockFirst, SourceBlock blockParent) {
-        SourceBlock blockCloneFirst, blockClone, block;
-        int count = 1;
-
-        if (blockFirst == null) {
-            return null;
-        }
-        blockClone = (SourceBlock) blockFirst.clone();
-        blockClone.parent = blockParent;
-        blockClone.child = clone(blockFirst.child, blockClone);
-        blockCloneFirst = blockClone;
-        block = blockFirst.sibling;
-        while (block != null) {
-            blockClone.sibling = (SourceBlock) block.clone();
-            blockClone = blockClone.sibling;
-            blockClone.parent = blockParent;
-            blockClone.child = clone(block.child, blockClone);
-            block = block.sibling;
-            count++;
-        }
-        return blockCloneFirst;
+    @SuppressWarnings({"rawtypes", "unchecked"})
+    protected void add(ArrayList list, SourceBlock block) {
+        block.children = new ArrayList();
+        block.index = list.size();
+        list.add(block);
     }
 
     protected TreeModelEvent buildEvent(SourceBlock block) {
@@ -320,14 +381,10 @@ abstract public class NodeSourceBlocks extends NodeAbstract implements ListenerP
      * returns the child for the object specified.
      */
     public Object getChild(int index) {
-        SourceBlock block;
-
-        block = first;
-        while (index > 0 && block != null) {
-            block = block.sibling;
-            index--;
+        if (index < 0 || index >= children.size()) {
+            return null;
         }
-        return block;
+        return children.get(index);
     }
 
     /**
@@ -337,16 +394,7 @@ abstract public class NodeSourceBlocks extends NodeAbstract implements ListenerP
      */
     @Override
     public int getChildCount() {
-        SourceBlock block;
-        int count;
-
-        block = first;
-        count = 0;
-        while (block != null) {
-            count++;
-            block = block.sibling;
-        }
-        return count;
+        return children.size();
     }
 
     /**
@@ -354,19 +402,13 @@ abstract public class NodeSourceBlocks extends NodeAbstract implements ListenerP
      */
     public int getIndexOfChild(Object child) {
         SourceBlock block;
-        int index = 0;
 
         block = (SourceBlock) child;
         if (block.parent != null) {
-            return ((SourceBlock) child).indexOfParent();
+            return block.indexOfParent();
         }
-        block = first;
-        while (block != null) {
-            if (block == child) {
-                return index;
-            }
-            index++;
-            block = block.sibling;
+        if (block.isIn(children)) {
+            return block.index;
         }
         return -1;
     }
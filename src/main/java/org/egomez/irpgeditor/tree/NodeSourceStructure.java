@@ -305,30 +305,31 @@ public class NodeSourceStructure extends NodeSourceBlocks implements ListenerPar
      * @param line
      */
     public void blockType(SourceLine line) {
-        StringBuffer source;
+        CharSequence source;
         String buffer;
         char c;
-        int index;
+        int index, start;
 
         source = line.getSourceParser().getText();
+        start = line.getStart();
 
-        if (line.getStart() + 6 >= source.length()) {
+        if (start + 6 >= source.length()) {
             line.type = SourceLine.TYPE_NONE;
             return;
         }
-        if (source.charAt(line.getStart()) == '*'
-                && source.charAt(line.getStart() + 1) == '*') {
+        if (source.charAt(start) == '*'
+                && source.charAt(start + 1) == '*') {
             line.type = SourceLine.TYPE_NONE;
             return;
         }
-        c = source.charAt(line.getStart() + 6);
+        c = source.charAt(start + 6);
         // is comment, directive, sql?
         if (c == '/' || c == '+') {
             line.type = SourceLine.TYPE_NONE;
             return;
         }
         if (c == '*') {
-            c = source.charAt(line.getStart() + 5);
+            c = source.charAt(start + 5);
             if (c == 'A' || c == 'a') {
                 SourceLine next = line.getNext();
                 if (next != null) {
@@ -353,7 +354,7 @@ public class NodeSourceStructure extends NodeSourceBlocks implements ListenerPar
             return;
         }
 
-        c = source.charAt(line.getStart() + 5);
+        c = source.charAt(start + 5);
         if (c == 'C' || c == 'c') {
             buffer = line.get(LinePosition.C_OPERATION).toLowerCase();
             if (buffer.equals("begsr")) {
@@ -376,7 +377,7 @@ public class NodeSourceStructure extends NodeSourceBlocks implements ListenerPar
                 line.position = 0;
                 return;
             }
-            c = source.charAt(line.getStart() + 23);
+            c = source.charAt(start + 23);
             if (c == 'B' || c == 'b') {
                 line.type = SourceLine.TYPE_PROCEDURE;
                 line.position = SourceLine.POSITION_START;
@@ -388,12 +389,12 @@ public class NodeSourceStructure extends NodeSourceBlocks implements ListenerPar
             }
         }
         if (c == 'A' || c == 'a') {
-            if (source.length() <= line.getStart() + 16) {
+            if (source.length() <= start + 16) {
                 line.type = 0;
                 line.position = 0;
                 return;
             }
-            c = source.charAt(line.getStart() + 16);
+            c = source.charAt(start + 16);
             if (c == 'R' || c == 'r') {
                 line.type = SourceLine.TYPE_SCREEN;
                 line.position = SourceLine.POSITION_START;
@@ -426,7 +427,7 @@ public class NodeSourceStructure extends NodeSourceBlocks implements ListenerPar
         }
         // free form?
         if (c == ' ') {
-            buffer = source.substring(line.getStart(), line.getStart() + line.getLength()).trim();
+            buffer = line.getSourceParser().getTextTrimmed(start, start + line.getLength());
             index = buffer.indexOf(' ');
             if (index > -1) {
                 buffer = buffer.substring(0, index);
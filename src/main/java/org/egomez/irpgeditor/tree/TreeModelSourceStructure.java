@@ -141,6 +141,22 @@ public class TreeModelSourceStructure implements TreeModel, ListenerLineParser {
         });
     }
 
+    @SuppressWarnings("rawtypes")
+    public void fireChanged(final TreeModelEvent evt) {
+        final ArrayList temp;
+
+        if (listListeners.isEmpty()) {
+            return;
+        }
+
+        temp = (ArrayList) listListeners.clone();
+        SwingUtilities.invokeLater(() -> {
+            for (int x = 0; x < temp.size(); x++) {
+                ((TreeModelListener) temp.get(x)).treeNodesChanged(evt);
+            }
+        });
+    }
+
     /**
      * listens for events to this model.
      */
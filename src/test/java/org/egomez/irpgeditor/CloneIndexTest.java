@@ -0,0 +1,146 @@
+package org.egomez.irpgeditor;
+
+/*
+ * Copyright:    Copyright (c) 2004
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2, or (at your option)
+ * any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this software; see the file COPYING.  If not, write to
+ * the Free Software Foundation, Inc., 59 Temple Place, Suite 330,
+ * Boston, MA 02111-1307 USA
+ */
+import java.io.*;
+import java.nio.file.*;
+import java.util.*;
+import javax.swing.text.*;
+
+import org.junit.*;
+import static org.junit.Assert.*;
+
+/**
+ * finds the lines of a member in the copy of another member, and checks a
+ * run whose hash matches but whose lines do not is not reported.
+ *
+ * @author Derek Van Kooten.
+ */
+public class CloneIndexTest {
+
+    File directory;
+    CloneIndex index;
+    SourceSnapshot snapshot;
+    int[] windows;
+
+    @Before
+    public void setUp() throws Exception {
+        final PlainDocument document;
+        final SourceParser parser;
+        final SourceSnapshot[] taken;
+        StringBuilder buffer;
+        int[] hashes;
+
+        directory = Files.createTempDirectory("clones").toFile();
+        index = new CloneIndex(directory);
+        buffer = new StringBuilder();
+        for (int x = 0; x < 12; x++) {
+            buffer.append("     C                   EVAL      COUNT").append(x).append(" = ").append(x).append('\n');
+        }
+        document = new PlainDocument();
+        parser = new SourceParser();
+        parser.watch(document);
+        document.addDocumentListener(parser);
+        document.insertString(0, buffer.toString(), null);
+        taken = new SourceSnapshot[1];
+        java.awt.EventQueue.invokeAndWait(new Runnable() {
+            @Override
+            public void run() {
+                taken[0] = parser.getSnapshot();
+            }
+        });
+        snapshot = taken[0];
+        hashes = new int[snapshot.getLineCount()];
+        for (int x = 0; x < hashes.length; x++) {
+            hashes[x] = snapshot.getHash(x);
+        }
+        windows = CloneIndex.windows(hashes, hashes.length, CloneIndex.MIN_LINES);
+    }
+
+    @After
+    public void tearDown() {
+        for (File file : directory.listFiles()) {
+            file.delete();
+        }
+        directory.delete();
+    }
+
+    /**
+     * writes the copy of the other member and puts it in the index with the
+     * runs of this member, as if all its runs had the same hashes.
+     */
+    @SuppressWarnings("unchecked")
+    void other(String text) throws IOException {
+        File file;
+
+        file = new File(directory, "OTHER.RPGLE");
+        Files.write(file.toPath(), text.replace("\n", "\r\n").getBytes("US-ASCII"));
+        index.mapEntries.put("OTHER.RPGLE", new CloneIndex.Entry("OTHER.RPGLE", file.lastModified(), file.length(), windows.clone()));
+        index.build();
+    }
+
+    @SuppressWarnings("rawtypes")
+    @Test
+    public void testSame() throws Exception {
+        ArrayList list;
+        CloneIndex.Clone clone;
+
+        other(snapshot.getText().toString());
+        list = index.find("THIS.RPGLE", windows, snapshot);
+        assertEquals(1, list.size());
+        clone = (CloneIndex.Clone) list.get(0);
+        assertEquals("OTHER.RPGLE", clone.name);
+        assertEquals(0, clone.row);
+        assertEquals(0, clone.rowOther);
+        assertEquals(12, clone.count);
+        // the member itself is left out.
+        assertTrue(index.find("OTHER.RPGLE", windows, snapshot).isEmpty());
+    }
+
+    @Test
+    public void testCollision() throws Exception {
+        StringBuilder buffer;
+
+        buffer = new StringBuilder();
+        for (int x = 0; x < 12; x++) {
+            buffer.append("     C                   EVAL      TOTAL").append(x).append(" = 0\n");
+        }
+        // the hashes say the runs are the same, the lines are not.
+        other(buffer.toString());
+        assertTrue(index.find("THIS.RPGLE", windows, snapshot).isEmpty());
+    }
+
+    @SuppressWarnings("rawtypes")
+    @Test
+    public void testSplit() throws Exception {
+        ArrayList list;
+        String text;
+
+        // one line in the middle is different, the runs before and after it
+        // are still long enough.
+        text = snapshot.getText().toString().replace("COUNT5 = 5", "COUNT5 = 6");
+        other(text);
+        list = index.find("THIS.RPGLE", windows, snapshot);
+        assertEquals(2, list.size());
+        assertEquals(0, ((CloneIndex.Clone) list.get(0)).row);
+        assertEquals(5, ((CloneIndex.Clone) list.get(0)).count);
+        assertEquals(6, ((CloneIndex.Clone) list.get(1)).row);
+        assertEquals(6, ((CloneIndex.Clone) list.get(1)).count);
+    }
+}
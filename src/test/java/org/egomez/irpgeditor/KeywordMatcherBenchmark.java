@@ -0,0 +1,115 @@
+package org.egomez.irpgeditor;
+
+/*
+ * Copyright:    Copyright (c) 2004
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2, or (at your option)
+ * any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this software; see the file COPYING.  If not, write to
+ * the Free Software Foundation, Inc., 59 Temple Place, Suite 330,
+ * Boston, MA 02111-1307 USA
+ */
+import java.util.*;
+import java.util.concurrent.*;
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.*;
+import org.openjdk.jmh.runner.*;
+import org.openjdk.jmh.runner.options.*;
+
+/**
+ * compares looking the words of a free form member up with the keyword
+ * matcher against making a lower case string of every word and looking it
+ * up in the set of keywords, the way the highlighter did it before.
+ *
+ * it is not run by the tests, run it with the test class path:
+ * java org.egomez.irpgeditor.KeywordMatcherBenchmark
+ *
+ * @author Derek Van Kooten.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class KeywordMatcherBenchmark {
+
+    static final String[] LINES = {
+        "       dcl-s count int(10);",
+        "       if %eof(custfile) or count > 100;",
+        "         leave;",
+        "       endif;",
+        "       chain (custno) custrec;",
+        "       eval total = total + amount;",
+        "       exsr calcTax;",
+        "       dow not %eof(custfile);",
+        "         read(e) custfile;",
+        "       enddo;"
+    };
+
+    String text;
+    // the start and end of every word of the text.
+    int[] words;
+
+    @Setup
+    @SuppressWarnings({"rawtypes", "unchecked"})
+    public void setUp() {
+        StringBuilder buffer;
+        ArrayList list;
+        int begin, end;
+
+        buffer = new StringBuilder();
+        for (int x = 0; x < 1000; x++) {
+            buffer.append(LINES[x % LINES.length]).append('\n');
+        }
+        text = buffer.toString();
+        list = new ArrayList();
+        begin = 0;
+        while (begin < text.length()) {
+            while (begin < text.length() && text.charAt(begin) <= ' ') {
+                begin++;
+            }
+            end = begin;
+            while (end < text.length() && text.charAt(end) > ' ') {
+                end++;
+            }
+            if (end > begin) {
+                list.add(begin);
+                list.add(end);
+            }
+            begin = end;
+        }
+        words = new int[list.size()];
+        for (int x = 0; x < words.length; x++) {
+            words[x] = (Integer) list.get(x);
+        }
+    }
+
+    @Benchmark
+    public void matcher(Blackhole blackhole) {
+        for (int x = 0; x < words.length; x += 2) {
+            blackhole.consume(RPGSourceHighlighter.keywords.matches(text, words[x], words[x + 1]));
+        }
+    }
+
+    @Benchmark
+    public void strings(Blackhole blackhole) {
+        for (int x = 0; x < words.length; x += 2) {
+            blackhole.consume(RPGSourceHighlighter.setKeywords.contains(text.substring(words[x], words[x + 1]).trim().toLowerCase(Locale.ROOT)));
+        }
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder().include(KeywordMatcherBenchmark.class.getSimpleName()).build()).run();
+    }
+}
@@ -0,0 +1,144 @@
+package org.egomez.irpgeditor;
+
+/*
+ * Copyright:    Copyright (c) 2004
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2, or (at your option)
+ * any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this software; see the file COPYING.  If not, write to
+ * the Free Software Foundation, Inc., 59 Temple Place, Suite 330,
+ * Boston, MA 02111-1307 USA
+ */
+import java.util.*;
+
+import org.junit.*;
+import static org.junit.Assert.*;
+
+/**
+ * checks that the keyword matcher finds the same words as looking the lower
+ * case string up in the set of keywords, the way the highlighter did it
+ * before, and that the locale does not change what matches.
+ *
+ * @author Derek Van Kooten.
+ */
+public class KeywordMatcherTest {
+
+    static final String CHARS = "abcdefghijklmnopqrstuvwxyzABCDEFGHIJKLMNOPQRSTUVWXYZ()-;*0 \u00e9\u00c9";
+
+    Locale locale;
+
+    @Before
+    public void setUp() {
+        locale = Locale.getDefault();
+    }
+
+    @After
+    public void tearDown() {
+        Locale.setDefault(locale);
+    }
+
+    /**
+     * the lookup the matcher replaced.
+     */
+    @SuppressWarnings("rawtypes")
+    static boolean old(Set words, String text, int start, int end) {
+        return words.contains(text.substring(start, end).toLowerCase(Locale.ROOT));
+    }
+
+    @Test
+    public void testKeywords() {
+        KeywordMatcher matcher;
+        String word;
+
+        matcher = RPGSourceHighlighter.keywords;
+        for (Object o : RPGSourceHighlighter.setKeywords) {
+            word = (String) o;
+            assertTrue(word, matcher.matches(word, 0, word.length()));
+            assertTrue(word, matcher.matches(word.toUpperCase(Locale.ROOT), 0, word.length()));
+            assertTrue(word, matcher.matches("  " + word + ";", 2, word.length() + 2));
+            assertFalse(word, matcher.matches(word + "x", 0, word.length() + 1));
+            assertEquals(word, old(RPGSourceHighlighter.setKeywords, word, 1, word.length()), matcher.matches(word, 1, word.length()));
+        }
+        assertFalse(matcher.matches("", 0, 0));
+        assertFalse(matcher.matches("eval", 2, 1));
+    }
+
+    @Test
+    @SuppressWarnings({"rawtypes", "unchecked"})
+    public void testSameAsOld() {
+        KeywordMatcher matcher;
+        ArrayList words;
+        Random random;
+        String text;
+        int start, end, found;
+
+        matcher = RPGSourceHighlighter.keywords;
+        words = new ArrayList(RPGSourceHighlighter.setKeywords);
+        random = new Random(9);
+        found = 0;
+        for (int x = 0; x < 200000; x++) {
+            if (random.nextBoolean()) {
+                text = mixCase(random, (String) words.get(random.nextInt(words.size())));
+                if (random.nextInt(4) == 0) {
+                    text = text.substring(0, random.nextInt(text.length() + 1)) + CHARS.charAt(random.nextInt(CHARS.length()));
+                }
+            } else {
+                text = random(random, random.nextInt(9));
+            }
+            text = "  " + text + "  ";
+            start = 2;
+            end = text.length() - 2;
+            if (matcher.matches(text, start, end)) {
+                found++;
+            }
+            assertEquals(text, old(RPGSourceHighlighter.setKeywords, text, start, end), matcher.matches(text, start, end));
+        }
+        assertTrue(found > 50000);
+    }
+
+    @Test
+    public void testLocale() {
+        KeywordMatcher matcher;
+
+        Locale.setDefault(new Locale("tr", "TR"));
+        // made under a turkish locale from upper case words.
+        matcher = new KeywordMatcher(Arrays.asList(new String[]{"IF", "ITER", "ENDIF", "CHAIN(E)"}));
+        assertTrue(matcher.matches("if", 0, 2));
+        assertTrue(matcher.matches("IF", 0, 2));
+        assertTrue(matcher.matches("Iter", 0, 4));
+        assertTrue(matcher.matches("endif", 0, 5));
+        assertTrue(matcher.matches("chain(e)", 0, 8));
+        assertFalse(matcher.matches("\u0131f", 0, 2));
+    }
+
+    static String mixCase(Random random, String word) {
+        StringBuilder buffer;
+        char c;
+
+        buffer = new StringBuilder();
+        for (int x = 0; x < word.length(); x++) {
+            c = word.charAt(x);
+            buffer.append(random.nextBoolean() ? Character.toUpperCase(c) : c);
+        }
+        return buffer.toString();
+    }
+
+    static String random(Random random, int length) {
+        StringBuilder buffer;
+
+        buffer = new StringBuilder();
+        for (int x = 0; x < length; x++) {
+            buffer.append(CHARS.charAt(random.nextInt(CHARS.length())));
+        }
+        return buffer.toString();
+    }
+}
@@ -0,0 +1,238 @@
+package org.egomez.irpgeditor;
+
+/*
+ * Copyright:    Copyright (c) 2004
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2, or (at your option)
+ * any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this software; see the file COPYING.  If not, write to
+ * the Free Software Foundation, Inc., 59 Temple Place, Suite 330,
+ * Boston, MA 02111-1307 USA
+ */
+import java.io.*;
+import java.util.*;
+import javax.swing.text.*;
+
+import org.egomez.irpgeditor.event.*;
+import org.junit.*;
+import static org.junit.Assert.*;
+
+/**
+ * checks the sequence numbers a save gives the lines, and when a save sends
+ * only the changed lines and when all of them.
+ *
+ * @author Derek Van Kooten.
+ */
+public class MemberTest {
+
+    static final String[] LINES = {
+        "     C                   EVAL      A = 1",
+        "     C                   EVAL      B = 2",
+        "     C                   EVAL      C = 3",
+        "     C                   RETURN"
+    };
+
+    TestSystem system;
+    Member member;
+    SourceParser parser;
+    PlainDocument document;
+    String home;
+    File directory;
+    boolean saved;
+
+    @Before
+    public void setUp() throws Exception {
+        // the backup of a save is written under the home directory.
+        home = System.getProperty("user.home");
+        directory = File.createTempFile("member", "");
+        directory.delete();
+        new File(directory, ".iRPGEditor").mkdirs();
+        System.setProperty("user.home", directory.getPath());
+        system = new TestSystem();
+        system.setMember(LINES);
+        member = new Member(system, "LIB", "QRPGLESRC", "TEST", "RPGLE", "", "", "");
+    }
+
+    @After
+    public void tearDown() {
+        System.setProperty("user.home", home);
+        new File(directory, ".iRPGEditor" + File.separator + "backup.txt").delete();
+        new File(directory, ".iRPGEditor").delete();
+        directory.delete();
+    }
+
+    /**
+     * loads the member the way the batch conversion does.
+     */
+    void load() throws Exception {
+        parser = new SourceParser();
+        member.getSource(parser);
+        document = new PlainDocument();
+        document.insertString(0, parser.getText().toString(), null);
+        parser.watch(document);
+        document.addDocumentListener(parser);
+    }
+
+    void save() throws Exception {
+        saved = false;
+        system.listSql.clear();
+        member.save(parser, new ListenerSave() {
+            @Override
+            public void lineSaved(int count) {
+            }
+
+            @Override
+            public void saveComplete(int count, boolean status, String errorMessage) {
+                saved = status;
+            }
+        });
+        assertTrue(saved);
+    }
+
+    void insert(int row, String text) throws BadLocationException {
+        document.insertString(parser.getLineForRow(row).getStart(), text + "\n", null);
+    }
+
+    /**
+     * types over the end of the line, the line stays the same line.
+     */
+    void change(int row, String text) throws BadLocationException {
+        SourceLine line;
+
+        line = parser.getLineForRow(row);
+        document.remove(line.getStart() + line.length - 2, 1);
+        document.insertString(line.getStart() + line.length - 1, text, null);
+    }
+
+    void numbers(float... numbers) {
+        SourceLine line;
+
+        line = parser.getFirst();
+        for (int x = 0; x < numbers.length; x++) {
+            assertEquals("row " + (x + 1), numbers[x], line.getNumber(), 0.001);
+            line = line.getNext();
+        }
+        assertNull(line);
+    }
+
+    @Test
+    public void testSequence() {
+        assertEquals("0.00", Member.sequence(0));
+        assertEquals("0.07", Member.sequence(7));
+        assertEquals("1.50", Member.sequence(150));
+        assertEquals("12.00", Member.sequence(1200));
+        assertEquals("9999.99", Member.sequence(Member.SEQUENCE_MAX));
+    }
+
+    @Test
+    public void testNumber() throws Exception {
+        int[] numbers;
+
+        load();
+        insert(1, "     C                   EVAL      X = 0");
+        insert(3, "     C                   EVAL      Y = 1");
+        insert(3, "     C                   EVAL      Y = 2");
+        document.insertString(document.getLength(), "     C                   EVAL      Z = 9\n", null);
+        numbers = new int[parser.getLineCount()];
+        assertTrue(member.number(parser, numbers));
+        assertArrayEquals(new int[]{50, 100, 133, 166, 200, 300, 400, 500}, numbers);
+    }
+
+    @Test
+    public void testNumberGap() throws Exception {
+        int[] numbers;
+
+        system.numbers = new float[]{1, 1.01f, 1.02f, 2};
+        load();
+        insert(2, "     C                   EVAL      X = 0");
+        numbers = new int[parser.getLineCount()];
+        assertFalse(member.number(parser, numbers));
+    }
+
+    @Test
+    public void testRenumber() throws Exception {
+        load();
+        assertEquals("row_number() over (order by srcseq)", member.renumber(parser));
+        insert(1, "     C                   EVAL      X = 0");
+        insert(4, "     C                   EVAL      Y = 1");
+        insert(4, "     C                   EVAL      Y = 2");
+        document.insertString(document.getLength(), "     C                   EVAL      Z = 9\n", null);
+        assertEquals("row_number() over (order by srcseq) + 1 + case when srcseq > 2.00 then 2 else 0 end", member.renumber(parser));
+    }
+
+    @Test
+    public void testDelta() throws Exception {
+        load();
+        change(2, "20");
+        document.remove(parser.getLineForRow(3).getStart(), parser.getLineForRow(3).length);
+        save();
+        assertEquals(1, system.getSql("delete from qtemp/a").size());
+        assertTrue(((String) system.getSql("delete from qtemp/a").get(0)).endsWith("where srcseq = 3.00"));
+        assertEquals(1, system.getSql("update").size());
+        assertTrue(((String) system.getSql("update").get(0)).endsWith("where srcseq = 2.00"));
+        assertTrue(system.getSql("call qgpl/prcupload").isEmpty());
+        numbers(1, 2, 4);
+        assertFalse(parser.getLineForRow(2).isChanged());
+    }
+
+    @Test
+    public void testChangedOnServer() throws Exception {
+        load();
+        change(2, "20");
+        // someone else added a line.
+        system.setMember(new String[]{LINES[0], LINES[1], LINES[2], LINES[3], LINES[3]});
+        system.numbersUploaded = new float[]{1, 2, 3, 4};
+        save();
+        assertTrue(system.getSql("update").isEmpty());
+        assertEquals(1, system.getSql("call qgpl/prcupload").size());
+        // the numbers were read back after the upload, the next save is a
+        // delta again.
+        system.setMember(LINES);
+        change(3, "30");
+        save();
+        assertTrue(system.getSql("call qgpl/prcupload").isEmpty());
+        assertEquals(1, system.getSql("update").size());
+        assertTrue(((String) system.getSql("update").get(0)).endsWith("where srcseq = 3.00"));
+    }
+
+    @Test
+    public void testFullSave() throws Exception {
+        load();
+        member.setDeltaSave(false);
+        document.remove(0, parser.getLineForRow(1).length);
+        insert(2, "     C                   EVAL      X = 0");
+        system.numbersUploaded = new float[]{1, 2, 3, 4};
+        save();
+        assertEquals(1, system.getSql("call qgpl/prcupload").size());
+        numbers(1, 2, 3, 4);
+        assertFalse(parser.getLineForRow(2).isCreated());
+        // the line taken out is not deleted again by the next delta save.
+        member.setDeltaSave(true);
+        system.numbers = system.numbersUploaded;
+        change(1, "20");
+        save();
+        assertTrue(system.getSql("delete from qtemp/a").isEmpty());
+        assertEquals(1, system.getSql("update").size());
+    }
+
+    @Test
+    public void testUploadNotRead() throws Exception {
+        load();
+        member.setDeltaSave(false);
+        // the server has more records than the lines uploaded.
+        system.numbersUploaded = new float[]{1, 2, 3, 4, 5};
+        save();
+        member.setDeltaSave(true);
+        save();
+        assertEquals(1, system.getSql("call qgpl/prcupload").size());
+    }
+}
@@ -0,0 +1,218 @@
+package org.egomez.irpgeditor;
+
+/*
+ * Copyright:    Copyright (c) 2004
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2, or (at your option)
+ * any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this software; see the file COPYING.  If not, write to
+ * the Free Software Foundation, Inc., 59 Temple Place, Suite 330,
+ * Boston, MA 02111-1307 USA
+ */
+import java.awt.*;
+import java.util.*;
+import javax.swing.*;
+import javax.swing.text.*;
+
+import org.junit.*;
+import static org.junit.Assert.*;
+
+/**
+ * styles members in the background and checks every line has the tokens and
+ * the end state it gets when the whole member is tokenized from the top.
+ *
+ * @author Derek Van Kooten.
+ */
+public class RPGSourceHighlighterTest {
+
+    PlainDocument document;
+    SourceParser parser;
+    RPGSourceHighlighter highlighter;
+
+    @Before
+    public void setUp() throws Exception {
+        document = new PlainDocument();
+        parser = new SourceParser();
+        parser.watch(document);
+        document.addDocumentListener(parser);
+        EventQueue.invokeAndWait(new Runnable() {
+            @Override
+            public void run() {
+                highlighter = new RPGSourceHighlighter();
+                highlighter.setTextPane(new JTextPane());
+            }
+        });
+    }
+
+    /**
+     * loads the text the way a member is loaded, then styles all of it.
+     */
+    void load(String text) throws Exception {
+        final String source = text;
+
+        EventQueue.invokeAndWait(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    document.insertString(0, source, null);
+                } catch (BadLocationException e) {
+                    fail(e.toString());
+                }
+                parser.addListener(highlighter);
+                highlighter.addStyle(parser);
+            }
+        });
+        waitForStyles();
+    }
+
+    void edit(final int start, final int length, final String text) throws Exception {
+        EventQueue.invokeAndWait(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    if (length > 0) {
+                        document.remove(start, length);
+                    }
+                    if (text != null) {
+                        document.insertString(start, text, null);
+                    }
+                } catch (BadLocationException e) {
+                    fail(e.toString());
+                }
+            }
+        });
+    }
+
+    /**
+     * waits for the lines that are waiting to be styled and the jobs that
+     * style them.
+     */
+    void waitForStyles() throws Exception {
+        final boolean[] idle = new boolean[1];
+        long end;
+
+        end = System.currentTimeMillis() + 30000;
+        while (System.currentTimeMillis() < end) {
+            EventQueue.invokeAndWait(new Runnable() {
+                @Override
+                public void run() {
+                    synchronized (highlighter) {
+                        idle[0] = highlighter.scheduled == false && highlighter.setPending.isEmpty();
+                    }
+                }
+            });
+            if (idle[0]) {
+                return;
+            }
+            Thread.sleep(10);
+        }
+        fail("the styles were not finished");
+    }
+
+    /**
+     * tokenizes the member from the top and compares each line.
+     */
+    void check() throws Exception {
+        EventQueue.invokeAndWait(new Runnable() {
+            @Override
+            public void run() {
+                RPGSourceTokenizer.Runs runs;
+                SourceLine line;
+                int state, row;
+
+                runs = new RPGSourceTokenizer.Runs();
+                state = RPGSourceTokenizer.STATE_START;
+                row = 0;
+                line = parser.getFirst();
+                while (line != null) {
+                    runs.clear();
+                    state = RPGSourceTokenizer.tokenize(parser.getText(), line.getStart(), line.length, state, runs);
+                    assertArrayEquals("row " + row, runs.toTokens(0, runs.size()), line.getTokens());
+                    assertEquals("row " + row, state, line.getEndState());
+                    row++;
+                    line = line.getNext();
+                }
+            }
+        });
+    }
+
+    static String member(boolean free, int count) {
+        StringBuilder buffer;
+
+        buffer = new StringBuilder();
+        if (free) {
+            buffer.append("**FREE\n");
+        }
+        for (int x = 0; x < count; x++) {
+            if (free) {
+                buffer.append("dcl-s count").append(x).append(" int(10);\n");
+                buffer.append("if count").append(x).append(" > 0; // check it\n");
+                buffer.append("  eval count").append(x).append(" = 0;\n");
+                buffer.append("endif;\n");
+            } else {
+                buffer.append("     D COUNT").append(x).append("          S             10I 0\n");
+                buffer.append("     C                   IF        COUNT").append(x).append(" > 0\n");
+                buffer.append("     C                   EVAL      COUNT").append(x).append(" = 0\n");
+                buffer.append("      * a comment\n");
+            }
+        }
+        return buffer.toString();
+    }
+
+    @Test
+    public void testLargeFreeMember() throws Exception {
+        load(member(true, 250));
+        assertEquals(1001, parser.getLineCount());
+        check();
+    }
+
+    @Test
+    public void testLargeFixedMember() throws Exception {
+        load(member(false, 1000));
+        check();
+    }
+
+    @Test
+    public void testFreeAddedAndRemoved() throws Exception {
+        load(member(false, 1500));
+        // every line below changes its state.
+        edit(0, 0, "**FREE\n");
+        waitForStyles();
+        check();
+        edit(0, 7, null);
+        waitForStyles();
+        check();
+    }
+
+    @Test
+    public void testEdits() throws Exception {
+        Random random;
+        int start;
+
+        load(member(false, 200) + member(true, 50));
+        random = new Random(5);
+        for (int x = 0; x < 40; x++) {
+            start = parser.getLineForRow(random.nextInt(parser.getLineCount()) + 1).getStart();
+            if (random.nextBoolean()) {
+                edit(start, 0, random.nextBoolean() ? "**FREE\n" : "     C                   EVAL      X = 1\n");
+            } else {
+                edit(start, parser.getLineForRow(parser.getRow(start)).length, null);
+            }
+            if (x % 8 == 0) {
+                waitForStyles();
+                check();
+            }
+        }
+        waitForStyles();
+        check();
+    }
+}
@@ -0,0 +1,162 @@
+package org.egomez.irpgeditor;
+
+/*
+ * Copyright:    Copyright (c) 2004
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2, or (at your option)
+ * any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this software; see the file COPYING.  If not, write to
+ * the Free Software Foundation, Inc., 59 Temple Place, Suite 330,
+ * Boston, MA 02111-1307 USA
+ */
+import java.util.*;
+import javax.swing.text.*;
+
+import org.junit.*;
+import static org.junit.Assert.*;
+
+/**
+ * edits a document at random and checks the line index of the parser against
+ * the linked list of lines and the text of the document.
+ *
+ * @author Derek Van Kooten.
+ */
+public class SourceLineIndexTest {
+
+    static final String CHARS = "abc \n\n";
+
+    PlainDocument document;
+    SourceParser parser;
+    Random random;
+
+    @Before
+    public void setUp() {
+        document = new PlainDocument();
+        parser = new SourceParser();
+        parser.watch(document);
+        document.addDocumentListener(parser);
+        random = new Random(1);
+    }
+
+    @Test
+    public void testEmpty() {
+        assertEquals(0, parser.getLineCount());
+        assertNull(parser.getFirst());
+        assertNull(parser.getLast());
+        assertNull(parser.getLine(0));
+    }
+
+    @Test
+    public void testLines() throws BadLocationException {
+        document.insertString(0, "one\ntwo\nthree\n", null);
+        assertEquals(3, parser.getLineCount());
+        assertEquals("two\n", parser.getLineForRow(2).getText());
+        assertEquals(4, parser.getLineForRow(2).getStart());
+        assertSame(parser.getLineForRow(2), parser.getLine(6));
+        assertEquals(3, parser.getRow(9));
+        assertSame(parser.getLineForRow(3), parser.getLast());
+        check();
+    }
+
+    @Test
+    public void testRemovedStart() throws BadLocationException {
+        SourceLine two, three;
+
+        document.insertString(0, "one\ntwo\nthree\nfour\n", null);
+        two = parser.getLineForRow(2);
+        three = parser.getLineForRow(3);
+        document.remove(4, 10);
+        assertTrue(two.isInvalid());
+        // the start the lines had before they were removed.
+        assertEquals(4, two.getStart());
+        assertEquals(8, three.getStart());
+        assertEquals(4, parser.getLineForRow(2).getStart());
+    }
+
+    @Test
+    public void testRandomEdits() throws BadLocationException {
+        int start, length;
+
+        for (int x = 0; x < 3000; x++) {
+            if (document.getLength() > 0 && random.nextInt(3) == 0) {
+                start = random.nextInt(document.getLength());
+                length = random.nextInt(Math.min(20, document.getLength() - start)) + 1;
+                document.remove(start, length);
+            } else {
+                start = random.nextInt(document.getLength() + 1);
+                document.insertString(start, text(random.nextInt(12) + 1), null);
+            }
+            check();
+        }
+    }
+
+    @Test
+    public void testLoaded() {
+        StringBuilder buffer;
+        float[] numbers;
+        int[] dates;
+
+        numbers = new float[5000];
+        dates = new int[5000];
+        buffer = new StringBuilder();
+        for (int x = 0; x < numbers.length; x++) {
+            numbers[x] = x + 1;
+            buffer.append("     C                   EVAL      X = ").append(x).append('\n');
+        }
+        parser.linesLoaded(numbers, dates, buffer);
+        assertEquals(5000, parser.getLineCount());
+        assertEquals(4000, parser.getLineForRow(4000).getNumber(), 0);
+        assertEquals(4321, parser.getRow(parser.getLineForRow(4321).getStart() + 3));
+    }
+
+    String text(int length) {
+        StringBuilder buffer;
+
+        buffer = new StringBuilder();
+        for (int x = 0; x < length; x++) {
+            buffer.append(CHARS.charAt(random.nextInt(CHARS.length())));
+        }
+        return buffer.toString();
+    }
+
+    /**
+     * walks the lines from the first one and compares what the index says
+     * about every line and position with what the walk found.
+     */
+    void check() throws BadLocationException {
+        String text;
+        SourceLine line;
+        int row, start;
+
+        text = document.getText(0, document.getLength());
+        assertEquals(text, parser.getText().toString());
+        row = 0;
+        start = 0;
+        line = parser.getFirst();
+        while (line != null) {
+            assertFalse(line.isInvalid());
+            assertSame(line, parser.getLineForRow(row + 1));
+            assertEquals(start, line.getStart());
+            assertEquals(row, line.getLineIndex());
+            for (int x = start; x < start + line.length; x++) {
+                assertSame(line, parser.getLine(x));
+                assertEquals(row + 1, parser.getRow(x));
+            }
+            start += line.length;
+            row++;
+            line = line.getNext();
+        }
+        assertEquals(row, parser.getLineCount());
+        assertEquals(text.length(), start);
+        assertNull(parser.getLine(start));
+    }
+}
@@ -0,0 +1,215 @@
+package org.egomez.irpgeditor;
+
+/*
+ * Copyright:    Copyright (c) 2004
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2, or (at your option)
+ * any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this software; see the file COPYING.  If not, write to
+ * the Free Software Foundation, Inc., 59 Temple Place, Suite 330,
+ * Boston, MA 02111-1307 USA
+ */
+import java.awt.*;
+import java.util.*;
+import java.util.concurrent.*;
+
+import org.egomez.irpgeditor.event.*;
+import org.junit.*;
+import static org.junit.Assert.*;
+
+/**
+ * checks how the dispatcher cleans up the events and when each kind of
+ * listener gets them.
+ *
+ * @author Derek Van Kooten.
+ */
+public class SourceParserDispatcherTest {
+
+    SourceParserDispatcher dispatcher;
+    SourceParser parser;
+    SourceLine a, b, c;
+
+    @Before
+    public void setUp() {
+        dispatcher = new SourceParserDispatcher();
+        parser = new SourceParser();
+        a = new SourceLine(parser, 2);
+        b = new SourceLine(a, 2);
+        c = new SourceLine(b, 2);
+    }
+
+    @SuppressWarnings({"rawtypes", "unchecked"})
+    static ArrayList list(Object... events) {
+        return new ArrayList(Arrays.asList(events));
+    }
+
+    static SourceParserEvent added(SourceLine line) {
+        return new SourceParserEvent(SourceParserEvent.ADDED, line);
+    }
+
+    static SourceParserEvent changed(SourceLine line) {
+        return new SourceParserEvent(SourceParserEvent.CHANGED, line);
+    }
+
+    static SourceParserEvent removed(SourceLine line) {
+        return new SourceParserEvent(SourceParserEvent.REMOVED, line);
+    }
+
+    /**
+     * returns the type and line of each event, so lists can be compared.
+     */
+    @SuppressWarnings("rawtypes")
+    String describe(ArrayList listEvents) {
+        StringBuilder buffer;
+        SourceParserEvent event;
+
+        buffer = new StringBuilder();
+        for (int x = 0; x < listEvents.size(); x++) {
+            event = (SourceParserEvent) listEvents.get(x);
+            buffer.append(event.type == SourceParserEvent.ADDED ? "+" : event.type == SourceParserEvent.REMOVED ? "-" : "~");
+            buffer.append(event.line == a ? "a" : event.line == b ? "b" : "c");
+        }
+        return buffer.toString();
+    }
+
+    /**
+     * keeps the lists a listener got and the threads it got them on.
+     */
+    class Recorder implements ListenerParser {
+
+        @SuppressWarnings("rawtypes")
+        ArrayList listCalls = new ArrayList();
+        @SuppressWarnings("rawtypes")
+        ArrayList listThreads = new ArrayList();
+        CountDownLatch latch = new CountDownLatch(1);
+
+        @SuppressWarnings({"rawtypes", "unchecked"})
+        @Override
+        public synchronized void parserEvents(ArrayList listEvents) {
+            listCalls.add(describe(listEvents));
+            listThreads.add(Thread.currentThread().getName());
+            latch.countDown();
+        }
+    }
+
+    @Test
+    public void testNow() {
+        Recorder recorder;
+
+        recorder = new Recorder();
+        dispatcher.add(recorder, SourceParserDispatcher.NOW);
+        dispatcher.fire(list(changed(a), changed(a), added(b), changed(b)));
+        dispatcher.fire(list(removed(c)));
+        assertEquals(Arrays.asList("~a+b", "-c"), recorder.listCalls);
+        assertEquals(Thread.currentThread().getName(), recorder.listThreads.get(0));
+    }
+
+    @Test
+    public void testLater() throws Exception {
+        final Recorder recorder;
+
+        recorder = new Recorder();
+        dispatcher.add(recorder, SourceParserDispatcher.LATER);
+        EventQueue.invokeAndWait(new Runnable() {
+            @Override
+            public void run() {
+                dispatcher.fire(list(added(a)));
+                dispatcher.fire(list(changed(b)));
+                dispatcher.fire(list(changed(a), changed(b), removed(c)));
+                assertTrue(recorder.listCalls.isEmpty());
+            }
+        });
+        assertTrue(recorder.latch.await(10, TimeUnit.SECONDS));
+        EventQueue.invokeAndWait(new Runnable() {
+            @Override
+            public void run() {
+            }
+        });
+        // one list for the whole event.
+        assertEquals(Arrays.asList("+a~b-c"), recorder.listCalls);
+        assertTrue(((String) recorder.listThreads.get(0)).startsWith("AWT-EventQueue"));
+    }
+
+    @Test
+    public void testAddedAndRemoved() throws Exception {
+        final Recorder recorder;
+
+        recorder = new Recorder();
+        dispatcher.add(recorder, SourceParserDispatcher.LATER);
+        EventQueue.invokeAndWait(new Runnable() {
+            @Override
+            public void run() {
+                dispatcher.fire(list(added(a), changed(a)));
+                dispatcher.fire(list(removed(a)));
+            }
+        });
+        EventQueue.invokeAndWait(new Runnable() {
+            @Override
+            public void run() {
+            }
+        });
+        // the listener never heard of the line, so it is not called.
+        assertTrue(recorder.listCalls.isEmpty());
+    }
+
+    @Test
+    public void testChangedAndRemoved() {
+        SourceParserDispatcher.Events events;
+
+        events = new SourceParserDispatcher.Events();
+        events.addAll(list(changed(a), changed(b), removed(a)));
+        assertEquals("~b-a", describe(events.take()));
+        assertEquals("", describe(events.take()));
+    }
+
+    @Test
+    public void testWorker() throws Exception {
+        Recorder recorder;
+
+        recorder = new Recorder();
+        dispatcher.add(recorder, SourceParserDispatcher.WORKER);
+        dispatcher.fire(list(added(a), added(b)));
+        assertTrue(recorder.latch.await(10, TimeUnit.SECONDS));
+        synchronized (recorder) {
+            assertEquals("parser events", recorder.listThreads.get(0));
+        }
+    }
+
+    @Test
+    public void testRemove() throws Exception {
+        final Recorder now, later;
+
+        now = new Recorder();
+        later = new Recorder();
+        dispatcher.add(now, SourceParserDispatcher.NOW);
+        dispatcher.add(later, SourceParserDispatcher.LATER);
+        // on the event thread, like the edits, so the events are not sent
+        // before the listener is removed.
+        EventQueue.invokeAndWait(new Runnable() {
+            @Override
+            public void run() {
+                dispatcher.fire(list(changed(a)));
+                dispatcher.remove(now);
+                dispatcher.remove(later);
+                dispatcher.fire(list(changed(b)));
+            }
+        });
+        EventQueue.invokeAndWait(new Runnable() {
+            @Override
+            public void run() {
+            }
+        });
+        assertEquals(Arrays.asList("~a"), now.listCalls);
+        // the events queued before it was removed are not sent either.
+        assertTrue(later.listCalls.isEmpty());
+    }
+}
@@ -0,0 +1,228 @@
+package org.egomez.irpgeditor;
+
+/*
+ * Copyright:    Copyright (c) 2004
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2, or (at your option)
+ * any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this software; see the file COPYING.  If not, write to
+ * the Free Software Foundation, Inc., 59 Temple Place, Suite 330,
+ * Boston, MA 02111-1307 USA
+ */
+import java.util.*;
+import javax.swing.text.*;
+
+import org.egomez.irpgeditor.event.*;
+import org.junit.*;
+import static org.junit.Assert.*;
+
+/**
+ * checks that a bulk edit changes the lines that stay one line where they
+ * are, so the save sends them as changed lines, and fires one list of
+ * events.
+ *
+ * @author Derek Van Kooten.
+ */
+public class SourceParserEditTest {
+
+    PlainDocument document;
+    SourceParser parser;
+    @SuppressWarnings("rawtypes")
+    ArrayList listCalls;
+
+    @Before
+    public void setUp() throws BadLocationException {
+        SourceLine line;
+        int number;
+
+        document = new PlainDocument();
+        parser = new SourceParser();
+        parser.watch(document);
+        document.addDocumentListener(parser);
+        document.insertString(0, "     C                   EVAL      X = 1\n     C                   EVAL      Y = 2\n     C                   EVAL      Z = 3\n     C                   RETURN", null);
+        // the way a member is loaded, numbered and not changed.
+        number = 1;
+        line = parser.getFirst();
+        while (line != null) {
+            line.setNumber(number++);
+            line.setCreated(false);
+            line.setChanged(false);
+            line = line.getNext();
+        }
+        listCalls = new ArrayList();
+        parser.addListener(new ListenerParser() {
+            @SuppressWarnings("unchecked")
+            @Override
+            public void parserEvents(ArrayList listEvents) {
+                listCalls.add(listEvents);
+            }
+        });
+    }
+
+    String text() throws BadLocationException {
+        return document.getText(0, document.getLength());
+    }
+
+    @Test
+    public void testInPlace() throws BadLocationException {
+        SourceLine first, second, third, last;
+
+        first = parser.getLineForRow(1);
+        second = parser.getLineForRow(2);
+        third = parser.getLineForRow(3);
+        last = parser.getLineForRow(4);
+        parser.beginEdit();
+        first.setText("     C                   EVAL      X = 10\n");
+        second.setText("     C                   EVAL(H)   Y = 2\n");
+        third.appendText(" + 1");
+        last.setText("     C                   SETON                                        LR");
+        // the lines keep their text until the edit ends.
+        assertEquals("     C                   EVAL      X = 1\n", first.getText());
+        assertEquals("     C                   EVAL      Z = 3 + 1\n", parser.getEditText(third));
+        parser.endEdit();
+        assertEquals("     C                   EVAL      X = 10\n     C                   EVAL(H)   Y = 2\n     C                   EVAL      Z = 3 + 1\n     C                   SETON                                        LR", text());
+        assertEquals(4, parser.getLineCount());
+        assertSame(first, parser.getLineForRow(1));
+        assertSame(second, parser.getLineForRow(2));
+        assertSame(third, parser.getLineForRow(3));
+        assertSame(last, parser.getLineForRow(4));
+        for (int x = 1; x <= 4; x++) {
+            assertEquals(x, parser.getLineForRow(x).getNumber(), 0);
+            assertTrue(parser.getLineForRow(x).isChanged());
+            assertFalse(parser.getLineForRow(x).isCreated());
+        }
+        assertEquals(1, listCalls.size());
+        for (Object o : (ArrayList) listCalls.get(0)) {
+            assertEquals(SourceParserEvent.CHANGED, ((SourceParserEvent) o).type);
+        }
+    }
+
+    @Test
+    public void testAppend() throws BadLocationException {
+        SourceLine last;
+
+        // the last line has no new line.
+        last = parser.getLineForRow(4);
+        parser.beginEdit();
+        last.appendText(" X");
+        parser.endEdit();
+        assertTrue(text().endsWith("     C                   RETURN X"));
+        last.appendText(" Y");
+        assertTrue(text().endsWith("     C                   RETURN X Y"));
+        // then the last line emptied in the edit.
+        parser.beginEdit();
+        last.setText("");
+        last.appendText("     C                   SETON");
+        parser.endEdit();
+        assertTrue(text().endsWith("     C                   EVAL      Z = 3\n     C                   SETON"));
+        // and a line with a new line.
+        parser.getLineForRow(1).appendText(" + 1");
+        assertTrue(text().startsWith("     C                   EVAL      X = 1 + 1\n     C"));
+    }
+
+    @Test
+    public void testSame() throws BadLocationException {
+        SourceLine line;
+
+        line = parser.getLineForRow(2);
+        parser.beginEdit();
+        line.setText(line.getText());
+        parser.endEdit();
+        assertSame(line, parser.getLineForRow(2));
+        assertFalse(line.isChanged());
+    }
+
+    @Test
+    public void testSplitAndRemove() throws BadLocationException {
+        SourceLine first, second, third;
+
+        first = parser.getLineForRow(1);
+        second = parser.getLineForRow(2);
+        third = parser.getLineForRow(3);
+        parser.beginEdit();
+        parser.beginEdit();
+        first.setText("     C                   EVAL      X = 1\n     C                   EVAL      W = 0\n");
+        parser.endEdit();
+        second.setText("");
+        third.setText("     C                   EVAL      Z = 4\n");
+        // still in the outer edit.
+        assertEquals(4, parser.getLineCount());
+        parser.endEdit();
+        assertEquals("     C                   EVAL      X = 1\n     C                   EVAL      W = 0\n     C                   EVAL      Z = 4\n     C                   RETURN", text());
+        assertEquals(4, parser.getLineCount());
+        assertTrue(second.isInvalid());
+        assertSame(third, parser.getLineForRow(3));
+        assertEquals(3, third.getNumber(), 0);
+        assertTrue(third.isChanged());
+        assertTrue(parser.getLineForRow(2).isCreated());
+        assertEquals(1, listCalls.size());
+    }
+
+    @Test
+    public void testRandom() throws BadLocationException {
+        StringBuilder expected;
+        SourceLine line;
+        Random random;
+        String text;
+        int count;
+
+        for (int x = 0; x < 200; x++) {
+            document.insertString(0, "     C                   EVAL      A" + x + " = " + x + "\n", null);
+        }
+        random = new Random(3);
+        for (int pass = 0; pass < 20; pass++) {
+            expected = new StringBuilder();
+            parser.beginEdit();
+            line = parser.getFirst();
+            while (line != null) {
+                text = line.getText();
+                switch (random.nextInt(6)) {
+                    case 0:
+                        text = text.replace('=', '+');
+                        line.setText(text);
+                        break;
+                    case 1:
+                        if (text.endsWith("\n")) {
+                            line.appendText(" x");
+                            text = text.substring(0, text.length() - 1) + " x\n";
+                        }
+                        break;
+                    case 2:
+                        if (text.endsWith("\n") && parser.getLineCount() > 50) {
+                            text = "";
+                            line.setText(text);
+                        }
+                        break;
+                    case 3:
+                        if (text.endsWith("\n")) {
+                            text = text + "     C                   EXSR      NEW\n";
+                            line.setText(text);
+                        }
+                        break;
+                    default:
+                }
+                expected.append(text);
+                line = line.getNext();
+            }
+            parser.endEdit();
+            assertEquals(expected.toString(), text());
+            count = 0;
+            line = parser.getFirst();
+            while (line != null) {
+                assertEquals(line.getStart(), expected.indexOf(line.getText(), line.getStart()));
+                count++;
+                line = line.getNext();
+            }
+            assertEquals(count, parser.getLineCount());
+        }
+    }
+}
@@ -0,0 +1,150 @@
+package org.egomez.irpgeditor;
+
+/*
+ * Copyright:    Copyright (c) 2004
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2, or (at your option)
+ * any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this software; see the file COPYING.  If not, write to
+ * the Free Software Foundation, Inc., 59 Temple Place, Suite 330,
+ * Boston, MA 02111-1307 USA
+ */
+import java.awt.*;
+import javax.swing.text.*;
+
+import org.junit.*;
+import static org.junit.Assert.*;
+
+/**
+ * checks that a snapshot keeps the source as it was when it was taken, and
+ * that other threads get it without waiting for the event thread.
+ *
+ * @author Derek Van Kooten.
+ */
+public class SourceSnapshotTest {
+
+    PlainDocument document;
+    SourceParser parser;
+
+    @Before
+    public void setUp() throws Exception {
+        document = new PlainDocument();
+        parser = new SourceParser();
+        parser.watch(document);
+        document.addDocumentListener(parser);
+        document.insertString(0, "     C                   EVAL      X = 1\n     c                   eval      x = 1\n     C                   ENDSR\n", null);
+    }
+
+    SourceSnapshot take() throws Exception {
+        final SourceSnapshot[] snapshot = new SourceSnapshot[1];
+
+        EventQueue.invokeAndWait(new Runnable() {
+            @Override
+            public void run() {
+                snapshot[0] = parser.getSnapshot();
+            }
+        });
+        return snapshot[0];
+    }
+
+    @Test
+    public void testLines() throws Exception {
+        SourceSnapshot snapshot;
+
+        snapshot = take();
+        assertEquals(3, snapshot.getLineCount());
+        assertEquals(0, snapshot.getStart(0));
+        assertEquals(41, snapshot.getStart(1));
+        assertEquals(41, snapshot.getLength(0));
+        assertEquals("     C                   ENDSR\n", snapshot.getLineText(2));
+        assertSame(parser.getLineForRow(2), snapshot.getLine(1));
+        assertEquals('C', snapshot.getSpec(0));
+        assertEquals("ENDSR", snapshot.get(2, LinePosition.C_OPERATION));
+        assertSame(snapshot, take());
+    }
+
+    @Test
+    public void testUnchangedByEdits() throws Exception {
+        SourceSnapshot snapshot;
+        String text;
+
+        snapshot = take();
+        text = snapshot.getText().toString();
+        document.insertString(0, "**FREE\n", null);
+        document.remove(20, 30);
+        assertFalse(snapshot.isCurrent());
+        assertEquals(text, snapshot.getText().toString());
+        assertEquals(3, snapshot.getLineCount());
+        assertEquals("     C                   ENDSR\n", snapshot.getLineText(2));
+        assertNotSame(snapshot, take());
+        assertTrue(take().isCurrent());
+    }
+
+    @Test
+    public void testOtherThread() throws Exception {
+        SourceSnapshot snapshot;
+
+        // nothing was taken yet, the thread does not wait for one.
+        assertNull(parser.getSnapshot());
+        snapshot = take();
+        assertSame(snapshot, parser.getSnapshot());
+        document.insertString(0, " ", null);
+        assertNull(parser.getSnapshot());
+    }
+
+    @Test
+    public void testHashes() throws Exception {
+        final SourceSnapshot snapshot;
+        final int[] hashes;
+        Thread[] threads;
+
+        snapshot = take();
+        assertTrue(snapshot.isSame(0, 1));
+        assertFalse(snapshot.isSame(0, 2));
+        assertEquals(snapshot.getHash(0), snapshot.getHash(1));
+        assertTrue(snapshot.getHash(0) != snapshot.getHash(2));
+        // the snapshot is not changed by asking for a hash.
+        for (int row = 0; row < 3; row++) {
+            assertEquals(0, snapshot.hashes[row]);
+        }
+        hashes = new int[3];
+        threads = new Thread[4];
+        for (int x = 0; x < threads.length; x++) {
+            threads[x] = new Thread() {
+                @Override
+                public void run() {
+                    for (int row = 0; row < 3; row++) {
+                        assertEquals(SourceSnapshot.hash(snapshot.getText(), snapshot.getStart(row), snapshot.getStart(row + 1)),
+                                snapshot.getHash(row));
+                    }
+                }
+            };
+            threads[x].start();
+        }
+        for (int x = 0; x < threads.length; x++) {
+            threads[x].join();
+        }
+        for (int row = 0; row < 3; row++) {
+            hashes[row] = snapshot.getHash(row);
+        }
+        EventQueue.invokeAndWait(new Runnable() {
+            @Override
+            public void run() {
+                parser.keepHashes(snapshot, hashes);
+            }
+        });
+        // the next snapshot starts with the hashes that were kept.
+        document.insertString(document.getLength(), "     C                   RETURN\n", null);
+        assertEquals(hashes[1], take().hashes[1]);
+        assertEquals(0, take().hashes[3]);
+    }
+}
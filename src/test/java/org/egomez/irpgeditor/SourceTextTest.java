@@ -0,0 +1,151 @@
+package org.egomez.irpgeditor;
+
+/*
+ * Copyright:    Copyright (c) 2004
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2, or (at your option)
+ * any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this software; see the file COPYING.  If not, write to
+ * the Free Software Foundation, Inc., 59 Temple Place, Suite 330,
+ * Boston, MA 02111-1307 USA
+ */
+import java.util.*;
+
+import org.junit.*;
+import static org.junit.Assert.*;
+
+/**
+ * edits the piece table at random next to a StringBuilder and checks they
+ * have the same text, and that a frozen copy keeps its text.
+ *
+ * @author Derek Van Kooten.
+ */
+public class SourceTextTest {
+
+    SourceText text;
+    StringBuilder expected;
+    Random random;
+
+    @Before
+    public void setUp() {
+        text = new SourceText();
+        expected = new StringBuilder();
+        random = new Random(3);
+    }
+
+    @Test
+    public void testAppend() {
+        text.append("     C                   EVAL      X = 1", 5, 6);
+        text.append('\n');
+        text.append("**FREE", 0, 6);
+        assertEquals("C\n**FREE", text.toString());
+        assertEquals(8, text.length());
+        assertEquals('F', text.charAt(4));
+        assertEquals("\n**", text.substring(1, 4));
+    }
+
+    @Test
+    public void testTyping() {
+        for (int x = 0; x < 10000; x++) {
+            text.insert(x, "x");
+        }
+        text.insert(5000, "\n");
+        assertEquals(10001, text.length());
+        assertEquals('\n', text.charAt(5000));
+        assertEquals("xx\nxx", text.substring(4998, 5003));
+    }
+
+    @Test
+    public void testRandomEdits() {
+        int start, end;
+        String string;
+
+        for (int x = 0; x < 5000; x++) {
+            if (expected.length() > 0 && random.nextInt(3) == 0) {
+                start = random.nextInt(expected.length());
+                end = start + random.nextInt(Math.min(50, expected.length() - start) + 1);
+                text.delete(start, end);
+                expected.delete(start, end);
+            } else {
+                start = random.nextInt(expected.length() + 1);
+                string = string(random.nextInt(30) + 1);
+                text.insert(start, string);
+                expected.insert(start, string);
+            }
+            if (x % 50 == 0) {
+                check();
+            }
+        }
+        check();
+    }
+
+    @Test
+    public void testFreeze() {
+        CharSequence frozen;
+        String before;
+
+        for (int x = 0; x < 200; x++) {
+            text.insert(random.nextInt(text.length() + 1), string(10));
+        }
+        before = text.toString();
+        frozen = text.freeze();
+        for (int x = 0; x < 200; x++) {
+            text.insert(random.nextInt(text.length() + 1), string(10));
+            text.delete(0, 5);
+        }
+        assertEquals(before, frozen.toString());
+        assertEquals(before.length(), frozen.length());
+        for (int x = 0; x < before.length(); x++) {
+            assertEquals(before.charAt(x), frozen.charAt(x));
+        }
+        assertEquals(before.substring(100, 300), frozen.subSequence(100, 300).toString());
+    }
+
+    @Test
+    public void testSubSequence() {
+        CharSequence view;
+
+        text.insert(0, "hello world");
+        text.insert(5, ",");
+        view = text.subSequence(3, 9);
+        assertEquals("lo, wo", view.toString());
+        assertEquals(6, view.length());
+        assertEquals(',', view.charAt(2));
+        assertEquals(", w", view.subSequence(2, 5).toString());
+    }
+
+    String string(int length) {
+        StringBuilder buffer;
+
+        buffer = new StringBuilder();
+        for (int x = 0; x < length; x++) {
+            buffer.append((char) ('a' + random.nextInt(26)));
+        }
+        return buffer.toString();
+    }
+
+    void check() {
+        char[] chars;
+
+        assertEquals(expected.length(), text.length());
+        assertEquals(expected.toString(), text.toString());
+        for (int x = 0; x < expected.length(); x += 7) {
+            assertEquals(expected.charAt(x), text.charAt(x));
+        }
+        if (expected.length() > 10) {
+            assertEquals(expected.substring(3, expected.length() - 3), text.substring(3, text.length() - 3));
+            chars = new char[expected.length() - 6];
+            text.getChars(3, expected.length() - 3, chars, 0);
+            assertEquals(expected.substring(3, expected.length() - 3), new String(chars));
+        }
+    }
+}
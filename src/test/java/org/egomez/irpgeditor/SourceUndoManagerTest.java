@@ -0,0 +1,184 @@
+package org.egomez.irpgeditor;
+
+/*
+ * Copyright:    Copyright (c) 2004
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2, or (at your option)
+ * any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this software; see the file COPYING.  If not, write to
+ * the Free Software Foundation, Inc., 59 Temple Place, Suite 330,
+ * Boston, MA 02111-1307 USA
+ */
+import java.awt.*;
+import javax.swing.event.*;
+import javax.swing.text.*;
+
+import org.junit.*;
+import static org.junit.Assert.*;
+
+/**
+ * checks how the undo manager puts edits together and keeps the history
+ * under its budget.
+ *
+ * @author Derek Van Kooten.
+ */
+public class SourceUndoManagerTest {
+
+    PlainDocument document;
+    SourceUndoManager undoManager;
+
+    @Before
+    public void setUp() {
+        document = new PlainDocument();
+        undoManager = new SourceUndoManager();
+        document.addUndoableEditListener(new UndoableEditListener() {
+            @Override
+            public void undoableEditHappened(UndoableEditEvent evt) {
+                undoManager.addEdit(evt.getEdit());
+            }
+        });
+    }
+
+    /**
+     * types the text a character at a time, each one in its own event.
+     */
+    void type(String text) throws BadLocationException {
+        for (int x = 0; x < text.length(); x++) {
+            document.insertString(document.getLength(), text.substring(x, x + 1), null);
+        }
+    }
+
+    String text() throws BadLocationException {
+        return document.getText(0, document.getLength());
+    }
+
+    @Test
+    public void testWords() throws BadLocationException {
+        type("eval x = 1");
+        undoManager.undo();
+        assertEquals("eval x = ", text());
+        undoManager.undo();
+        assertEquals("eval x ", text());
+        undoManager.undo();
+        assertEquals("eval ", text());
+        undoManager.undo();
+        assertEquals("", text());
+        assertFalse(undoManager.canUndo());
+        undoManager.redo();
+        assertEquals("eval ", text());
+    }
+
+    @Test
+    public void testNewLine() throws BadLocationException {
+        type("read\nwrite");
+        undoManager.undo();
+        assertEquals("read\n", text());
+        undoManager.undo();
+        assertEquals("read", text());
+    }
+
+    @Test
+    public void testBackspace() throws BadLocationException {
+        type("chain");
+        for (int x = 4; x >= 2; x--) {
+            document.remove(x, 1);
+        }
+        assertEquals("ch", text());
+        undoManager.undo();
+        assertEquals("chain", text());
+        undoManager.undo();
+        assertEquals("", text());
+    }
+
+    @Test
+    public void testOneEvent() throws Exception {
+        type("old text");
+        EventQueue.invokeAndWait(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    // a paste over the selection.
+                    document.remove(0, 3);
+                    document.insertString(0, "new", null);
+                } catch (BadLocationException e) {
+                    fail(e.toString());
+                }
+            }
+        });
+        assertEquals("new text", text());
+        undoManager.undo();
+        assertEquals("old text", text());
+    }
+
+    @Test
+    public void testCompound() throws BadLocationException {
+        type("a b c");
+        undoManager.beginCompound("Refactor");
+        document.remove(0, 1);
+        document.insertString(0, "x", null);
+        undoManager.beginCompound("Inner");
+        document.insertString(document.getLength(), " d", null);
+        undoManager.endCompound();
+        document.remove(2, 1);
+        undoManager.endCompound();
+        assertEquals("x  c d", text());
+        assertEquals("Undo Refactor", undoManager.getUndoPresentationName());
+        undoManager.undo();
+        assertEquals("a b c", text());
+        undoManager.redo();
+        assertEquals("x  c d", text());
+        // the next edit is not added to the compound edit.
+        type("e");
+        undoManager.undo();
+        assertEquals("x  c d", text());
+    }
+
+    @Test
+    public void testBudget() throws BadLocationException {
+        int size;
+
+        type("x");
+        size = (int) undoManager.getSize();
+        assertTrue(size > 0);
+        undoManager.setBudget(SourceUndoManager.OVERHEAD * 20);
+        for (int x = 0; x < 100; x++) {
+            document.insertString(0, "line " + x + "\n", null);
+        }
+        assertTrue(undoManager.getSize() <= undoManager.getBudget());
+        // the oldest edits were dropped, the newest ones can still be undone.
+        for (int x = 0; x < 10; x++) {
+            undoManager.undo();
+        }
+        assertTrue(text().startsWith("line 89\n"));
+        while (undoManager.canUndo()) {
+            undoManager.undo();
+        }
+        assertTrue(text().length() > 1);
+        undoManager.discardAllEdits();
+        assertEquals(0, undoManager.getSize());
+    }
+
+    @Test
+    public void testNewestKept() throws BadLocationException {
+        StringBuilder buffer;
+
+        undoManager.setBudget(10);
+        buffer = new StringBuilder();
+        for (int x = 0; x < 1000; x++) {
+            buffer.append("more than the budget ");
+        }
+        document.insertString(0, buffer.toString(), null);
+        assertTrue(undoManager.canUndo());
+        undoManager.undo();
+        assertEquals("", text());
+    }
+}
@@ -0,0 +1,189 @@
+package org.egomez.irpgeditor;
+
+/*
+ * Copyright:    Copyright (c) 2004
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2, or (at your option)
+ * any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this software; see the file COPYING.  If not, write to
+ * the Free Software Foundation, Inc., 59 Temple Place, Suite 330,
+ * Boston, MA 02111-1307 USA
+ */
+import java.lang.reflect.*;
+import java.math.*;
+import java.sql.*;
+import java.util.*;
+
+import org.egomez.irpgeditor.event.*;
+
+/**
+ * a system for the tests that is not connected to a server. the member is
+ * loaded from the lines set here, the statements sent are kept and the
+ * queries a save makes are answered from the numbers set here.
+ *
+ * @author Derek Van Kooten.
+ */
+public class TestSystem extends AS400System {
+
+    // the member on the server.
+    public float[] numbers = new float[0];
+    public String[] lines = new String[0];
+    // the sequence numbers the server has after an upload.
+    public float[] numbersUploaded;
+    @SuppressWarnings("rawtypes")
+    public ArrayList listSql = new ArrayList();
+
+    public TestSystem() {
+    }
+
+    /**
+     * sets the member on the server, numbered 1, 2, 3...
+     */
+    public void setMember(String[] lines) {
+        this.lines = lines;
+        numbers = new float[lines.length];
+        for (int x = 0; x < lines.length; x++) {
+            numbers[x] = x + 1;
+        }
+    }
+
+    @Override
+    protected int getSource(String library, String file, String member, SourceLoader sourceLoader) throws SQLException {
+        StringBuilder buffer;
+
+        buffer = new StringBuilder();
+        for (int x = 0; x < lines.length; x++) {
+            buffer.append(lines[x]).append('\n');
+        }
+        sourceLoader.linesLoaded(numbers.clone(), new int[lines.length], buffer);
+        return 1;
+    }
+
+    @Override
+    public int getSourceFileRecordLength(String library, String file) throws SQLException {
+        return 100;
+    }
+
+    @Override
+    public String getName() {
+        return "TEST";
+    }
+
+    @Override
+    public Connection getConnection() throws SQLException {
+        return (Connection) proxy(Connection.class);
+    }
+
+    /**
+     * returns the sql sent that starts with the text.
+     */
+    @SuppressWarnings({"rawtypes", "unchecked"})
+    public ArrayList getSql(String start) {
+        ArrayList list;
+
+        list = new ArrayList();
+        for (int x = 0; x < listSql.size(); x++) {
+            if (((String) listSql.get(x)).toLowerCase(Locale.ROOT).startsWith(start)) {
+                list.add(listSql.get(x));
+            }
+        }
+        return list;
+    }
+
+    /**
+     * returns the rows for a query.
+     */
+    Object[][] query(String sql) {
+        Object[][] rows;
+        float last;
+
+        if (sql.startsWith("select count(*)")) {
+            last = 0;
+            for (int x = 0; x < numbers.length; x++) {
+                last = Math.max(last, numbers[x]);
+            }
+            return new Object[][]{{numbers.length, decimal(last)}};
+        }
+        if (sql.startsWith("select srcseq")) {
+            rows = new Object[numbersUploaded.length][];
+            for (int x = 0; x < rows.length; x++) {
+                rows[x] = new Object[]{decimal(numbersUploaded[x])};
+            }
+            return rows;
+        }
+        throw new IllegalArgumentException(sql);
+    }
+
+    static BigDecimal decimal(float number) {
+        return new BigDecimal(Math.round(number * 100)).movePointLeft(2);
+    }
+
+    Object proxy(Class type) {
+        return Proxy.newProxyInstance(getClass().getClassLoader(), new Class[]{type}, new Handler(null));
+    }
+
+    /**
+     * answers the calls on the connection, the statements and the result
+     * sets.
+     */
+    class Handler implements InvocationHandler {
+
+        Object[][] rows;
+        int row = -1;
+
+        Handler(Object[][] rows) {
+            this.rows = rows;
+        }
+
+        @SuppressWarnings("unchecked")
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) {
+            String name;
+
+            name = method.getName();
+            if (name.equals("createStatement")) {
+                return proxy(Statement.class);
+            }
+            if (name.equals("execute")) {
+                listSql.add(args[0]);
+                return false;
+            }
+            if (name.equals("executeQuery")) {
+                listSql.add(args[0]);
+                return Proxy.newProxyInstance(getClass().getClassLoader(), new Class[]{ResultSet.class}, new Handler(query((String) args[0])));
+            }
+            if (name.equals("next")) {
+                row++;
+                return row < rows.length;
+            }
+            if (name.equals("getInt")) {
+                return ((Number) rows[row][(Integer) args[0] - 1]).intValue();
+            }
+            if (name.equals("getBigDecimal")) {
+                return rows[row][(Integer) args[0] - 1];
+            }
+            if (name.equals("hashCode")) {
+                return System.identityHashCode(proxy);
+            }
+            if (name.equals("equals")) {
+                return proxy == args[0];
+            }
+            if (method.getReturnType() == boolean.class) {
+                return false;
+            }
+            if (method.getReturnType() == int.class) {
+                return 0;
+            }
+            return null;
+        }
+    }
+}
@@ -0,0 +1,138 @@
+package org.egomez.irpgeditor.refactor;
+
+/*
+ * Copyright:    Copyright (c) 2004
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2, or (at your option)
+ * any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this software; see the file COPYING.  If not, write to
+ * the Free Software Foundation, Inc., 59 Temple Place, Suite 330,
+ * Boston, MA 02111-1307 USA
+ */
+import java.io.*;
+import java.nio.charset.*;
+import java.nio.file.*;
+import java.util.*;
+
+import org.egomez.irpgeditor.*;
+import org.junit.*;
+import static org.junit.Assert.*;
+
+/**
+ * converts a fixture member to a directory and back to the member, and
+ * checks what is written.
+ *
+ * @author Derek Van Kooten.
+ */
+public class BatchFreeFormTest {
+
+    TestSystem system;
+    File directory;
+    String home;
+
+    @Before
+    public void setUp() throws IOException {
+        system = new TestSystem();
+        system.setMember(read("FIXTURE.rpgle").split("\n"));
+        directory = Files.createTempDirectory("free").toFile();
+        // the backup of a save is written under the home directory.
+        home = System.getProperty("user.home");
+        new File(directory, ".iRPGEditor").mkdir();
+        System.setProperty("user.home", directory.getPath());
+    }
+
+    @After
+    public void tearDown() {
+        System.setProperty("user.home", home);
+        delete(directory);
+    }
+
+    void delete(File file) {
+        if (file.isDirectory()) {
+            for (File child : file.listFiles()) {
+                delete(child);
+            }
+        }
+        file.delete();
+    }
+
+    String read(String name) throws IOException {
+        InputStream input;
+        ByteArrayOutputStream output;
+        byte[] buffer;
+        int count;
+
+        input = getClass().getResourceAsStream(name);
+        output = new ByteArrayOutputStream();
+        buffer = new byte[4096];
+        while ((count = input.read(buffer)) != -1) {
+            output.write(buffer, 0, count);
+        }
+        input.close();
+        return new String(output.toByteArray(), StandardCharsets.US_ASCII);
+    }
+
+    static Member member(TestSystem system, String name) {
+        return new Member(system, "LIB", "QRPGLESRC", name, "RPGLE", "", "", "");
+    }
+
+    @SuppressWarnings({"rawtypes", "unchecked"})
+    @Test
+    public void testDirectory() throws Exception {
+        BatchFreeForm batch;
+        ArrayList listMembers, listResults;
+        BatchFreeForm.Result result;
+        String text;
+
+        listMembers = new ArrayList();
+        listMembers.add(member(system, "FIXTURE"));
+        listMembers.add(member(system, "OTHER"));
+        batch = new BatchFreeForm(2);
+        batch.setDirectory(directory);
+        listResults = batch.convert(listMembers);
+        assertEquals(2, listResults.size());
+        result = (BatchFreeForm.Result) listResults.get(0);
+        assertTrue(result.toString(), result.isOk());
+        assertSame(listMembers.get(0), result.member);
+        assertEquals(system.lines.length, result.lines);
+        // nothing is sent to the member.
+        assertTrue(system.getSql("call").isEmpty());
+        assertTrue(system.getSql("update").isEmpty());
+
+        text = new String(Files.readAllBytes(new File(directory, "FIXTURE.RPGLE").toPath()), StandardCharsets.US_ASCII);
+        assertTrue(new File(directory, "OTHER.RPGLE").exists());
+        // written with the line ends of the pc.
+        assertFalse(text.replace("\r\n", "").contains("\n"));
+        assertEquals(read("FIXTURE.free.rpgle"), text.replace("\r\n", "\n"));
+    }
+
+    @SuppressWarnings({"rawtypes", "unchecked"})
+    @Test
+    public void testMember() throws Exception {
+        BatchFreeForm batch;
+        ArrayList listMembers, listResults;
+        BatchFreeForm.Result result;
+
+        listMembers = new ArrayList();
+        listMembers.add(member(system, "FIXTURE"));
+        system.numbersUploaded = new float[system.lines.length];
+        batch = new BatchFreeForm(1);
+        listResults = batch.convert(listMembers);
+        result = (BatchFreeForm.Result) listResults.get(0);
+        assertTrue(result.toString(), result.isOk());
+        // the member is uploaded whole, not changed line by line.
+        assertEquals(1, system.getSql("call qgpl/prcupload").size());
+        assertTrue(((String) system.getSql("call qgpl/prcupload").get(0)).contains("if TOTAL > 50;"));
+        assertTrue(system.getSql("update").isEmpty());
+        assertTrue(system.getSql("select count(*)").isEmpty());
+    }
+}
@@ -0,0 +1,105 @@
+package org.egomez.irpgeditor.refactor;
+
+/*
+ * Copyright:    Copyright (c) 2004
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2, or (at your option)
+ * any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this software; see the file COPYING.  If not, write to
+ * the Free Software Foundation, Inc., 59 Temple Place, Suite 330,
+ * Boston, MA 02111-1307 USA
+ */
+import javax.swing.text.*;
+
+import org.egomez.irpgeditor.*;
+import org.junit.*;
+import static org.junit.Assert.*;
+
+/**
+ * moves lines into a subroutine and checks the exsr is put where the lines
+ * were.
+ *
+ * @author Derek Van Kooten.
+ */
+public class RefactorSubroutineTest {
+
+    static final String SOURCE = "     C                   EVAL      A = 1\n"
+            + "     C                   EVAL      B = 2\n"
+            + "     C                   EVAL      C = 3\n"
+            + "     C                   RETURN\n"
+            + "     OQPRINT    E            LINE\n";
+
+    PlainDocument document;
+    SourceParser parser;
+
+    @Before
+    public void setUp() throws BadLocationException {
+        document = new PlainDocument();
+        parser = new SourceParser();
+        parser.watch(document);
+        document.addDocumentListener(parser);
+        document.insertString(0, SOURCE, null);
+    }
+
+    String text() throws BadLocationException {
+        return document.getText(0, document.getLength());
+    }
+
+    /**
+     * returns the start and end of the rows, one based.
+     */
+    int[] range(int from, int to) {
+        SourceLine line;
+
+        line = parser.getLineForRow(to);
+        return new int[]{parser.getLineForRow(from).getStart(), (line.getStart() + line.getLength()) - 1};
+    }
+
+    @Test
+    public void testCallSubroutine() throws BadLocationException {
+        int[] range;
+
+        range = range(2, 3);
+        new RefactorCallSubroutine() {
+            @Override
+            protected String askName() {
+                return "CALC";
+            }
+        }.refactor(parser, range[0], range[1]);
+        assertEquals("     C                   EVAL      A = 1\n"
+                + "     C                   exsr      CALC\n"
+                + "     C                   RETURN\n"
+                + "     OQPRINT    E            LINE\n", text());
+    }
+
+    @Test
+    public void testNewSubroutine() throws BadLocationException {
+        int[] range;
+        String text;
+
+        range = range(2, 3);
+        new RefactorNewSubroutine() {
+            @Override
+            protected String askName() {
+                return "CALC";
+            }
+        }.refactor(parser, range[0], range[1]);
+        text = text();
+        assertTrue(text, text.startsWith("     C                   EVAL      A = 1\n"
+                + "     C                   exsr      CALC\n"
+                + "     C                   RETURN\n"));
+        assertTrue(text, text.contains("     C                   EVAL      B = 2\n"
+                + "     C                   EVAL      C = 3\n"
+                + "     C                   endsr\n"
+                + "     OQPRINT    E            LINE\n"));
+    }
+}
@@ -0,0 +1,80 @@
+package org.egomez.irpgeditor.tree;
+
+/*
+ * Copyright:    Copyright (c) 2004
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2, or (at your option)
+ * any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this software; see the file COPYING.  If not, write to
+ * the Free Software Foundation, Inc., 59 Temple Place, Suite 330,
+ * Boston, MA 02111-1307 USA
+ */
+import java.util.*;
+
+import org.egomez.irpgeditor.*;
+import org.junit.*;
+import static org.junit.Assert.*;
+
+/**
+ * checks the sorted runs kept from the last scan are the same as the ones
+ * worked out again from the top, after lines are changed, added and removed.
+ *
+ * @author Derek Van Kooten.
+ */
+public class NodeDuplicateCodeTest {
+
+    @SuppressWarnings({"rawtypes", "unchecked"})
+    @Test
+    public void testUpdate() {
+        NodeDuplicateCode node;
+        ArrayList lines;
+        Random random;
+        int[] hashes;
+        int row;
+
+        node = new NodeDuplicateCode(null, null, null);
+        random = new Random(7);
+        lines = new ArrayList();
+        for (int x = 0; x < 200; x++) {
+            // few different lines, so there are runs with the same hash.
+            lines.add(Integer.valueOf(random.nextInt(4)));
+        }
+        for (int edit = 0; edit < 500; edit++) {
+            hashes = new int[lines.size()];
+            for (int x = 0; x < hashes.length; x++) {
+                hashes[x] = ((Integer) lines.get(x)).intValue();
+            }
+            assertArrayEquals(NodeDuplicateCode.windows(CloneIndex.windows(hashes, hashes.length, NodeDuplicateCode.minMatches)),
+                    node.update(hashes));
+            row = lines.isEmpty() ? 0 : random.nextInt(lines.size());
+            switch (random.nextInt(4)) {
+                case 0:
+                    for (int x = random.nextInt(8); x > 0; x--) {
+                        lines.add(row, Integer.valueOf(random.nextInt(4)));
+                    }
+                    break;
+                case 1:
+                    for (int x = random.nextInt(8); x > 0 && row < lines.size(); x--) {
+                        lines.remove(row);
+                    }
+                    break;
+                case 2:
+                    if (row < lines.size()) {
+                        lines.set(row, Integer.valueOf(random.nextInt(4)));
+                    }
+                    break;
+                default:
+                    break;
+            }
+        }
+    }
+}